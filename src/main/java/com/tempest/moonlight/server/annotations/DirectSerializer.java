@@ -0,0 +1,21 @@
+package com.tempest.moonlight.server.annotations;
+
+import com.fasterxml.jackson.databind.JsonSerializer;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by Yurii on 2015-08-12.
+ *
+ * Serializer writing entity in the JSON format of its S2C {@link DTO}, so entity can be sent without converting to DTO.
+ * Used only by messaging converter when chat.serialization.direct is enabled, see
+ * {@link com.tempest.moonlight.server.serialization.DirectSerializersModule}
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DirectSerializer {
+    Class<? extends JsonSerializer<?>> value();
+}
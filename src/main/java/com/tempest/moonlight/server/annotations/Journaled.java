@@ -0,0 +1,24 @@
+package com.tempest.moonlight.server.annotations;
+
+import com.tempest.moonlight.server.common.dao.journal.EntityCodec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ * <br>
+ * Marks {@link com.tempest.moonlight.server.common.dao.AbstractMockDAO} bean, which content is kept in journal
+ * when chat.storage.journal.enabled is set
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Journaled {
+    /**
+     * Journal name, also used as directory name
+     */
+    String value();
+    Class<? extends EntityCodec<?, ?>> codec();
+}
@@ -0,0 +1,64 @@
+package com.tempest.moonlight.server.annotations;
+
+import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
+import com.tempest.moonlight.server.common.dao.IdentifiedEntity;
+import com.tempest.moonlight.server.common.dao.journal.EntityCodec;
+import com.tempest.moonlight.server.common.dao.journal.JournalManager;
+import org.apache.log4j.Logger;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.support.BeanDefinitionValidationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ */
+@Component
+public class JournaledAnnotationBeanPostProcessor implements BeanPostProcessor {
+
+    private static final Logger logger = Logger.getLogger(JournaledAnnotationBeanPostProcessor.class.getName());
+
+    @Autowired
+    private JournalManager journalManager;
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        Journaled journaled = bean.getClass().getAnnotation(Journaled.class);
+        if(journaled == null || !journalManager.isEnabled()) {
+            return bean;
+        }
+        if(!(bean instanceof AbstractMockDAO)) {
+            throw new BeanDefinitionValidationException("@Journaled is supported only by AbstractMockDAO beans, found on " + bean.getClass().getName());
+        }
+
+        try {
+            attach(journaled.value(), (AbstractMockDAO<?, ?>) bean, journaled.codec());
+        } catch (IOException e) {
+            throw new BeanInitializationException("Can not restore journal " + journaled.value() + " of bean " + beanName, e);
+        }
+        logger.info("Journal " + journaled.value() + " attached to " + beanName);
+        return bean;
+    }
+
+    /**
+     * Codec of {@link Journaled} can not be checked against entity and key types of the DAO at compile time
+     */
+    @SuppressWarnings("unchecked")
+    private <Entity extends IdentifiedEntity<Key>, Key extends Serializable> void attach(
+            String name, AbstractMockDAO<Entity, Key> dao, Class<? extends EntityCodec<?, ?>> codecClass
+    ) throws IOException {
+        EntityCodec<Entity, Key> codec = (EntityCodec<Entity, Key>) BeanUtils.instantiateClass(codecClass);
+        journalManager.attach(name, dao, codec);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+}
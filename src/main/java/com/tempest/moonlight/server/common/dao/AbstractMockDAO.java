@@ -1,23 +1,119 @@
 package com.tempest.moonlight.server.common.dao;
 
+import com.tempest.moonlight.server.common.dao.journal.Journal;
+
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Created by Yurii on 2015-05-07.
  */
 public abstract class AbstractMockDAO<Entity extends IdentifiedEntity<Key>, Key extends Serializable> extends AbstractIdentifiedEntityDAO<Entity, Key> {
 
-    private Map<Key, Entity> map;
+    private static final int KEY_LOCKS = 64;
+
+    private ConcurrentHashMap<Key, Entity> map;
+
+    private volatile Journal<Entity, Key> journal;
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
 
     public AbstractMockDAO() {
         map = new ConcurrentHashMap<>();
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Restores content from journal and starts journaling of all changes
+     */
+    public void attachJournal(Journal<Entity, Key> journal) throws IOException {
+        journal.open(new Journal.Store<Entity, Key>() {
+            @Override
+            public void restore(Key key, Entity entity) {
+                map.compute(key, (k, previous) -> {
+                    onSaved(k, previous, entity);
+                    return entity;
+                });
+            }
+
+            @Override
+            public void restoreDeleted(Key key) {
+                map.computeIfPresent(key, (k, previous) -> {
+                    onDeleted(k, previous);
+                    return null;
+                });
+            }
+
+            @Override
+            public void forEach(BiConsumer<Key, Entity> consumer) {
+                map.forEach(consumer);
+            }
+
+            @Override
+            public int size() {
+                return map.size();
+            }
+        });
+        this.journal = journal;
     }
 
     @Override
     public void save(Key key, Entity entity) {
-        map.put(key, entity);
+        Journal<Entity, Key> journal = beginWrite();
+        try {
+            if (journal == null) {
+                put(key, entity);
+                return;
+            }
+            synchronized (keyLock(key)) {
+                journal.appendSave(key, entity);
+                put(key, entity);
+            }
+        } finally {
+            endWrite(journal);
+        }
+    }
+
+    /**
+     * Replaces existing entity with the result of updater, which may also modify and return the same instance.
+     * Updater returning null leaves entity unchanged
+     * @return updated entity or null if there is no entity with the key
+     */
+    protected Entity update(Key key, UnaryOperator<Entity> updater) {
+        Journal<Entity, Key> journal = beginWrite();
+        try {
+            if (journal == null) {
+                return map.computeIfPresent(key, (k, previous) -> {
+                    Entity updated = updater.apply(previous);
+                    if (updated == null) {
+                        return previous;
+                    }
+                    onSaved(k, previous, updated);
+                    return updated;
+                });
+            }
+            synchronized (keyLock(key)) {
+                Entity previous = map.get(key);
+                if (previous == null) {
+                    return null;
+                }
+                Entity updated = updater.apply(previous);
+                if (updated == null) {
+                    return previous;
+                }
+                journal.appendSave(key, updated);
+                put(key, updated);
+                return updated;
+            }
+        } finally {
+            endWrite(journal);
+        }
     }
 
     @Override
@@ -32,7 +128,76 @@ public abstract class AbstractMockDAO<Entity extends IdentifiedEntity<Key>, Key
 
     @Override
     public boolean deleteWithKey(Key key) {
-        return map.remove(key) != null;
+        Journal<Entity, Key> journal = beginWrite();
+        try {
+            if (journal == null) {
+                return remove(key);
+            }
+            synchronized (keyLock(key)) {
+                if (!map.containsKey(key)) {
+                    return false;
+                }
+                journal.appendDelete(key);
+                return remove(key);
+            }
+        } finally {
+            endWrite(journal);
+        }
+    }
+
+    private void put(Key key, Entity entity) {
+        map.compute(key, (k, previous) -> {
+            onSaved(k, previous, entity);
+            return entity;
+        });
+    }
+
+    private boolean remove(Key key) {
+        AtomicBoolean deleted = new AtomicBoolean();
+        map.computeIfPresent(key, (k, previous) -> {
+            onDeleted(k, previous);
+            deleted.set(true);
+            return null;
+        });
+        return deleted.get();
+    }
+
+    /**
+     * Journaled writes of a key are serialized by its lock, so WAL order of the key matches the map,
+     * while the journal is written outside of map's compute
+     */
+    private Object keyLock(Key key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return keyLocks[(hash & Integer.MAX_VALUE) % keyLocks.length];
+    }
+
+    /**
+     * Called while the entry of the key is locked, so secondary indexes
+     * kept by subclasses stay consistent with the map
+     * @param previous replaced entity or null if the key was absent
+     */
+    protected void onSaved(Key key, Entity previous, Entity entity) {
+    }
+
+    /**
+     * Called while the entry of the key is locked, right before it is removed
+     */
+    protected void onDeleted(Key key, Entity entity) {
+    }
+
+    private Journal<Entity, Key> beginWrite() {
+        Journal<Entity, Key> journal = this.journal;
+        if (journal != null) {
+            journal.beginWrite();
+        }
+        return journal;
+    }
+
+    private static void endWrite(Journal<?, ?> journal) {
+        if (journal != null) {
+            journal.endWrite();
+        }
     }
 
     protected Map<Key, Entity> getMap() {
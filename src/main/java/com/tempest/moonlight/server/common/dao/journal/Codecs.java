@@ -0,0 +1,64 @@
+package com.tempest.moonlight.server.common.dao.journal;
+
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ *
+ * Field encoders shared by entity codecs. Strings are length prefixed UTF-8, length -1 stands for null.
+ */
+public final class Codecs {
+
+    private Codecs() {
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeType(DataOutput out, ParticipantType type) throws IOException {
+        out.writeByte(type == null ? -1 : type.value);
+    }
+
+    public static ParticipantType readType(DataInput in) throws IOException {
+        byte value = in.readByte();
+        return value < 0 ? null : ParticipantType.getByValue(value);
+    }
+
+    public static void writeParticipant(DataOutput out, GenericParticipant participant) throws IOException {
+        out.writeBoolean(participant != null);
+        if (participant != null) {
+            writeType(out, participant.getType());
+            writeString(out, participant.getSignature());
+        }
+    }
+
+    public static GenericParticipant readParticipant(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new GenericParticipant(readType(in), readString(in));
+    }
+}
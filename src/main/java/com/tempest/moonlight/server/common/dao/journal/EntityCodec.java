@@ -0,0 +1,21 @@
+package com.tempest.moonlight.server.common.dao.journal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ *
+ * Binary form of DAO entries for journal and snapshots. Implementations must be stateless, they are used concurrently
+ */
+public interface EntityCodec<Entity, Key> {
+    void writeKey(DataOutput out, Key key) throws IOException;
+    Key readKey(DataInput in) throws IOException;
+
+    void writeEntity(DataOutput out, Entity entity) throws IOException;
+    /**
+     * @param key already read key of the entry, entities which are their own keys may simply return it
+     */
+    Entity readEntity(DataInput in, Key key) throws IOException;
+}
@@ -0,0 +1,410 @@
+package com.tempest.moonlight.server.common.dao.journal;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ *
+ * Write-ahead log and snapshots of one DAO, kept in its own directory as generations:
+ * <ul>
+ * <li>wal-N.log - operations performed since generation N was started, records are [int length][int crc32][byte op][payload]</li>
+ * <li>snapshot-N.bin - all entries at the moment generation N was started, chunks are [int entries][int length][int crc32][payload]</li>
+ * </ul>
+ * Snapshot of generation N followed by WAL of generations N and later gives current state.
+ * Mutations must be performed between {@link #beginWrite()} and {@link #endWrite()}, so that snapshot starts only when
+ * every appended operation is visible in the map.
+ */
+public class Journal<Entity, Key> {
+
+    private static final Logger logger = Logger.getLogger(Journal.class.getName());
+
+    private static final byte OP_SAVE = 1;
+    private static final byte OP_DELETE = 2;
+
+    private static final int SNAPSHOT_MAGIC = 0x4A534E50;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_CHUNK_ENTRIES = 4096;
+
+    private static final String WAL_PREFIX = "wal-";
+    private static final String WAL_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    /**
+     * Access to the journaled map
+     */
+    public interface Store<Entity, Key> {
+        void restore(Key key, Entity entity);
+        void restoreDeleted(Key key);
+        void forEach(BiConsumer<Key, Entity> consumer);
+        int size();
+    }
+
+    private final String name;
+    private final File directory;
+    private final EntityCodec<Entity, Key> codec;
+
+    private final ReadWriteLock generationLock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+
+    private Store<Entity, Key> store;
+    private long generation;
+    private FileOutputStream walFile;
+    private DataOutputStream wal;
+    private boolean dirty;
+
+    private final AtomicLong appended = new AtomicLong();
+
+    public Journal(String name, File directory, EntityCodec<Entity, Key> codec) {
+        this.name = name;
+        this.directory = directory;
+        this.codec = codec;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getAppended() {
+        return appended.get();
+    }
+
+    /**
+     * Restores store from the latest snapshot and following WAL files and starts new generation
+     */
+    public void open(Store<Entity, Key> store) throws IOException {
+        this.store = store;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create journal directory " + directory);
+        }
+        long started = System.currentTimeMillis();
+
+        TreeMap<Long, File> snapshots = listGenerations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        TreeMap<Long, File> wals = listGenerations(WAL_PREFIX, WAL_SUFFIX);
+
+        long snapshotGeneration = -1;
+        if (!snapshots.isEmpty()) {
+            snapshotGeneration = snapshots.lastKey();
+            readSnapshot(snapshots.lastEntry().getValue());
+        }
+        long replayed = 0;
+        for (File walFile : wals.tailMap(snapshotGeneration, true).values()) {
+            replayed += replay(walFile);
+        }
+
+        long lastGeneration = Math.max(snapshotGeneration, wals.isEmpty() ? -1 : wals.lastKey());
+        startGeneration(lastGeneration + 1);
+
+        logger.info("Journal " + name + " restored " + store.size() + " entries (snapshot generation " + snapshotGeneration
+                + ", " + replayed + " WAL records) in " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    public void beginWrite() {
+        generationLock.readLock().lock();
+    }
+
+    public void endWrite() {
+        generationLock.readLock().unlock();
+    }
+
+    public void appendSave(Key key, Entity entity) {
+        synchronized (appendLock) {
+            recordBuffer.reset();
+            try {
+                codec.writeKey(recordOut, key);
+                codec.writeEntity(recordOut, entity);
+            } catch (IOException e) {
+                throw new IllegalStateException("Can not encode entry of journal " + name, e);
+            }
+            append(OP_SAVE);
+        }
+    }
+
+    public void appendDelete(Key key) {
+        synchronized (appendLock) {
+            recordBuffer.reset();
+            try {
+                codec.writeKey(recordOut, key);
+            } catch (IOException e) {
+                throw new IllegalStateException("Can not encode key of journal " + name, e);
+            }
+            append(OP_DELETE);
+        }
+    }
+
+    private void append(byte op) {
+        if (wal == null) {
+            throw new IllegalStateException("Journal " + name + " is closed");
+        }
+        byte[] payload = recordBuffer.toByteArray();
+        try {
+            wal.writeInt(payload.length);
+            wal.writeInt(crc(op, payload, 0, payload.length));
+            wal.writeByte(op);
+            wal.write(payload);
+            dirty = true;
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not append to journal " + name, e);
+        }
+        appended.incrementAndGet();
+    }
+
+    /**
+     * Writes buffered records and forces them to disk
+     */
+    public void flush() throws IOException {
+        FileChannel channel;
+        synchronized (appendLock) {
+            if (!dirty) {
+                return;
+            }
+            wal.flush();
+            dirty = false;
+            channel = walFile.getChannel();
+        }
+        if (channel.isOpen()) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Starts new generation and writes snapshot for it; files of previous generations are deleted afterwards
+     */
+    public synchronized void snapshot() throws IOException {
+        long snapshotGeneration;
+        generationLock.writeLock().lock();
+        try {
+            synchronized (appendLock) {
+                closeWal();
+                startGeneration(generation + 1);
+                snapshotGeneration = generation;
+            }
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+
+        long started = System.currentTimeMillis();
+        File target = generationFile(SNAPSHOT_PREFIX, snapshotGeneration, SNAPSHOT_SUFFIX);
+        File temp = new File(directory, target.getName() + ".tmp");
+        long entries = writeSnapshot(temp);
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (File file : listGenerations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(snapshotGeneration).values()) {
+            deleteFile(file);
+        }
+        for (File file : listGenerations(WAL_PREFIX, WAL_SUFFIX).headMap(snapshotGeneration).values()) {
+            deleteFile(file);
+        }
+        logger.info("Journal " + name + " snapshot of generation " + snapshotGeneration + " with " + entries + " entries written in " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            closeWal();
+        }
+    }
+
+    private void startGeneration(long generation) throws IOException {
+        this.generation = generation;
+        walFile = new FileOutputStream(generationFile(WAL_PREFIX, generation, WAL_SUFFIX), true);
+        wal = new DataOutputStream(new BufferedOutputStream(walFile, 64 * 1024));
+    }
+
+    private void closeWal() throws IOException {
+        if (wal == null) {
+            return;
+        }
+        wal.flush();
+        walFile.getChannel().force(false);
+        wal.close();
+        wal = null;
+        dirty = false;
+    }
+
+    private long writeSnapshot(File file) throws IOException {
+        long[] entries = new long[1];
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 256 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream(SNAPSHOT_CHUNK_ENTRIES * 64);
+            DataOutputStream chunkOut = new DataOutputStream(chunk);
+            int[] chunkEntries = new int[1];
+            IOException[] error = new IOException[1];
+            store.forEach((key, entity) -> {
+                if (error[0] != null) {
+                    return;
+                }
+                try {
+                    codec.writeKey(chunkOut, key);
+                    codec.writeEntity(chunkOut, entity);
+                    entries[0]++;
+                    if (++chunkEntries[0] == SNAPSHOT_CHUNK_ENTRIES) {
+                        writeChunk(out, chunkEntries[0], chunk);
+                        chunkEntries[0] = 0;
+                    }
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            if (chunkEntries[0] > 0) {
+                writeChunk(out, chunkEntries[0], chunk);
+            }
+            out.writeInt(0);
+            out.flush();
+            fileOut.getChannel().force(true);
+        }
+        return entries[0];
+    }
+
+    private static void writeChunk(DataOutputStream out, int entries, ByteArrayOutputStream chunk) throws IOException {
+        byte[] bytes = chunk.toByteArray();
+        out.writeInt(entries);
+        out.writeInt(bytes.length);
+        out.writeInt(crc((byte) 0, bytes, 0, bytes.length));
+        out.write(bytes);
+        chunk.reset();
+    }
+
+    /**
+     * Chunks are read sequentially and decoded into the store in parallel
+     */
+    private void readSnapshot(File file) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        List<Integer> chunkEntries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256 * 1024))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot file " + file);
+            }
+            int entries;
+            while ((entries = in.readInt()) > 0) {
+                byte[] bytes = new byte[in.readInt()];
+                int crc = in.readInt();
+                in.readFully(bytes);
+                if (crc((byte) 0, bytes, 0, bytes.length) != crc) {
+                    throw new IOException("Corrupted chunk in snapshot file " + file);
+                }
+                chunks.add(bytes);
+                chunkEntries.add(entries);
+            }
+        }
+
+        List<Integer> chunkIndexes = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            chunkIndexes.add(i);
+        }
+        chunkIndexes.parallelStream().forEach(i -> {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(chunks.get(i)));
+            try {
+                for (int entry = chunkEntries.get(i); entry > 0; entry--) {
+                    Key key = codec.readKey(in);
+                    store.restore(key, codec.readEntity(in, key));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Can not decode snapshot chunk of journal " + name, e);
+            }
+        });
+    }
+
+    /**
+     * Applies valid records of WAL file, stops at torn or corrupted tail
+     */
+    private long replay(File file) throws IOException {
+        long records = 0;
+        try (InputStream fileIn = new BufferedInputStream(new FileInputStream(file), 256 * 1024)) {
+            DataInputStream in = new DataInputStream(fileIn);
+            while (true) {
+                int length;
+                int crc;
+                byte op;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    crc = in.readInt();
+                    op = in.readByte();
+                    if (length < 0) {
+                        throw new EOFException();
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc(op, payload, 0, payload.length) != crc) {
+                    logger.warn("Journal " + name + " has corrupted record in " + file.getName() + " after " + records + " records, ignoring the rest");
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                Key key = codec.readKey(record);
+                if (op == OP_SAVE) {
+                    store.restore(key, codec.readEntity(record, key));
+                } else if (op == OP_DELETE) {
+                    store.restoreDeleted(key);
+                } else {
+                    throw new IOException("Unknown journal record type " + op + " in " + file);
+                }
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private TreeMap<Long, File> listGenerations(String prefix, String suffix) {
+        TreeMap<Long, File> generations = new TreeMap<>();
+        File[] files = directory.listFiles((dir, fileName) -> fileName.startsWith(prefix) && fileName.endsWith(suffix));
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                generations.put(Long.parseLong(fileName.substring(prefix.length(), fileName.length() - suffix.length())), file);
+            }
+        }
+        return generations;
+    }
+
+    private File generationFile(String prefix, long generation, String suffix) {
+        return new File(directory, String.format("%s%012d%s", prefix, generation, suffix));
+    }
+
+    private static void deleteFile(File file) {
+        if (!file.delete()) {
+            logger.warn("Can not delete journal file " + file);
+        }
+    }
+
+    private static int crc(byte op, byte[] bytes, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(op);
+        crc32.update(bytes, offset, length);
+        return (int) crc32.getValue();
+    }
+}
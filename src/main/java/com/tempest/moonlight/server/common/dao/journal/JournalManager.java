@@ -0,0 +1,125 @@
+package com.tempest.moonlight.server.common.dao.journal;
+
+import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
+import com.tempest.moonlight.server.common.dao.IdentifiedEntity;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ *
+ * Owns journals of DAOs marked with {@link com.tempest.moonlight.server.annotations.Journaled}:
+ * flushes WAL to disk every flush interval (group commit) and writes snapshots every snapshot interval and on shutdown
+ */
+@Component
+public class JournalManager {
+
+    private static final Logger logger = Logger.getLogger(JournalManager.class.getName());
+
+    @Value("${chat.storage.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.storage.journal.dir:data/journal}")
+    private String directory;
+
+    @Value("${chat.storage.journal.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${chat.storage.journal.snapshot-interval-sec:600}")
+    private long snapshotIntervalSec;
+
+    @Value("${chat.storage.journal.snapshot-on-shutdown:true}")
+    private boolean snapshotOnShutdown;
+
+    private final List<Journal<?, ?>> journals = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService flushExecutor;
+    private ScheduledExecutorService snapshotExecutor;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized <Entity extends IdentifiedEntity<Key>, Key extends Serializable> void attach(String name, AbstractMockDAO<Entity, Key> dao, EntityCodec<Entity, Key> codec) throws IOException {
+        for (Journal<?, ?> journal : journals) {
+            if (journal.getName().equals(name)) {
+                throw new IllegalStateException("Journal " + name + " is already attached");
+            }
+        }
+        Journal<Entity, Key> journal = new Journal<>(name, new File(directory, name), codec);
+        dao.attachJournal(journal);
+        journals.add(journal);
+        startExecutors();
+    }
+
+    private void startExecutors() {
+        if (flushExecutor != null) {
+            return;
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> newThread(runnable, "journal-flush"));
+        flushExecutor.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+
+        snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> newThread(runnable, "journal-snapshot"));
+        snapshotExecutor.scheduleWithFixedDelay(this::snapshotAll, snapshotIntervalSec, snapshotIntervalSec, TimeUnit.SECONDS);
+    }
+
+    private static Thread newThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void flushAll() {
+        for (Journal<?, ?> journal : journals) {
+            try {
+                journal.flush();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error while flushing journal " + journal.getName(), e);
+            }
+        }
+    }
+
+    private void snapshotAll() {
+        for (Journal<?, ?> journal : journals) {
+            try {
+                journal.snapshot();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error while writing snapshot of journal " + journal.getName(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws InterruptedException {
+        if (flushExecutor == null) {
+            return;
+        }
+        snapshotExecutor.shutdown();
+        snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+        if (snapshotOnShutdown) {
+            snapshotAll();
+        }
+        for (Journal<?, ?> journal : journals) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Error while closing journal " + journal.getName(), e);
+            }
+        }
+        logger.info("Journals closed: " + journals.size());
+    }
+}
@@ -47,6 +47,14 @@ public interface DtoConverter {
 
     <T> T convertFromDTO(ClientToServerDTO<T> dto) throws DtoException;
 
+    /**
+     * @return entity itself if direct serialization is enabled and entity class has
+     * {@link com.tempest.moonlight.server.annotations.DirectSerializer}, S2C DTO of entity elsewhere
+     */
+    <T> Object convertToOutbound(T entity) throws DtoException;
+
+    <T> Collection<?> convertToOutbound(Collection<T> entities);
+
     default <T> Collection<T> convertFromDTOs(Collection<? extends ClientToServerDTO<T>> dtos) {
         return CollectionsUtils.convertToList(
                 dtos,
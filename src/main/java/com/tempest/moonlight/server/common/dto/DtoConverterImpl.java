@@ -1,14 +1,18 @@
 package com.tempest.moonlight.server.common.dto;
 
+import com.tempest.moonlight.server.annotations.DirectSerializer;
 import com.tempest.moonlight.server.exceptions.local.dto.*;
 import com.tempest.moonlight.server.util.CollectionsUtils;
+import com.tempest.moonlight.server.util.ConstructorFactories;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Created by Yurii on 2015-06-18.
@@ -22,6 +26,16 @@ public class DtoConverterImpl implements DtoConverter {
 
     private DtosContainer dtosContainer = new DtosContainer();
 
+    @Value("${chat.serialization.direct:false}")
+    private boolean directSerialization;
+
+    private final ClassValue<Boolean> directlySerializable = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isAnnotationPresent(DirectSerializer.class);
+        }
+    };
+
     @Override
     public void addDTO(Class entityClass, EntityDTO.DtoType dtoType, Class<? extends EntityDTO> dtoClass) throws DtoException {
         if(!dtoType.dtoClass.isAssignableFrom(dtoClass)) {
@@ -51,24 +65,33 @@ public class DtoConverterImpl implements DtoConverter {
         if(dto == null) {
             return null;
         }
+        Entity entity;
         try {
-            Entity entity = entityClass.newInstance();
-            dto.fillEntity(entity);
-            return entity;
-        } catch (InstantiationException | IllegalAccessException e) {
+            entity = ConstructorFactories.of(entityClass).get();
+        } catch (IllegalArgumentException e) {
             throw new CanNotCreateEntityException(entityClass, e);
         }
+        dto.fillEntity(entity);
+        return entity;
     }
 
     private <Entity> ServerToClientDTO<Entity> convertToDtoInternal(Entity entity, Class<? extends ServerToClientDTO<Entity>> dtoClass) throws DtoException {
-        try {
-            ServerToClientDTO<Entity> serverToClientDTO = dtoClass.newInstance();
-            serverToClientDTO.fillWithEntity(entity);
-            return serverToClientDTO;
+        return convertToDtoInternal(entity, dtoClass, ConstructorFactories.of(dtoClass));
+    }
 
-        } catch (InstantiationException | IllegalAccessException e) {
+    /**
+     * @param dtoFactory factory of S2C DTO bound to the class of entity
+     */
+    @SuppressWarnings("unchecked")
+    private <Entity> ServerToClientDTO<Entity> convertToDtoInternal(Entity entity, Class<? extends EntityDTO<?>> dtoClass, Supplier<? extends ServerToClientDTO<?>> dtoFactory) throws DtoException {
+        ServerToClientDTO<Entity> serverToClientDTO;
+        try {
+            serverToClientDTO = (ServerToClientDTO<Entity>) dtoFactory.get();
+        } catch (IllegalArgumentException e) {
             throw new CanNotCreateDtoException(entity.getClass(), dtoClass, e);
         }
+        serverToClientDTO.fillWithEntity(entity);
+        return serverToClientDTO;
     }
 
     @Override
@@ -81,9 +104,9 @@ public class DtoConverterImpl implements DtoConverter {
 //        DtosHolder dtosHolder = getEntityDtoHolder(entityClass);
 //        Class<? extends ServerToClientDTO<T>> dtoClass = (Class<? extends ServerToClientDTO<T>>) getDtoClass(dtosHolder, EntityDTO.DtoType.S2C);
 
-        Class<? extends ServerToClientDTO<T>> dtoClass = (Class<? extends ServerToClientDTO<T>>) getDtoClass(entity, EntityDTO.DtoType.S2C);
-
-        return convertToDtoInternal(entity, dtoClass);
+        DtosHolder dtosHolder = getEntityDtoHolder(entity.getClass());
+        Class<? extends ServerToClientDTO<T>> dtoClass = (Class<? extends ServerToClientDTO<T>>) getDtoClass(dtosHolder, EntityDTO.DtoType.S2C);
+        return convertToDtoInternal(entity, dtoClass, dtosHolder.s2cDtoFactory);
     }
 
     private DtosHolder getEntityDtoHolder(Class<?> entityClass) {
@@ -102,12 +125,6 @@ public class DtoConverterImpl implements DtoConverter {
         return (Class<? extends EntityDTO<T>>) dtoClass;
     }
 
-    private <T> Class<? extends EntityDTO<T>> getDtoClass(T entity, EntityDTO.DtoType dtoType) {
-        Class<?> entityClass = entity.getClass();
-        DtosHolder dtosHolder = getEntityDtoHolder(entityClass);
-        return getDtoClass(dtosHolder, dtoType);
-    }
-
     @Override
     public <T> Collection<? extends ServerToClientDTO<T>> convertToDTOs(Collection<T> entities) {
         if(entities == null) {
@@ -118,11 +135,12 @@ public class DtoConverterImpl implements DtoConverter {
         }
 
         T firstEntity = entities.iterator().next();
-        Class<? extends ServerToClientDTO<T>> dtoClass = (Class<? extends ServerToClientDTO<T>>) getDtoClass(firstEntity, EntityDTO.DtoType.S2C);
+        DtosHolder dtosHolder = getEntityDtoHolder(firstEntity.getClass());
+        Class<? extends ServerToClientDTO<T>> dtoClass = (Class<? extends ServerToClientDTO<T>>) getDtoClass(dtosHolder, EntityDTO.DtoType.S2C);
 
         return CollectionsUtils.convertToList(
                 entities,
-                entity -> convertToDtoInternal(entity, dtoClass)
+                entity -> convertToDtoInternal(entity, dtoClass, dtosHolder.s2cDtoFactory)
         );
     }
 
@@ -133,50 +151,99 @@ public class DtoConverterImpl implements DtoConverter {
         }
 
         Class<? extends EntityDTO> dtoClass = dto.getClass();
-        Class entityClass = dtosContainer.getEntityClassByDtoClass(dtoClass);
-        if(entityClass == null) {
+        DtosHolder dtosHolder = dtosContainer.getHolderForDtoClass(dtoClass);
+        if(dtosHolder == null) {
             throw new NoEntityClassFoundException(dtoClass);
         }
 
+        T entity;
         try {
-            T entity = (T) entityClass.newInstance();
-            dto.fillEntity(entity);
+            entity = (T) dtosHolder.entityFactory.get();
+        } catch (IllegalArgumentException e) {
+            throw new CanNotCreateEntityException(dtosHolder.entityClass, dtoClass, e);
+        }
+        dto.fillEntity(entity);
+        return entity;
+    }
+
+
+    @Override
+    public <T> Object convertToOutbound(T entity) throws DtoException {
+        if(entity != null && isDirectlySerializable(entity.getClass())) {
             return entity;
+        }
+        return convertToDTO(entity);
+    }
 
-        } catch (InstantiationException | IllegalAccessException e) {
-            throw new CanNotCreateEntityException(entityClass, dtoClass, e);
+    @Override
+    public <T> Collection<?> convertToOutbound(Collection<T> entities) {
+        if(entities == null) {
+            throw new NullPointerException();
+        }
+        if(!entities.isEmpty() && isDirectlySerializable(entities.iterator().next().getClass())) {
+            return entities;
         }
+        return convertToDTOs(entities);
+    }
+
+    private boolean isDirectlySerializable(Class<?> entityClass) {
+        return directSerialization && directlySerializable.get(entityClass);
     }
 
 
+    /**
+     * Bindings are registered on startup, conversions look them up through {@link ClassValue}s,
+     * which are a field read of the class after the first lookup
+     */
     private class DtosContainer {
-        private final Map<Class, DtosHolder> beansDtosContainer = new HashMap<>();
-        private final Map<Class<? extends EntityDTO>, Class> dtoToEntityMap = new HashMap<>();
+        private final Map<Class, DtosHolder> beansDtosContainer = new ConcurrentHashMap<>();
+        private final Map<Class<? extends EntityDTO>, Class> dtoToEntityMap = new ConcurrentHashMap<>();
+
+        private final ClassValue<DtosHolder> holdersByEntityClass = new ClassValue<DtosHolder>() {
+            @Override
+            protected DtosHolder computeValue(Class<?> entityClass) {
+                return beansDtosContainer.get(entityClass);
+            }
+        };
 
-        public void bind(Class entityClass, Class<? extends EntityDTO> dtoClass, EntityDTO.DtoType dtoType) throws DtoException {
+        private final ClassValue<DtosHolder> holdersByDtoClass = new ClassValue<DtosHolder>() {
+            @Override
+            protected DtosHolder computeValue(Class<?> dtoClass) {
+                Class entityClass = dtoToEntityMap.get(dtoClass);
+                return entityClass == null ? null : beansDtosContainer.get(entityClass);
+            }
+        };
+
+        public synchronized void bind(Class entityClass, Class<? extends EntityDTO> dtoClass, EntityDTO.DtoType dtoType) throws DtoException {
             DtosHolder dtosHolder = beansDtosContainer.computeIfAbsent(entityClass, DtosHolder::new);
             dtosHolder.setDto(dtoType, dtoClass);
             dtoToEntityMap.put(dtoClass, entityClass);
+
+            holdersByEntityClass.remove(entityClass);
+            holdersByDtoClass.remove(dtoClass);
         }
 
         public DtosHolder getHolderForEntityClass(Class entityClass) {
-            return beansDtosContainer.get(entityClass);
+            return holdersByEntityClass.get(entityClass);
         }
 
-        public Class getEntityClassByDtoClass(Class dtoClass) {
-            return dtoToEntityMap.get(dtoClass);
+        public DtosHolder getHolderForDtoClass(Class dtoClass) {
+            return holdersByDtoClass.get(dtoClass);
         }
     }
 
 
     private class DtosHolder {
         public final Class entityClass;
+        public final Supplier<?> entityFactory;
 
         private Class<? extends ClientToServerDTO> c2sDto;
         private Class<? extends ServerToClientDTO> s2cDto;
+        private volatile Supplier<? extends ServerToClientDTO<?>> s2cDtoFactory;
 
-        public DtosHolder(Class entityClass) {
+        public DtosHolder(Class<?> entityClass) {
             this.entityClass = entityClass;
+            this.entityFactory = ConstructorFactories.of(entityClass);
         }
 
         public void setDto(EntityDTO.DtoType dtoType, Class<? extends EntityDTO> dtoClass) throws DtoException {
@@ -211,6 +278,10 @@ public class DtoConverterImpl implements DtoConverter {
                 throw new OverrideDtoTypeException(entityClass, EntityDTO.DtoType.S2C, s2cDtoClass, s2cDto);
             }
             this.s2cDto = s2cDtoClass;
+            // DTO classes are bound as raw classes, every S2C DTO is a ServerToClientDTO of some entity
+            @SuppressWarnings("unchecked")
+            Supplier<? extends ServerToClientDTO<?>> dtoFactory = (Supplier<? extends ServerToClientDTO<?>>) ConstructorFactories.of(s2cDtoClass);
+            this.s2cDtoFactory = dtoFactory;
         }
 
         public Class<? extends EntityDTO> getDTO(boolean incoming) {
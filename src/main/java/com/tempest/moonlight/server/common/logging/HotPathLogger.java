@@ -0,0 +1,127 @@
+package com.tempest.moonlight.server.common.logging;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by Yurii on 2015-08-24.
+ *
+ * Logger for messaging hot path (every sent, received or delivered message).
+ * Message is a format with {} placeholders, arguments are formatted later on the writer thread of {@link LogRingBuffer},
+ * so they have to be immutable or not changed after logging. Calling thread only checks the level,
+ * samples the event and puts it into the ring.
+ * Events of a category are sampled: 1 of chat.logging.sample.[category] events is logged, 0 disables the category.
+ * Until {@link HotPathLogging} starts the ring, events are written synchronously
+ */
+public final class HotPathLogger {
+
+    private static final ConcurrentMap<String, HotPathLogger> loggers = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> sampling = new ConcurrentHashMap<>();
+    private static final LongAdder sampledOut = new LongAdder();
+
+    /**
+     * Argument not passed by caller, unlike null argument its placeholder is left as is
+     */
+    private static final Object NO_ARG = new Object();
+
+    private static volatile LogRingBuffer ring;
+
+    private final Logger target;
+    private final String category;
+    private volatile int sampleEvery;
+
+    private HotPathLogger(Logger target, String category) {
+        this.target = target;
+        this.category = category;
+        this.sampleEvery = sampling.getOrDefault(category, 1);
+    }
+
+    public static HotPathLogger getLogger(Class<?> clazz, String category) {
+        return loggers.computeIfAbsent(clazz.getName() + "#" + category, key -> new HotPathLogger(Logger.getLogger(clazz.getName()), category));
+    }
+
+    static void start(LogRingBuffer ringBuffer, Map<String, Integer> sampleEvery) {
+        sampling.putAll(sampleEvery);
+        for (HotPathLogger logger : loggers.values()) {
+            logger.sampleEvery = sampling.getOrDefault(logger.category, 1);
+        }
+        ring = ringBuffer;
+    }
+
+    static LogRingBuffer stop() {
+        LogRingBuffer stopped = ring;
+        ring = null;
+        return stopped;
+    }
+
+    static long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    public void debug(String format, Object arg0) {
+        log(Level.DEBUG, format, arg0, NO_ARG, NO_ARG);
+    }
+
+    public void debug(String format, Object arg0, Object arg1) {
+        log(Level.DEBUG, format, arg0, arg1, NO_ARG);
+    }
+
+    public void debug(String format, Object arg0, Object arg1, Object arg2) {
+        log(Level.DEBUG, format, arg0, arg1, arg2);
+    }
+
+    public void info(String format, Object arg0) {
+        log(Level.INFO, format, arg0, NO_ARG, NO_ARG);
+    }
+
+    public void info(String format, Object arg0, Object arg1) {
+        log(Level.INFO, format, arg0, arg1, NO_ARG);
+    }
+
+    public void info(String format, Object arg0, Object arg1, Object arg2) {
+        log(Level.INFO, format, arg0, arg1, arg2);
+    }
+
+    private void log(Level level, String format, Object arg0, Object arg1, Object arg2) {
+        int every = sampleEvery;
+        if (every <= 0 || !target.isEnabledFor(level)) {
+            return;
+        }
+        if (every > 1 && ThreadLocalRandom.current().nextInt(every) != 0) {
+            sampledOut.increment();
+            return;
+        }
+        LogRingBuffer ringBuffer = ring;
+        if (ringBuffer == null) {
+            target.log(level, format(new StringBuilder(), format, arg0, arg1, arg2).toString());
+        } else {
+            ringBuffer.offer(target, level, format, arg0, arg1, arg2);
+        }
+    }
+
+    /**
+     * Appends format with its placeholders replaced by arguments in order,
+     * placeholders left without argument are kept and arguments left without placeholder are skipped
+     */
+    static StringBuilder format(StringBuilder builder, String format, Object arg0, Object arg1, Object arg2) {
+        int argIndex = 0;
+        int from = 0;
+        int placeholder;
+        while ((placeholder = format.indexOf("{}", from)) >= 0) {
+            Object arg = argIndex == 0 ? arg0 : argIndex == 1 ? arg1 : argIndex == 2 ? arg2 : NO_ARG;
+            if (arg == NO_ARG) {
+                break;
+            }
+            builder.append(format, from, placeholder).append(arg);
+            argIndex++;
+            from = placeholder + 2;
+        }
+        return builder.append(format, from, format.length());
+    }
+}
@@ -0,0 +1,73 @@
+package com.tempest.moonlight.server.common.logging;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Created by Yurii on 2015-08-24.
+ *
+ * Starts asynchronous writing of {@link HotPathLogger} events and applies sampling of their categories,
+ * publishes how many events were written, dropped on full ring and skipped by sampling
+ */
+@Component
+public class HotPathLogging implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger(HotPathLogging.class.getName());
+
+    @Value("${chat.logging.async.enabled:true}")
+    private boolean async;
+
+    @Value("${chat.logging.async.ring-capacity:8192}")
+    private int ringCapacity;
+
+    @Value("${chat.logging.sample:outbound=100,chat-messages=1,session-events=1}")
+    private String[] sampling;
+
+    private LogRingBuffer ring;
+
+    @PostConstruct
+    public void start() {
+        Map<String, Integer> sampleEvery = new HashMap<>();
+        for (String categorySampling : sampling) {
+            String[] parts = categorySampling.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Sampling should be category=N, but was " + categorySampling);
+            }
+            sampleEvery.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        ring = async ? new LogRingBuffer(ringCapacity) : null;
+        HotPathLogger.start(ring, sampleEvery);
+        logger.info("Hot path logging: async = " + async + ", sampling = " + sampleEvery);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        HotPathLogger.stop();
+        if (ring != null) {
+            ring.close(5000);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("chat.logging.sampled-out", HotPathLogger.getSampledOutCount()));
+        if (ring != null) {
+            metrics.add(new Metric<>("chat.logging.ring.capacity", ring.getCapacity()));
+            metrics.add(new Metric<>("chat.logging.ring.depth", ring.getDepth()));
+            metrics.add(new Metric<>("chat.logging.written", ring.getWrittenCount()));
+            metrics.add(new Metric<>("chat.logging.dropped", ring.getDroppedCount()));
+        }
+        return metrics;
+    }
+}
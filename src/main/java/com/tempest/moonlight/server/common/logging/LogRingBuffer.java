@@ -0,0 +1,169 @@
+package com.tempest.moonlight.server.common.logging;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Created by Yurii on 2015-08-24.
+ *
+ * Bounded lock-free ring of log events with many producers and the single writer thread.
+ * Slots are preallocated and reused: producer claims a sequence by CAS, fills the slot and publishes it
+ * by its slot sequence, writer formats published events and passes them to the target logger.
+ * When the ring is full the event is dropped and counted, producer never waits
+ */
+class LogRingBuffer {
+
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private final LogEvent[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Next sequence to write, used by writer thread only
+     */
+    private long next;
+
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new LogEvent[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new LogEvent();
+            published.set(i, i);
+        }
+        mask = size - 1;
+        writer = new Thread(this::writeLoop, "hot-path-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return false if the ring is full and event was dropped
+     */
+    boolean offer(Logger target, Level level, String format, Object arg0, Object arg1, Object arg2) {
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            long available = published.get((int) sequence & mask) - sequence;
+            if (available < 0) {
+                dropped.increment();
+                return false;
+            }
+            if (available == 0 && claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) sequence & mask;
+        slots[index].set(target, level, System.currentTimeMillis(), Thread.currentThread().getName(), format, arg0, arg1, arg2);
+        published.lazySet(index, sequence + 1);
+        return true;
+    }
+
+    private void writeLoop() {
+        while (running || hasPublished()) {
+            if (!writeNext()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private boolean hasPublished() {
+        return published.get((int) next & mask) == next + 1;
+    }
+
+    private boolean writeNext() {
+        int index = (int) next & mask;
+        if (published.get(index) != next + 1) {
+            return false;
+        }
+        LogEvent event = slots[index];
+        try {
+            event.write();
+        } catch (RuntimeException e) {
+            // formatting of a broken argument must not stop the writer
+            event.target.error("Unable to write log event of format " + event.format, e);
+        }
+        event.clear();
+        published.lazySet(index, next + slots.length);
+        next++;
+        written.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops writer after it writes already published events
+     */
+    void close(long timeoutMs) throws InterruptedException {
+        running = false;
+        writer.join(timeoutMs);
+    }
+
+    int getCapacity() {
+        return slots.length;
+    }
+
+    long getDepth() {
+        return claimed.get() - written.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    long getWrittenCount() {
+        return written.get();
+    }
+
+    private static class LogEvent {
+        private Logger target;
+        private Level level;
+        private long time;
+        private String thread;
+        private String format;
+        private Object arg0;
+        private Object arg1;
+        private Object arg2;
+
+        private void set(Logger target, Level level, long time, String thread, String format, Object arg0, Object arg1, Object arg2) {
+            this.target = target;
+            this.level = level;
+            this.time = time;
+            this.thread = thread;
+            this.format = format;
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        private void write() {
+            StringBuilder builder = new StringBuilder(format.length() + 64);
+            builder.append('[').append(thread).append("] ");
+            HotPathLogger.format(builder, format, arg0, arg1, arg2).append(" (+").append(System.currentTimeMillis() - time).append(" ms)");
+            target.log(level, builder.toString());
+        }
+
+        private void clear() {
+            target = null;
+            level = null;
+            thread = null;
+            format = null;
+            arg0 = null;
+            arg1 = null;
+            arg2 = null;
+        }
+    }
+}
@@ -1,20 +1,47 @@
 package com.tempest.moonlight.server.config;
 
+import com.tempest.moonlight.server.serialization.DirectSerializersModule;
+import com.tempest.moonlight.server.websockets.ChannelExecutors;
 import com.tempest.moonlight.server.websockets.CustomChannelInterceptor;
+import com.tempest.moonlight.server.websockets.OutboundPolicy;
 import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.session.ExpiringSession;
 import org.springframework.session.web.socket.config.annotation.AbstractSessionWebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig extends AbstractSessionWebSocketMessageBrokerConfigurer<ExpiringSession> {
 
 	private static final Logger logger = Logger.getLogger(WebSocketConfig.class.getName());
+
+	@Value("${chat.serialization.direct:false}")
+	private boolean directSerialization;
+
+	@Value("${chat.outbound.send-time-limit-ms:10000}")
+	private int sendTimeLimitMs;
+
+	@Value("${chat.outbound.send-buffer-size-limit:524288}")
+	private int sendBufferSizeLimit;
+
+	@Autowired
+	private OutboundPolicy outboundPolicy;
+
+	@Autowired
+	private ChannelExecutors channelExecutors;
 	
 	protected void configureStompEndpoints(StompEndpointRegistry registry) {
 		registry.addEndpoint("/ws").withSockJS();
@@ -25,11 +52,50 @@ public class WebSocketConfig extends AbstractSessionWebSocketMessageBrokerConfig
 		registry.enableSimpleBroker("/queue/", "/topic/");
 		//registry.enableStompBrokerRelay("/queue/", "/topic/");
 		registry.setApplicationDestinationPrefixes("/app");
+		channelExecutors.configure("broker", registry.configureBrokerChannel());
 	}
 
 	@Override
 	public void configureClientInboundChannel(ChannelRegistration registration) {
 		super.configureClientInboundChannel(registration);
 		registration.setInterceptors(new CustomChannelInterceptor());
+		channelExecutors.configure("inbound", registration);
+	}
+
+	@Override
+	public void configureClientOutboundChannel(ChannelRegistration registration) {
+		registration.setInterceptors(outboundPolicy);
+		channelExecutors.configure("outbound", registration);
+	}
+
+	/**
+	 * Send queues of sessions are bounded by {@link OutboundPolicy},
+	 * limits of the transport still close a session blocked in a single write
+	 */
+	@Override
+	public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+		super.configureWebSocketTransport(registration);
+		registration.setSendTimeLimit(sendTimeLimitMs)
+				.setSendBufferSizeLimit(sendBufferSizeLimit)
+				.addDecoratorFactory(outboundPolicy);
+	}
+
+	/**
+	 * With direct serialization entities are sent as is, so JSON converter has to know their serializers.
+	 * Converter is configured the same way as the default one, which stays registered after it
+	 */
+	@Override
+	public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+		if(directSerialization) {
+			DefaultContentTypeResolver contentTypeResolver = new DefaultContentTypeResolver();
+			contentTypeResolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+
+			MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+			converter.setContentTypeResolver(contentTypeResolver);
+			converter.getObjectMapper().registerModule(new DirectSerializersModule());
+			messageConverters.add(converter);
+			logger.info("Direct serialization of entities is enabled");
+		}
+		return true;
 	}
 }
\ No newline at end of file
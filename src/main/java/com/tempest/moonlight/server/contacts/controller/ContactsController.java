@@ -72,7 +72,7 @@ public class ContactsController {
 
         contactRequest.setInitiator(principal.getName());
         if(contactsService.processContactRequest(contactRequest)) {
-            toParticipantSender.sendToUserQueue(contactRequest.getRecipient(), "contacts/request", dtoConverter.convertToDTO(contactRequest));
+            toParticipantSender.sendToUserQueue(contactRequest.getRecipient(), "contacts/request", dtoConverter.convertToOutbound(contactRequest));
         }
     }
 
@@ -0,0 +1,44 @@
+package com.tempest.moonlight.server.contacts.dao;
+
+import com.tempest.moonlight.server.common.dao.journal.EntityCodec;
+import com.tempest.moonlight.server.domain.contacts.ContactRequest;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.*;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ * <br>
+ * Request is its own key: key holds identifying fields, entity - the rest of them
+ */
+public class ContactRequestCodec implements EntityCodec<ContactRequest, ContactRequest> {
+    @Override
+    public void writeKey(DataOutput out, ContactRequest request) throws IOException {
+        writeString(out, request.getInitiator());
+        writeString(out, request.getRecipient());
+        writeParticipant(out, request.getContact());
+    }
+
+    @Override
+    public ContactRequest readKey(DataInput in) throws IOException {
+        return new ContactRequest(readString(in), readString(in), readParticipant(in));
+    }
+
+    @Override
+    public void writeEntity(DataOutput out, ContactRequest request) throws IOException {
+        out.writeByte(request.getStatus() == null ? -1 : request.getStatus().value);
+        out.writeLong(request.getTime());
+        out.writeBoolean(request.isSystem());
+    }
+
+    @Override
+    public ContactRequest readEntity(DataInput in, ContactRequest key) throws IOException {
+        byte status = in.readByte();
+        return key.setStatus(status < 0 ? null : ContactRequest.Status.getByValue(status))
+                .setTime(in.readLong())
+                .setSystem(in.readBoolean());
+    }
+}
@@ -1,5 +1,6 @@
 package com.tempest.moonlight.server.contacts.dao;
 
+import com.tempest.moonlight.server.annotations.Journaled;
 import com.tempest.moonlight.server.domain.contacts.ContactRequest;
 import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
 import org.springframework.stereotype.Repository;
@@ -8,6 +9,7 @@ import org.springframework.stereotype.Repository;
  * Created by Yurii on 2015-06-20.
  */
 @Repository
+@Journaled(value = "contact-requests", codec = ContactRequestCodec.class)
 public class ContactRequestDAOMockImpl extends AbstractMockDAO<ContactRequest, ContactRequest> implements ContactRequestDAO {
 
 }
@@ -1,23 +1,30 @@
 package com.tempest.moonlight.server.contacts.dao;
 
+import com.tempest.moonlight.server.annotations.Journaled;
 import com.tempest.moonlight.server.domain.ParticipantType;
 import com.tempest.moonlight.server.domain.contacts.GenericContact;
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
-import com.tempest.moonlight.server.util.CollectionsUtils;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
-import java.util.function.Consumer;
-import java.util.function.Predicate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Created by Yurii on 2015-06-18.
  */
 @Repository
+@Journaled(value = "contacts", codec = GenericContactCodec.class)
 public class ContactsDAOImpl extends AbstractMockDAO<GenericContact, GenericContact> implements ContactsDAO {
 
+    /**
+     * Owner -> contacts adjacency, maintained under the entry lock of main map
+     */
+    private final ConcurrentMap<GenericParticipant, Set<GenericContact>> contactsByOwner = new ConcurrentHashMap<>();
+
     @Override
     public Collection<GenericContact> getContactsOfUser(String login) {
         /*
@@ -33,23 +40,30 @@ public class ContactsDAOImpl extends AbstractMockDAO<GenericContact, GenericCont
         return filterContactsByOwner(new GenericParticipant(ParticipantType.USER, login));
     }
 
-    private static Predicate<Map.Entry<GenericContact, GenericContact>> getParticipantSignaturePredicate(String signature) {
-        return entry -> entry.getKey().getOwner().getSignature().equals(signature);
+    @Override
+    protected void onSaved(GenericContact key, GenericContact previous, GenericContact entity) {
+        if (previous == null) {
+            contactsByOwner.compute(key.getOwner(), (owner, contacts) -> {
+                if (contacts == null) {
+                    contacts = ConcurrentHashMap.newKeySet();
+                }
+                contacts.add(key);
+                return contacts;
+            });
+        }
     }
 
-    private static Predicate<Map.Entry<GenericContact, GenericContact>> getParticipantTypePredicate(ParticipantType type) {
-        return entry -> entry.getKey().getOwner().getType() == type;
+    @Override
+    protected void onDeleted(GenericContact key, GenericContact entity) {
+        contactsByOwner.computeIfPresent(key.getOwner(), (owner, contacts) -> {
+            contacts.remove(key);
+            return contacts.isEmpty() ? null : contacts;
+        });
     }
 
     public Collection<GenericContact> filterContactsByOwner(GenericParticipant owner) {
-        return CollectionsUtils.filterMapValues(
-                getMap(),
-                getContactOwnerParticipantPredicate(owner)
-        );
-    }
-
-    public static Predicate<Map.Entry<GenericContact, GenericContact>> getContactOwnerParticipantPredicate(GenericParticipant owner) {
-        return entry -> entry.getKey().getOwner().equals(owner);
+        Set<GenericContact> contacts = contactsByOwner.get(owner);
+        return contacts == null ? new ArrayList<>() : new ArrayList<>(contacts);
     }
 
     @Override
@@ -70,27 +84,20 @@ public class ContactsDAOImpl extends AbstractMockDAO<GenericContact, GenericCont
     @Override
     public void addRemoveGroupParticipants(String groupSignature, Collection<GenericParticipant> participants, boolean add) {
         GenericParticipant groupAsOwner = new GenericParticipant(ParticipantType.GROUP, groupSignature);
-        Consumer<GenericParticipant> consumer = add ?
-                participant -> ContactsDAOImpl.this.save(
-                        new GenericContact(
-                                groupAsOwner,
-                                new GenericParticipant(
-                                        ParticipantType.USER,
-                                        participant.getSignature()
-                                )
-                        )
-                )
-                : participant -> ContactsDAOImpl.this.delete(
-                new GenericContact(
-                        groupAsOwner,
-                        new GenericParticipant(
-                                ParticipantType.USER,
-                                participant.getSignature()
-                        )
-                )
-        );
-
-        participants.forEach(consumer::accept);
+        for (GenericParticipant participant : participants) {
+            GenericContact groupParticipant = new GenericContact(
+                    groupAsOwner,
+                    new GenericParticipant(
+                            ParticipantType.USER,
+                            participant.getSignature()
+                    )
+            );
+            if (add) {
+                save(groupParticipant);
+            } else {
+                delete(groupParticipant);
+            }
+        }
     }
 
     @Override
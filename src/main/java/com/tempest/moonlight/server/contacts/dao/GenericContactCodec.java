@@ -0,0 +1,38 @@
+package com.tempest.moonlight.server.contacts.dao;
+
+import com.tempest.moonlight.server.common.dao.journal.EntityCodec;
+import com.tempest.moonlight.server.domain.contacts.GenericContact;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.readParticipant;
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.writeParticipant;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ * <br>
+ * Contact is its own key, so the key is the whole entry and entity is not written twice
+ */
+public class GenericContactCodec implements EntityCodec<GenericContact, GenericContact> {
+    @Override
+    public void writeKey(DataOutput out, GenericContact contact) throws IOException {
+        writeParticipant(out, contact.getOwner());
+        writeParticipant(out, contact.getContact());
+    }
+
+    @Override
+    public GenericContact readKey(DataInput in) throws IOException {
+        return new GenericContact(readParticipant(in), readParticipant(in));
+    }
+
+    @Override
+    public void writeEntity(DataOutput out, GenericContact contact) throws IOException {
+    }
+
+    @Override
+    public GenericContact readEntity(DataInput in, GenericContact key) throws IOException {
+        return key;
+    }
+}
@@ -9,6 +9,7 @@ import com.tempest.moonlight.server.contacts.exceptions.IncomingContactRequestNo
 import com.tempest.moonlight.server.contacts.exceptions.IllegalContactRequestResponseStatusException;
 import com.tempest.moonlight.server.contacts.dao.ContactRequestDAO;
 import com.tempest.moonlight.server.contacts.dao.ContactsDAO;
+import com.tempest.moonlight.server.groups.service.GroupService;
 import com.tempest.moonlight.server.util.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -27,6 +28,9 @@ public class ContactsServiceImpl implements ContactsService {
     @Autowired
     private ContactRequestDAO contactRequestDAO;
 
+    @Autowired
+    private GroupService groupService;
+
     @Override
     public Collection<GenericContact> getContactsOfUser(String login) {
         return contactsDAO.getContactsOfUser(login);
@@ -94,6 +98,7 @@ public class ContactsServiceImpl implements ContactsService {
         if(!(contactsDAO.exists(contact) && contactsDAO.exists(inverted))) {
             contactsDAO.save(contact);
             contactsDAO.save(inverted);
+            refreshGroupMembership(contact);
             return true;
         }
         return false;
@@ -105,8 +110,17 @@ public class ContactsServiceImpl implements ContactsService {
         if(contactsDAO.exists(genericContact) || contactsDAO.exists(inverted)) {
             contactsDAO.delete(genericContact);
             contactsDAO.delete(inverted);
+            refreshGroupMembership(genericContact);
             return true;
         }
         return false;
     }
+
+    private void refreshGroupMembership(GenericContact contact) {
+        if(contact.getContact().getType() == ParticipantType.GROUP) {
+            groupService.refreshMembership(contact.getContact().getSignature());
+        } else if(contact.getOwner().getType() == ParticipantType.GROUP) {
+            groupService.refreshMembership(contact.getOwner().getSignature());
+        }
+    }
 }
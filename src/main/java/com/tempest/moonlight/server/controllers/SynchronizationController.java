@@ -3,6 +3,8 @@ package com.tempest.moonlight.server.controllers;
 import com.tempest.moonlight.server.domain.ParticipantType;
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.MessagesDelta;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
 import com.tempest.moonlight.server.contacts.exceptions.ContactsException;
 import com.tempest.moonlight.server.contacts.exceptions.InvalidContactException;
 import com.tempest.moonlight.server.groups.exceptions.GroupsException;
@@ -10,17 +12,29 @@ import com.tempest.moonlight.server.groups.exceptions.IllegalGroupAccessExceptio
 import com.tempest.moonlight.server.common.dto.DtoConverter;
 import com.tempest.moonlight.server.contacts.dto.GenericParticipantDTO;
 import com.tempest.moonlight.server.messages.dto.ChatMessageDTO;
+import com.tempest.moonlight.server.messages.dto.MessageDeliveryStatusDTO;
+import com.tempest.moonlight.server.messages.dto.MessagesDeltaDTO;
+import com.tempest.moonlight.server.messages.dto.MessagesPageDTO;
+import com.tempest.moonlight.server.messages.dto.MessagesPageRequestDTO;
+import com.tempest.moonlight.server.messages.dto.MessagesSyncRequestDTO;
+import com.tempest.moonlight.server.messages.dto.OfflineMessagesRequestDTO;
+import com.tempest.moonlight.server.messages.dto.UnreadCounterDTO;
 import com.tempest.moonlight.server.groups.service.GroupService;
 import com.tempest.moonlight.server.messages.services.MessageService;
+import com.tempest.moonlight.server.messages.services.OfflineMessagesService;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 @Controller
 public class SynchronizationController {
@@ -39,13 +53,16 @@ public class SynchronizationController {
     @Autowired
     private GroupService groupService;
 
+    @Autowired
+    private OfflineMessagesService offlineMessagesService;
+
     @MessageMapping("messages/all")
     @SendToUser(value = "messages/all", broadcast = false)
-    public Collection<ChatMessageDTO> onGetAllMessagesRequest(Principal principal) {
+    public Collection<?> onGetAllMessagesRequest(Principal principal) {
         String name = principal.getName();
         Collection<ChatMessage> messagesOfUser = messageService.getMessagesOfUser(name);
 //        toParticipantSender.sendToUserQueue(name, "sync/messages", messagesOfUser);
-        return (Collection<ChatMessageDTO>) dtoConverter.convertToDTOs(messagesOfUser);
+        return dtoConverter.convertToOutbound(messagesOfUser);
     }
 
     /*
@@ -69,7 +86,7 @@ public class SynchronizationController {
     @MessageMapping("messages/participant")
     @SendToUser(value = "/queue/messages/participant", broadcast = false)
 //    @SendToUser(value = "messages/participant", broadcast = false)
-    public Collection<ChatMessageDTO> onGetMessagesWithContactRequest(Principal principal, @Payload GenericParticipantDTO participantDTO) throws ContactsException, IllegalGroupAccessException {
+    public Collection<?> onGetMessagesWithContactRequest(Principal principal, @Payload GenericParticipantDTO participantDTO) throws ContactsException, IllegalGroupAccessException {
         GenericParticipant contact = dtoConverter.convertFromDTO(participantDTO);
         if(contact == null) {
             throw new InvalidContactException();
@@ -86,13 +103,83 @@ public class SynchronizationController {
         }
 
 //        logger.error("onGetMessagesWithContactRequest: messages = " + messagesBetween);
-        return (Collection<ChatMessageDTO>) dtoConverter.convertToDTOs(messageService.getMessagesBetween(name, contact));
+        return dtoConverter.convertToOutbound(messageService.getMessagesBetween(name, contact));
+    }
+
+    @MessageMapping("messages/all/page")
+    @SendToUser(value = "/queue/messages/all/page", broadcast = false)
+    public MessagesPageDTO onGetAllMessagesPageRequest(Principal principal, @Payload MessagesPageRequestDTO pageRequestDTO) {
+        MessagesPage page = messageService.getMessagesOfUser(
+                principal.getName(),
+                pageRequestDTO.toCursor(), pageRequestDTO.toDirection(), pageRequestDTO.getLimit()
+        );
+        return new MessagesPageDTO(null, page, dtoConverter.convertToOutbound(page.getMessages()));
+    }
+
+    @MessageMapping("messages/participant/page")
+    @SendToUser(value = "/queue/messages/participant/page", broadcast = false)
+    public MessagesPageDTO onGetMessagesWithContactPageRequest(Principal principal, @Payload MessagesPageRequestDTO pageRequestDTO) throws ContactsException, IllegalGroupAccessException {
+        GenericParticipant contact = pageRequestDTO.toParticipant();
+        if(contact == null) {
+            throw new InvalidContactException();
+        }
+        if(contact.getType() == null) {
+            contact.setType(ParticipantType.USER);
+        }
+        String name = principal.getName();
+
+        if(contact.getType() == ParticipantType.GROUP) {
+            if(!groupService.checkUserBelongsToGroup(contact.getSignature(), name)) {
+                throw new IllegalGroupAccessException(contact.getSignature());
+            }
+        }
+
+        MessagesPage page = messageService.getMessagesBetween(
+                name, contact,
+                pageRequestDTO.toCursor(), pageRequestDTO.toDirection(), pageRequestDTO.getLimit()
+        );
+        return new MessagesPageDTO(contact, page, dtoConverter.convertToOutbound(page.getMessages()));
+    }
+
+    /**
+     * Returns changes of messages of user after watermark of the request, see {@link MessageService#getMessagesDelta}.
+     * Client sends returned watermark with the next request, and reloads history if delta is reset
+     */
+    @MessageMapping("messages/sync")
+    @SendToUser(value = "/queue/messages/sync", broadcast = false)
+    public MessagesDeltaDTO onSyncMessagesRequest(Principal principal, @Payload MessagesSyncRequestDTO syncRequestDTO) {
+        MessagesDelta delta = messageService.getMessagesDelta(
+                principal.getName(),
+                syncRequestDTO.getEpoch(), syncRequestDTO.getSequence(), syncRequestDTO.getLimit()
+        );
+        return new MessagesDeltaDTO(
+                delta,
+                dtoConverter.convertToOutbound(delta.getMessages()),
+                dtoConverter.convertToDTOs(delta.getStatuses(), MessageDeliveryStatusDTO.class)
+        );
     }
 
+    /**
+     * Client requests offline inbox after it subscribed to incoming messages, acknowledging the previous batch,
+     * the next batch is sent to /user/queue/messages/offline of the session, see {@link OfflineMessagesService#replay}
+     */
     @MessageMapping("messages/offline")
-    @SendToUser(value = "messages/offline", broadcast = false)
-    public Collection<ChatMessageDTO> onGetOfflineMessagesRequest(Principal principal) {
-        return null;
+    public void onGetOfflineMessagesRequest(Principal principal, SimpMessageHeaderAccessor headers, @Payload OfflineMessagesRequestDTO requestDTO) {
+        offlineMessagesService.replay(principal.getName(), headers.getSessionId(), requestDTO.getAck());
+    }
+
+    /**
+     * Returns numbers of unread messages per conversation, see {@link MessageService#getUnreadCounters}
+     */
+    @MessageMapping("messages/unread")
+    @SendToUser(value = "/queue/messages/unread", broadcast = false)
+    public List<UnreadCounterDTO> onGetUnreadCountersRequest(Principal principal) {
+        Map<GenericParticipant, Integer> counters = messageService.getUnreadCounters(principal.getName());
+        List<UnreadCounterDTO> counterDTOs = new ArrayList<>(counters.size());
+        for (Map.Entry<GenericParticipant, Integer> entry : counters.entrySet()) {
+            counterDTOs.add(new UnreadCounterDTO(entry.getKey(), entry.getValue()));
+        }
+        return counterDTOs;
     }
 
     @SendToUser(value = "/queue/errors", broadcast = false)
@@ -1,10 +1,12 @@
 package com.tempest.moonlight.server.domain.contacts;
 
 import com.tempest.moonlight.server.annotations.DTO;
+import com.tempest.moonlight.server.annotations.DirectSerializer;
 import com.tempest.moonlight.server.domain.HasIntValue;
 import com.tempest.moonlight.server.common.dao.IdentifiedEntity;
 import com.tempest.moonlight.server.common.dto.EntityDTO;
 import com.tempest.moonlight.server.contacts.dto.ContactRequestDTO;
+import com.tempest.moonlight.server.serialization.ContactRequestSerializer;
 import org.springframework.stereotype.Component;
 
 import java.io.Serializable;
@@ -29,6 +31,7 @@ import java.util.Map;
  */
 @Component
 @DTO(dto = ContactRequestDTO.class, type = EntityDTO.DtoType.BiDir)
+@DirectSerializer(ContactRequestSerializer.class)
 public class ContactRequest implements IdentifiedEntity<ContactRequest>, Serializable {
 
     public enum Status implements HasIntValue {
@@ -1,15 +1,18 @@
 package com.tempest.moonlight.server.domain.contacts;
 
 import com.tempest.moonlight.server.annotations.DTO;
+import com.tempest.moonlight.server.annotations.DirectSerializer;
 import com.tempest.moonlight.server.domain.ParticipantType;
 import com.tempest.moonlight.server.common.dto.EntityDTO;
 import com.tempest.moonlight.server.contacts.dto.GenericParticipantDTO;
+import com.tempest.moonlight.server.serialization.GenericParticipantSerializer;
 import org.springframework.stereotype.Component;
 
 /**
  * Created by Yurii on 2015-06-20.
  */
 @DTO(type = EntityDTO.DtoType.BiDir, dto = GenericParticipantDTO.class)
+@DirectSerializer(GenericParticipantSerializer.class)
 @Component
 public class GenericParticipant {
     private ParticipantType type;
@@ -1,12 +1,14 @@
 package com.tempest.moonlight.server.domain.messages;
 
 import com.tempest.moonlight.server.annotations.DTO;
+import com.tempest.moonlight.server.annotations.DirectSerializer;
 import com.tempest.moonlight.server.domain.MessageKey;
 import com.tempest.moonlight.server.domain.ParticipantType;
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.common.dao.IdentifiedEntity;
 import com.tempest.moonlight.server.common.dto.EntityDTO;
 import com.tempest.moonlight.server.messages.dto.ChatMessageDTO;
+import com.tempest.moonlight.server.serialization.ChatMessageSerializer;
 import org.springframework.stereotype.Component;
 
 import java.io.Serializable;
@@ -15,6 +17,7 @@ import java.io.Serializable;
  * Created by Yurii on 4/21/2015.
  */
 @DTO(type = EntityDTO.DtoType.BiDir, dto = ChatMessageDTO.class)
+@DirectSerializer(ChatMessageSerializer.class)
 @Component
 public class ChatMessage implements Serializable, IdentifiedEntity<MessageKey> {
 
@@ -30,7 +33,7 @@ public class ChatMessage implements Serializable, IdentifiedEntity<MessageKey> {
     private String subject;
     private String text;
 
-    private MessageStatus status;
+    private volatile MessageStatus status;
 
     public ChatMessage() {
     }
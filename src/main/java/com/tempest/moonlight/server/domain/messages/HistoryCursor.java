@@ -0,0 +1,51 @@
+package com.tempest.moonlight.server.domain.messages;
+
+/**
+ * Created by Yurii on 2015-08-03.
+ *
+ * Position in time ordered history: messages are ordered by time, then by uuid
+ */
+public class HistoryCursor {
+    public final long time;
+    public final String uuid;
+
+    public HistoryCursor(long time, String uuid) {
+        this.time = time;
+        this.uuid = uuid == null ? "" : uuid;
+    }
+
+    public static HistoryCursor of(ChatMessage message) {
+        return new HistoryCursor(message.getTime(), message.getUuid());
+    }
+
+    public int compareTo(long time, String uuid) {
+        int result = Long.compare(this.time, time);
+        return result != 0 ? result : this.uuid.compareTo(uuid);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HistoryCursor that = (HistoryCursor) o;
+
+        if (time != that.time) return false;
+        return uuid.equals(that.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (time ^ (time >>> 32));
+        result = 31 * result + uuid.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "time=" + time +
+                ", uuid='" + uuid + '\'' +
+                '}';
+    }
+}
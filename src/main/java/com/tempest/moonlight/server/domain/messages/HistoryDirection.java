@@ -0,0 +1,43 @@
+package com.tempest.moonlight.server.domain.messages;
+
+import com.tempest.moonlight.server.domain.HasIntValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Created by Yurii on 2015-08-03.
+ */
+public enum HistoryDirection implements HasIntValue {
+    /**
+     * Older messages than cursor, latest messages if there is no cursor
+     */
+    BEFORE(0),
+    /**
+     * Newer messages than cursor, earliest messages if there is no cursor
+     */
+    AFTER(1)
+    ;
+    public final int value;
+
+    HistoryDirection(int value) {
+        this.value = value;
+    }
+
+    @Override
+    public Integer getValue() {
+        return value;
+    }
+
+    private static final Map<Integer, HistoryDirection> MAP = new HashMap<>();
+
+    static {
+        for (HistoryDirection direction : values()) {
+            MAP.put(direction.getValue(), direction);
+        }
+    }
+
+    public static HistoryDirection getByValue(int value) {
+        return MAP.get(value);
+    }
+}
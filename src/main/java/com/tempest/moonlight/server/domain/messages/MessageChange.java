@@ -0,0 +1,39 @@
+package com.tempest.moonlight.server.domain.messages;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ *
+ * Entry of user's change feed: message was created or its status was changed
+ */
+public final class MessageChange {
+    /**
+     * Position in the feed, greater than positions of all changes recorded in the same feed before
+     */
+    public final long sequence;
+    public final MessageKey key;
+    /**
+     * New status, null if message was created
+     */
+    public final MessageStatus status;
+
+    public MessageChange(long sequence, MessageKey key, MessageStatus status) {
+        this.sequence = sequence;
+        this.key = key;
+        this.status = status;
+    }
+
+    public boolean isCreated() {
+        return status == null;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChange{" +
+                "sequence=" + sequence +
+                ", key=" + key +
+                ", status=" + status +
+                '}';
+    }
+}
@@ -32,6 +32,13 @@ public enum MessageStatus implements HasIntValue {
         }
     }
 
+    /**
+     * Statuses only move forward: ARRIVED -> DELIVERED -> READ, absent status may become any
+     */
+    public static boolean canAdvance(MessageStatus current, MessageStatus next) {
+        return current == null || next.value > current.value;
+    }
+
     public static MessageStatus getByValue(int value) {
         return MAP.get(value);
     }
@@ -0,0 +1,75 @@
+package com.tempest.moonlight.server.domain.messages;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ *
+ * Changes of user's messages after client's watermark (epoch and sequence)
+ */
+public class MessagesDelta {
+    private final long epoch;
+    /**
+     * Watermark to send with the next sync request
+     */
+    private final long sequence;
+    /**
+     * True if changes after client's watermark are no longer known (server restarted or feed was truncated),
+     * so client has to reload history
+     */
+    private final boolean reset;
+    private final boolean hasMore;
+
+    private final Collection<ChatMessage> messages;
+    private final Collection<MessageDeliveryStatus> statuses;
+
+    public MessagesDelta(long epoch, long sequence, boolean reset, boolean hasMore, Collection<ChatMessage> messages, Collection<MessageDeliveryStatus> statuses) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.reset = reset;
+        this.hasMore = hasMore;
+        this.messages = messages;
+        this.statuses = statuses;
+    }
+
+    public static MessagesDelta reset(long epoch, long sequence) {
+        return new MessagesDelta(epoch, sequence, true, false, Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesDelta{" +
+                "epoch=" + epoch +
+                ", sequence=" + sequence +
+                ", reset=" + reset +
+                ", hasMore=" + hasMore +
+                ", messages=" + messages.size() +
+                ", statuses=" + statuses.size() +
+                '}';
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public Collection<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public Collection<MessageDeliveryStatus> getStatuses() {
+        return statuses;
+    }
+}
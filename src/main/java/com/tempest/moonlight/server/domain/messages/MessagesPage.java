@@ -0,0 +1,57 @@
+package com.tempest.moonlight.server.domain.messages;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Yurii on 2015-08-03.
+ */
+public class MessagesPage {
+    /**
+     * Messages sorted by time ascending
+     */
+    private final List<ChatMessage> messages;
+    private final HistoryDirection direction;
+    /**
+     * Cursor to request next page in the same direction, the requested one if page is empty
+     */
+    private final HistoryCursor next;
+    private final boolean hasMore;
+
+    public MessagesPage(List<ChatMessage> messages, HistoryDirection direction, HistoryCursor next, boolean hasMore) {
+        this.messages = messages;
+        this.direction = direction;
+        this.next = next;
+        this.hasMore = hasMore;
+    }
+
+    public static MessagesPage empty(HistoryDirection direction, HistoryCursor cursor) {
+        return new MessagesPage(Collections.emptyList(), direction, cursor, false);
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesPage{" +
+                "messages=" + messages.size() +
+                ", direction=" + direction +
+                ", next=" + next +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public HistoryDirection getDirection() {
+        return direction;
+    }
+
+    public HistoryCursor getNext() {
+        return next;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
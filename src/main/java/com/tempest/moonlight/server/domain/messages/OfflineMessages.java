@@ -0,0 +1,49 @@
+package com.tempest.moonlight.server.domain.messages;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Yurii on 2015-08-13.
+ *
+ * Batch of offline inbox of user. Messages stay in inbox until user acknowledges the sequence of the batch
+ */
+public class OfflineMessages {
+    private final List<ChatMessage> messages;
+    /**
+     * Sequence of the last inbox entry of the batch, including skipped ones, null if the batch is empty
+     */
+    private final Long sequence;
+    private final boolean hasMore;
+
+    public OfflineMessages(List<ChatMessage> messages, Long sequence, boolean hasMore) {
+        this.messages = messages;
+        this.sequence = sequence;
+        this.hasMore = hasMore;
+    }
+
+    public static OfflineMessages empty() {
+        return new OfflineMessages(Collections.emptyList(), null, false);
+    }
+
+    @Override
+    public String toString() {
+        return "OfflineMessages{" +
+                "messages=" + messages.size() +
+                ", sequence=" + sequence +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,21 @@
+package com.tempest.moonlight.server.domain.messages;
+
+/**
+ * Created by Yurii on 2015-08-15.
+ *
+ * Outcome of an attempt to change status of a message
+ */
+public enum StatusTransition {
+    /**
+     * Status was advanced
+     */
+    APPLIED,
+    /**
+     * Message already has the same or a later status, nothing changed
+     */
+    STALE,
+    /**
+     * There is no such message
+     */
+    MISSING
+}
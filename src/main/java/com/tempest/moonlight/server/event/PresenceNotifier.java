@@ -0,0 +1,207 @@
+package com.tempest.moonlight.server.event;
+
+import com.tempest.moonlight.server.contacts.service.ContactsService;
+import com.tempest.moonlight.server.domain.contacts.GenericContact;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.presence.PresenceMessage;
+import com.tempest.moonlight.server.domain.presence.PresenceStatus;
+import com.tempest.moonlight.server.users.service.ActiveUsersService;
+import com.tempest.moonlight.server.util.CollectionsUtils;
+import com.tempest.moonlight.server.websockets.ToParticipantSender;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by Yurii on 2015-08-21.
+ *
+ * Announces users going online and offline to their active contacts.
+ * Transition is held for grace interval: if user returns to the announced status meanwhile
+ * (e.g. reconnect of flapping mobile connection) the transition is cancelled and nobody is notified.
+ * Every tick all due transitions are announced together, each recipient gets them as one list
+ * to /user/queue/presence
+ */
+@Component
+public class PresenceNotifier implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger(PresenceNotifier.class.getName());
+
+    private static final String DESTINATION = "presence";
+
+    @Value("${chat.presence.grace-ms:2000}")
+    private long graceMs;
+
+    @Value("${chat.presence.tick-ms:200}")
+    private long tickMs;
+
+    @Autowired
+    private ActiveUsersService activeUsersService;
+
+    @Autowired
+    private ContactsService contactsService;
+
+    @Autowired
+    private ToParticipantSender toParticipantSender;
+
+    /**
+     * Users announced online, changed only while the user's entry of pending is locked
+     */
+    private final Set<String> announcedOnline = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentMap<String, PendingTransition> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder transitions = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder announced = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+
+    private ScheduledExecutorService tickExecutor;
+
+    @PostConstruct
+    public void start() {
+        tickExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tickExecutor.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        tickExecutor.shutdown();
+    }
+
+    public void userOnline(String login) {
+        transit(login, PresenceStatus.online);
+    }
+
+    public void userOffline(String login) {
+        transit(login, PresenceStatus.offline);
+    }
+
+    private void transit(String login, PresenceStatus status) {
+        transitions.increment();
+        pending.compute(login, (l, transition) -> {
+            if (status == getAnnounced(login)) {
+                if (transition != null) {
+                    cancelled.increment();
+                }
+                return null;
+            }
+            if (transition != null && transition.status == status) {
+                return transition;
+            }
+            return new PendingTransition(status, System.currentTimeMillis() + graceMs);
+        });
+    }
+
+    private PresenceStatus getAnnounced(String login) {
+        return announcedOnline.contains(login) ? PresenceStatus.online : PresenceStatus.offline;
+    }
+
+    private void tick() {
+        try {
+            List<PresenceMessage> changes = takeDueChanges(System.currentTimeMillis());
+            if (!changes.isEmpty()) {
+                announce(changes);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Unable to announce presence changes", e);
+        }
+    }
+
+    private List<PresenceMessage> takeDueChanges(long now) {
+        List<PresenceMessage> changes = new ArrayList<>();
+        for (Map.Entry<String, PendingTransition> entry : pending.entrySet()) {
+            if (entry.getValue().dueAt > now) {
+                continue;
+            }
+            pending.computeIfPresent(entry.getKey(), (login, transition) -> {
+                if (transition.dueAt > now) {
+                    return transition;
+                }
+                if (transition.status == PresenceStatus.online) {
+                    announcedOnline.add(login);
+                } else {
+                    announcedOnline.remove(login);
+                }
+                changes.add(new PresenceMessage(login, transition.status));
+                return null;
+            });
+        }
+        return changes;
+    }
+
+    /**
+     * Recipients of a single change share its list, so the common case is one payload sent to many users
+     */
+    private void announce(List<PresenceMessage> changes) {
+        Map<GenericParticipant, List<PresenceMessage>> changesByRecipient = new HashMap<>();
+        for (PresenceMessage change : changes) {
+            List<PresenceMessage> single = Collections.singletonList(change);
+            for (GenericParticipant recipient : getActiveContacts(change.getLogin())) {
+                changesByRecipient.merge(recipient, single, (previous, added) -> {
+                    // list of one change is the shared one, lists of more changes are owned by recipient
+                    List<PresenceMessage> merged = previous.size() == 1 ? new ArrayList<>(previous) : previous;
+                    merged.addAll(added);
+                    return merged;
+                });
+            }
+        }
+        announced.add(changes.size());
+        frames.add(changesByRecipient.size());
+        logger.info("Announcing presence changes = " + changes.size() + " to recipients = " + changesByRecipient.size());
+
+        toParticipantSender.sendToUsersQueue(changesByRecipient, DESTINATION);
+    }
+
+    private Collection<GenericParticipant> getActiveContacts(String login) {
+        return activeUsersService.getActive(
+                CollectionsUtils.convertToSet(
+                        contactsService.getContactsOfUser(login),
+                        GenericContact::getContact
+                )
+        );
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("chat.presence.pending", pending.size()));
+        metrics.add(new Metric<>("chat.presence.transitions", transitions.sum()));
+        metrics.add(new Metric<>("chat.presence.cancelled", cancelled.sum()));
+        metrics.add(new Metric<>("chat.presence.announced", announced.sum()));
+        metrics.add(new Metric<>("chat.presence.frames", frames.sum()));
+        return metrics;
+    }
+
+    private static class PendingTransition {
+        private final PresenceStatus status;
+        private final long dueAt;
+
+        private PendingTransition(PresenceStatus status, long dueAt) {
+            this.status = status;
+            this.dueAt = dueAt;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.tempest.moonlight.server.event;
+
+import com.tempest.moonlight.server.util.StripedExecutor;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by Yurii on 2015-08-22.
+ *
+ * Handles session lifecycle events off the WebSocket transport threads that publish them.
+ * Events of one user go to the same lane, so connect and disconnect of the user are handled in order.
+ * Transport thread never waits: when queue of a lane is full, events overflow to unbounded queue of the lane,
+ * which is reported as saturation and overflow depth
+ */
+@Component
+public class SessionEventsExecutor implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger(SessionEventsExecutor.class.getName());
+
+    @Value("${chat.session-events.threads:0}")
+    private int threads;
+
+    @Value("${chat.session-events.queue-capacity:1024}")
+    private int queueCapacity;
+
+    private StripedExecutor executor;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder waitTotalNanos = new LongAdder();
+    private final AtomicLong waitMaxNanos = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        int lanes = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new StripedExecutor("session-events", lanes, queueCapacity, true);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!executor.shutdown(5, TimeUnit.SECONDS)) {
+            logger.warn("Session events lanes did not finish pending events in time");
+        }
+    }
+
+    public void execute(String login, Runnable handler) {
+        long submitted = System.nanoTime();
+        executor.execute(login, () -> {
+            long waitNanos = System.nanoTime() - submitted;
+            waitTotalNanos.add(waitNanos);
+            waitMaxNanos.accumulateAndGet(waitNanos, Math::max);
+            events.increment();
+            try {
+                handler.run();
+            } catch (RuntimeException e) {
+                failures.increment();
+                logger.error("Unable to handle session event of " + login, e);
+            }
+        });
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long count = events.sum();
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("chat.session-events.lanes", executor.getLanesCount()));
+        metrics.add(new Metric<>("chat.session-events.queue.depth", executor.getQueueDepth()));
+        metrics.add(new Metric<>("chat.session-events.overflow.depth", executor.getOverflowDepth()));
+        metrics.add(new Metric<>("chat.session-events.active", executor.getActiveCount()));
+        metrics.add(new Metric<>("chat.session-events.saturations", executor.getSaturationCount()));
+        metrics.add(new Metric<>("chat.session-events.count", count));
+        metrics.add(new Metric<>("chat.session-events.failures", failures.sum()));
+        metrics.add(new Metric<>("chat.session-events.wait.mean-ms", count == 0 ? 0.0 : waitTotalNanos.sum() / 1e6 / count));
+        metrics.add(new Metric<>("chat.session-events.wait.max-ms", waitMaxNanos.get() / 1e6));
+        return metrics;
+    }
+}
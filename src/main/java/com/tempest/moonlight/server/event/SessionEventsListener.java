@@ -1,41 +1,42 @@
 package com.tempest.moonlight.server.event;
 
-import com.tempest.moonlight.server.domain.contacts.GenericContact;
-import com.tempest.moonlight.server.domain.presence.PresenceMessage;
-import com.tempest.moonlight.server.domain.presence.PresenceStatus;
-import com.tempest.moonlight.server.contacts.service.ContactsService;
+import com.tempest.moonlight.server.common.logging.HotPathLogger;
 import com.tempest.moonlight.server.users.service.ActiveUsersService;
-import com.tempest.moonlight.server.util.CollectionsUtils;
-import com.tempest.moonlight.server.websockets.ToParticipantSender;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
 import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.security.Principal;
+
 /**
  * Listener to track user presence. 
- * Sends notifications to the login destination when a connected event is received
- * and notifications to the logout destination when a disconnect event is received
+ * Reports the first session of user and the last closed one to {@link PresenceNotifier},
+ * which announces them to contacts of user
  */
 public class SessionEventsListener implements ApplicationListener<ApplicationEvent> {
 
 	private static final Logger logger = Logger.getLogger(SessionEventsListener.class.getName());
 
+	private static final HotPathLogger sessionsLogger = HotPathLogger.getLogger(SessionEventsListener.class, "session-events");
+
 //	private final IdTimestampMessageHeaderInitializer headerInitializer;
 
     @Autowired
     private ActiveUsersService activeUsersService;
 
-    @Autowired
-    private ContactsService contactsService;
-
 //	private SimpMessagingTemplate messagingTemplate;
 
     @Autowired
-    private ToParticipantSender toParticipantSender;
+    private PresenceNotifier presenceNotifier;
+
+    @Autowired
+    private SessionEventsExecutor sessionEventsExecutor;
 
 //    private String loginDestination;
 //	private String logoutDestination;
@@ -52,41 +53,44 @@ public class SessionEventsListener implements ApplicationListener<ApplicationEve
 //		messagingTemplate.setHeaderInitializer(headerInitializer);
 //	}
 
+	/**
+	 * Session events are handled by {@link SessionEventsExecutor}. Transport thread only reads user and session id
+	 * from headers and queues them, so the lane never touches the event or its message
+	 */
 	@Override
 	public void onApplicationEvent(ApplicationEvent event) {
-		if(event instanceof SessionConnectEvent) {
-			handleSessionConnected((SessionConnectEvent) event);
-		} else if(event instanceof SessionDisconnectEvent) {
-			handleSessionDisconnect((SessionDisconnectEvent) event);
+		if(event instanceof SessionConnectEvent || event instanceof SessionDisconnectEvent) {
+			MessageHeaders headers = ((AbstractSubProtocolEvent) event).getMessage().getHeaders();
+			Principal user = SimpMessageHeaderAccessor.getUser(headers);
+			if(user == null) {
+				return;
+			}
+			String username = user.getName();
+			if(event instanceof SessionConnectEvent) {
+				String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+				sessionEventsExecutor.execute(username, () -> handleSessionConnected(username, sessionId));
+			} else {
+				String sessionId = ((SessionDisconnectEvent) event).getSessionId();
+				sessionEventsExecutor.execute(username, () -> handleSessionDisconnect(username, sessionId));
+			}
 		}
 	}
 
-	private void handleSessionConnected(SessionConnectEvent event) {
-        logger.error("handleSessionConnected()");
-		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
-		String username = headers.getUser().getName();
+	private void handleSessionConnected(String username, String sessionId) {
+		sessionsLogger.info("session connected user={} session={}", username, sessionId);
 
-		UserSession userSession = new UserSession(headers.getSessionId(), username);
+		UserSession userSession = new UserSession(sessionId, username);
 		if(activeUsersService.addUserSession(userSession)) {
 //            PresenceMessage presence = new PresenceMessage(username, PresenceStatus.online);
-            broadcastUserPresence(username, PresenceStatus.online);
+            presenceNotifier.userOnline(username);
 //            messagingTemplate.convertAndSend(presenceDestination, presence);
         }
 	}
 	
-	private void handleSessionDisconnect(SessionDisconnectEvent event) {
-        String sessionId = event.getSessionId();
-//        logger.error("sessionId from SessionDisconnectEvent = " + sessionId);
-
-        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
-        String username = headers.getUser().getName();
-//        logger.error("sessionId from Headers = " + headers.getSessionId());
-
-		if(activeUsersService.sessionExists(sessionId)) {
-            if(activeUsersService.deleteUserSession(sessionId, username)) {
-                broadcastUserPresence(username, PresenceStatus.offline);
-            }
-		}
+	private void handleSessionDisconnect(String username, String sessionId) {
+        if(activeUsersService.deleteUserSession(sessionId, username)) {
+            presenceNotifier.userOffline(username);
+        }
 
 //		Optional.ofNullable(participantRepository.getParticipant(event.getSessionId())).ifPresent(login -> {
 //					messagingTemplate.convertAndSend(logoutDestination, new LogoutEvent(login.getUsername()));
@@ -96,22 +100,6 @@ public class SessionEventsListener implements ApplicationListener<ApplicationEve
 //		);
 	}
 
-    private void broadcastUserPresence(String login, PresenceStatus presenceStatus) {
-        logger.error("Sending presence message = [user = " + login + ", status = " + presenceStatus + "]");
-
-        toParticipantSender.sendToUsersQueue(
-                activeUsersService.getActive(
-                        CollectionsUtils.convertToSet(
-                                contactsService.getContactsOfUser(login),
-                                GenericContact::getContact
-                        )
-                ),
-                "presence",
-                new PresenceMessage(login, presenceStatus)
-        );
-    }
-
-
 //	public ParticipantRepository getParticipantRepository() {
 //		return participantRepository;
 //	}
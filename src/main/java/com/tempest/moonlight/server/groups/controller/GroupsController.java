@@ -12,6 +12,8 @@ import com.tempest.moonlight.server.contacts.dto.ContactRequestDTO;
 import com.tempest.moonlight.server.contacts.dto.GenericParticipantDTO;
 import com.tempest.moonlight.server.groups.dto.GroupParticipantsChangeDTO;
 import com.tempest.moonlight.server.groups.dto.GroupParticipantsDTO;
+import com.tempest.moonlight.server.groups.dto.GroupParticipantsDeltaDTO;
+import com.tempest.moonlight.server.groups.service.GroupMembership;
 import com.tempest.moonlight.server.groups.service.GroupParticipantsChangesHolder;
 import com.tempest.moonlight.server.groups.service.GroupService;
 import com.tempest.moonlight.server.util.StringUtils;
@@ -25,11 +27,9 @@ import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * Created by Yurii on 2015-06-22.
@@ -60,15 +60,15 @@ public class GroupsController {
         }
         Group group = checkGetGroup(groupSignature, false);
         groupService.addUserToGroup(group, principal.getName());
-        return new GroupParticipantsDTO(
-                group,
-                (List<GenericParticipantDTO>) dtoConverter.convertToDTOs(groupService.getParticipants(group))
-        );
+        return toParticipantsDTO(groupService.getMembership(groupSignature));
     }
 
+    /**
+     * Members of the group (including removed ones) get {@link GroupParticipantsDeltaDTO} to /queue/groups/delta,
+     * one payload is shared by all of them. Added users also get invitation to their contact requests
+     */
     @MessageMapping("groups/changes")
-    @SendToUser("/queue/groups")
-    public GroupParticipantsDTO onGroupParticipantsChange(Principal principal, @Payload GroupParticipantsChangeDTO participantsChangeDTO) throws GroupsException {
+    public void onGroupParticipantsChange(Principal principal, @Payload GroupParticipantsChangeDTO participantsChangeDTO) throws GroupsException {
         String groupSignature = participantsChangeDTO.getSignature();
         if(StringUtils.isEmpty(groupSignature)) {
             throw new InvalidGroupSignatureException();
@@ -89,82 +89,45 @@ public class GroupsController {
 
         logger.info("onGroupParticipantsChange: changesHolder = " + changesHolder);
 
-        Collection<GenericParticipant> updatedParticipants = changesHolder.updatedParticipants;
-
-
+        if(!changesHolder.hasChanges()) {
+            return;
+        }
 
         String sender = principal.getName();
         long millis = System.currentTimeMillis();
 
-        Map<GenericParticipant, ContactRequestDTO> groupAddNotifications = changesHolder.addedParticipants.stream().collect(
-                Collectors.toMap(
-                        Function.identity(),
-                        addedParticipant ->
-                                new ContactRequestDTO(
-                                        sender,
-                                        addedParticipant.getSignature(),
-                                        ParticipantType.GROUP,
-                                        groupSignature,
-                                        ContactRequest.Status.PENDING,
-                                        millis
-                                )
-                )
-        );
-
-        Map<GenericParticipant, ContactRequestDTO> groupRemoveNotifications = changesHolder.removedParticipants.stream().collect(
-                Collectors.toMap(
-                        Function.identity(),
-                        removedParticipant ->
-                                new ContactRequestDTO(
-                                        sender,
-                                        removedParticipant.getSignature(),
-                                        ParticipantType.GROUP,
-                                        groupSignature,
-                                        ContactRequest.Status.REJECTED,
-                                        millis
-                                )
-                )
-        );
-
-        groupAddNotifications.forEach(
-                (participant, contactRequestDTO) -> {
-                    try {
-                        contactsController.onContactRequest(
-                                principal, contactRequestDTO
-                        );
-                    } catch (ContactsException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-        );
+        for (GenericParticipant addedParticipant : changesHolder.addedParticipants) {
+            try {
+                contactsController.onContactRequest(
+                        principal,
+                        new ContactRequestDTO(
+                                sender,
+                                addedParticipant.getSignature(),
+                                ParticipantType.GROUP,
+                                groupSignature,
+                                ContactRequest.Status.PENDING,
+                                millis
+                        )
+                );
+            } catch (ContactsException e) {
+                throw new RuntimeException(e);
+            }
+        }
 
-        groupRemoveNotifications.forEach(
-                (participant, contactRequestDTO) -> {
-                    try {
-                        contactsController.onContactRequest(
-                                principal, contactRequestDTO
-                        );
-                    } catch (ContactsException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
+        GroupParticipantsDeltaDTO deltaDTO = new GroupParticipantsDeltaDTO(
+                groupSignature,
+                changesHolder.previousVersion,
+                changesHolder.version,
+                (List<GenericParticipantDTO>) dtoConverter.convertToDTOs(changesHolder.addedParticipants),
+                (List<GenericParticipantDTO>) dtoConverter.convertToDTOs(changesHolder.removedParticipants)
         );
 
-//        String destination = "contacts/reply";
-//        toParticipantSender.sendToUsersQueue(
-//                groupRemoveNotifications,
-//                destination
-//        );
-//
-//        toParticipantSender.sendToUsersQueue(
-//                groupAddNotifications,
-//                destination
-//        );
-
-        return new GroupParticipantsDTO(
-                group,
-                (List<GenericParticipantDTO>) dtoConverter.convertToDTOs(updatedParticipants)
+        Collection<GenericParticipant> notifiedParticipants = new ArrayList<>(
+                changesHolder.updatedParticipants.size() + changesHolder.removedParticipants.size()
         );
+        notifiedParticipants.addAll(changesHolder.updatedParticipants);
+        notifiedParticipants.addAll(changesHolder.removedParticipants);
+        toParticipantSender.sendToUsersQueue(notifiedParticipants, "groups/delta", deltaDTO);
     }
 
     @MessageMapping("groups/get")
@@ -183,9 +146,14 @@ public class GroupsController {
             }
         }
 
+        return toParticipantsDTO(groupService.getMembership(groupSignature));
+    }
+
+    private GroupParticipantsDTO toParticipantsDTO(GroupMembership membership) {
         return new GroupParticipantsDTO(
-                groupSignature,
-                (List<GenericParticipantDTO>) dtoConverter.convertToDTOs(groupService.getParticipants(groupSignature))
+                membership.signature,
+                membership.version,
+                (List<GenericParticipantDTO>) dtoConverter.convertToDTOs(membership.getParticipants())
         );
     }
 
@@ -0,0 +1,42 @@
+package com.tempest.moonlight.server.groups.dao;
+
+import com.tempest.moonlight.server.common.dao.journal.EntityCodec;
+import com.tempest.moonlight.server.domain.Group;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.readString;
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.writeString;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ */
+public class GroupCodec implements EntityCodec<Group, String> {
+    @Override
+    public void writeKey(DataOutput out, String signature) throws IOException {
+        writeString(out, signature);
+    }
+
+    @Override
+    public String readKey(DataInput in) throws IOException {
+        return readString(in);
+    }
+
+    @Override
+    public void writeEntity(DataOutput out, Group group) throws IOException {
+        writeString(out, group.getSignature());
+        out.writeBoolean(group.isOpened());
+        out.writeBoolean(group.isEmpty());
+        out.writeLong(group.getLastChangeTime());
+    }
+
+    @Override
+    public Group readEntity(DataInput in, String signature) throws IOException {
+        return new Group(readString(in))
+                .setOpened(in.readBoolean())
+                .setEmpty(in.readBoolean())
+                .setLastChangeTime(in.readLong());
+    }
+}
@@ -1,5 +1,6 @@
 package com.tempest.moonlight.server.groups.dao;
 
+import com.tempest.moonlight.server.annotations.Journaled;
 import com.tempest.moonlight.server.domain.Group;
 import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
 import org.springframework.stereotype.Repository;
@@ -8,5 +9,6 @@ import org.springframework.stereotype.Repository;
  * Created by Yurii on 2015-06-22.
  */
 @Repository
+@Journaled(value = "groups", codec = GroupCodec.class)
 public class GroupDAOMockImpl extends AbstractMockDAO<Group, String> implements GroupDAO {
 }
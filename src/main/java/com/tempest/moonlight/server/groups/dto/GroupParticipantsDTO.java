@@ -10,6 +10,10 @@ import java.util.List;
  */
 public class GroupParticipantsDTO {
     private String signature;
+    /**
+     * Version of participants list, deltas of the group continue from it
+     */
+    private long version;
     private List<GenericParticipantDTO> participants;
 
     public GroupParticipantsDTO() {
@@ -24,10 +28,16 @@ public class GroupParticipantsDTO {
         this(group.getSignature(), participants);
     }
 
+    public GroupParticipantsDTO(String signature, long version, List<GenericParticipantDTO> participants) {
+        this(signature, participants);
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "GroupParticipantsDTO{" +
                 "signature='" + signature + '\'' +
+                ", version=" + version +
                 ", participants=" + participants +
                 '}';
     }
@@ -41,6 +51,15 @@ public class GroupParticipantsDTO {
         return this;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public GroupParticipantsDTO setVersion(long version) {
+        this.version = version;
+        return this;
+    }
+
     public List<GenericParticipantDTO> getParticipants() {
         return participants;
     }
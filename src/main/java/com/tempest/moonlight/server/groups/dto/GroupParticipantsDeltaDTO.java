@@ -0,0 +1,89 @@
+package com.tempest.moonlight.server.groups.dto;
+
+import com.tempest.moonlight.server.contacts.dto.GenericParticipantDTO;
+
+import java.util.List;
+
+/**
+ * Created by Yurii on 2015-08-19.
+ *
+ * Change of group participants. Client applies it only to participants list of previousVersion,
+ * otherwise it missed a change and requests the whole list with groups/get
+ */
+public class GroupParticipantsDeltaDTO {
+
+    private String signature;
+
+    private long previousVersion;
+    private long version;
+
+    private List<GenericParticipantDTO> added;
+    private List<GenericParticipantDTO> removed;
+
+    public GroupParticipantsDeltaDTO() {
+    }
+
+    public GroupParticipantsDeltaDTO(String signature, long previousVersion, long version, List<GenericParticipantDTO> added, List<GenericParticipantDTO> removed) {
+        this.signature = signature;
+        this.previousVersion = previousVersion;
+        this.version = version;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupParticipantsDeltaDTO{" +
+                "signature='" + signature + '\'' +
+                ", previousVersion=" + previousVersion +
+                ", version=" + version +
+                ", added=" + added +
+                ", removed=" + removed +
+                '}';
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public GroupParticipantsDeltaDTO setSignature(String signature) {
+        this.signature = signature;
+        return this;
+    }
+
+    public long getPreviousVersion() {
+        return previousVersion;
+    }
+
+    public GroupParticipantsDeltaDTO setPreviousVersion(long previousVersion) {
+        this.previousVersion = previousVersion;
+        return this;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public GroupParticipantsDeltaDTO setVersion(long version) {
+        this.version = version;
+        return this;
+    }
+
+    public List<GenericParticipantDTO> getAdded() {
+        return added;
+    }
+
+    public GroupParticipantsDeltaDTO setAdded(List<GenericParticipantDTO> added) {
+        this.added = added;
+        return this;
+    }
+
+    public List<GenericParticipantDTO> getRemoved() {
+        return removed;
+    }
+
+    public GroupParticipantsDeltaDTO setRemoved(List<GenericParticipantDTO> removed) {
+        this.removed = removed;
+        return this;
+    }
+}
@@ -0,0 +1,65 @@
+package com.tempest.moonlight.server.groups.service;
+
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Created by Yurii on 2015-08-18.
+ *
+ * Immutable snapshot of group participants. Every change of participants replaces the snapshot as a whole,
+ * so readers never lock and never copy: one snapshot is shared by all messages sent to the group until next change
+ */
+public final class GroupMembership {
+    public final String signature;
+    /**
+     * {@link com.tempest.moonlight.server.domain.Group#getLastChangeTime} of the change that produced snapshot,
+     * grows with every change of the group
+     */
+    public final long version;
+
+    private final GenericParticipant[] participants;
+    private final List<GenericParticipant> participantsView;
+    private final Set<String> logins;
+
+    public GroupMembership(String signature, long version, Collection<GenericParticipant> participants) {
+        this.signature = signature;
+        this.version = version;
+        this.participants = participants.toArray(new GenericParticipant[participants.size()]);
+        this.participantsView = Collections.unmodifiableList(Arrays.asList(this.participants));
+        this.logins = new HashSet<>(participants.size() * 2);
+        for (GenericParticipant participant : this.participants) {
+            logins.add(participant.getSignature());
+        }
+    }
+
+    public boolean contains(String login) {
+        return logins.contains(login);
+    }
+
+    public List<GenericParticipant> getParticipants() {
+        return participantsView;
+    }
+
+    public int size() {
+        return participants.length;
+    }
+
+    public boolean isEmpty() {
+        return participants.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupMembership{" +
+                "signature='" + signature + '\'' +
+                ", version=" + version +
+                ", participants=" + participants.length +
+                '}';
+    }
+}
@@ -10,21 +10,35 @@ import java.util.Set;
 public class GroupParticipantsChangesHolder {
     public final String signature;
 
+    /**
+     * Versions of {@link GroupMembership} before and after the change, equal if nothing was changed
+     */
+    public final long previousVersion;
+    public final long version;
+
     public final Set<GenericParticipant> updatedParticipants;
     public final Set<GenericParticipant> addedParticipants;
     public final Set<GenericParticipant> removedParticipants;
 
-    public GroupParticipantsChangesHolder(String signature, Set<GenericParticipant> updatedParticipants, Set<GenericParticipant> addedParticipants, Set<GenericParticipant> removedParticipants) {
+    public GroupParticipantsChangesHolder(String signature, long previousVersion, long version, Set<GenericParticipant> updatedParticipants, Set<GenericParticipant> addedParticipants, Set<GenericParticipant> removedParticipants) {
         this.signature = signature;
+        this.previousVersion = previousVersion;
+        this.version = version;
         this.updatedParticipants = updatedParticipants;
         this.addedParticipants = addedParticipants;
         this.removedParticipants = removedParticipants;
     }
 
+    public boolean hasChanges() {
+        return version != previousVersion;
+    }
+
     @Override
     public String toString() {
         return "GroupParticipantsChangesHolder{" +
                 "signature='" + signature + '\'' +
+                ", previousVersion=" + previousVersion +
+                ", version=" + version +
                 ", updatedParticipants=" + updatedParticipants +
                 ", addedParticipants=" + addedParticipants +
                 ", removedParticipants=" + removedParticipants +
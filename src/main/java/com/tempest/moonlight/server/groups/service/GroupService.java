@@ -21,6 +21,16 @@ public interface GroupService {
 
     Group getGroup(String groupSignature);
 
+    /**
+     * @return current snapshot of participants, null if there is no such group
+     */
+    GroupMembership getMembership(String groupSignature);
+
+    /**
+     * Rereads participants of group after they were changed bypassing this service (e.g. by approved contact request)
+     */
+    void refreshMembership(String groupSignature);
+
     boolean checkUserBelongsToGroup(String group, String user);
     default boolean checkUserBelongsToGroup(Group group, String user) {
         return checkUserBelongsToGroup(group.getSignature(), user);
@@ -11,11 +11,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Created by Yurii on 2015-06-22.
+ *
+ * Participants are read from {@link GroupMembership} snapshots. Snapshot of group is loaded on first access,
+ * changes of participants are made under the group's lock and replace the snapshot. Locks are striped by signature,
+ * so journaled DAO writes of a change are not made inside compute of the snapshots map
  */
 @Service
 public class GroupServiceImpl implements GroupService {
@@ -26,6 +33,18 @@ public class GroupServiceImpl implements GroupService {
     @Autowired
     private ContactsDAO contactsDAO;
 
+    private static final int GROUP_LOCKS = 64;
+
+    private final ConcurrentMap<String, GroupMembership> memberships = new ConcurrentHashMap<>();
+
+    private final Object[] groupLocks = new Object[GROUP_LOCKS];
+
+    public GroupServiceImpl() {
+        for (int i = 0; i < groupLocks.length; i++) {
+            groupLocks[i] = new Object();
+        }
+    }
+
     @Override
     public boolean existsGroup(String group) {
         return groupDAO.existsWithKey(group);
@@ -42,70 +61,135 @@ public class GroupServiceImpl implements GroupService {
 
     @Override
     public boolean addUserToGroup(Group group, String userToAdd) {
-        GenericContact groupParticipant = new GenericContact(
-                group.toGenericParticipant(),
-                new GenericParticipant(ParticipantType.USER, userToAdd)
-        );
-        if(!contactsDAO.exists(groupParticipant)) {
+        GenericParticipant participant = new GenericParticipant(ParticipantType.USER, userToAdd);
+        GenericContact groupParticipant = new GenericContact(group.toGenericParticipant(), participant);
+        String signature = group.getSignature();
+        synchronized (groupLock(signature)) {
+            if(contactsDAO.exists(groupParticipant)) {
+                return false;
+            }
             contactsDAO.save(groupParticipant);
-            group.setEmpty(false);
-            group.setLastChangeTime(System.currentTimeMillis());
-            groupDAO.save(group);
+            Set<GenericParticipant> participants = readParticipants(signature, memberships.get(signature));
+            participants.add(participant);
+            memberships.put(signature, swapMembership(group, participants));
             return true;
-        } else {
-            return false;
         }
     }
 
     @Override
     public boolean checkUserBelongsToGroup(String group, String user) {
-        return contactsDAO.isUserGroupParticipant(user, group);
+        GroupMembership membership = getMembership(group);
+        return membership != null && membership.contains(user);
     }
 
     @Override
     public GroupParticipantsChangesHolder processAddRemoveParticipants(String groupSignature, Collection<GenericParticipant> participantsToAdd, Collection<GenericParticipant> participantsToRemove) {
         Group group = getGroup(groupSignature);
-        Set<GenericParticipant> currentParticipants = new HashSet<>(getParticipants(group));
+        synchronized (groupLock(groupSignature)) {
+            GroupMembership membership = memberships.get(groupSignature);
+            Set<GenericParticipant> currentParticipants = readParticipants(groupSignature, membership);
+
+            boolean changesPerformed = false;
+
+            HashSet<GenericParticipant> toRemove = new HashSet<>(participantsToRemove);
+            toRemove.retainAll(currentParticipants);
+            if(!toRemove.isEmpty()) {
+                contactsDAO.addRemoveGroupParticipants(groupSignature, toRemove, false);
+                currentParticipants.removeAll(toRemove);
+                changesPerformed = true;
+            }
+
+            Set<GenericParticipant> toAdd = new HashSet<>(participantsToAdd);
+            toAdd.removeAll(currentParticipants);
+            if(!toAdd.isEmpty()) {
+                contactsDAO.addRemoveGroupParticipants(groupSignature, toAdd, true);
+                currentParticipants.addAll(toAdd);
+                changesPerformed = true;
+            }
+
+            long previousVersion = membership != null ? membership.version : group.getLastChangeTime();
+            GroupMembership updated = changesPerformed
+                    ? swapMembership(group, currentParticipants)
+                    : membership != null ? membership : new GroupMembership(groupSignature, previousVersion, currentParticipants);
+
+            memberships.put(groupSignature, updated);
+
+            return new GroupParticipantsChangesHolder(
+                    groupSignature,
+                    previousVersion,
+                    updated.version,
+                    currentParticipants,
+                    toAdd,
+                    toRemove
+            );
+        }
+    }
 
-        boolean changesPerformed = false;
+    @Override
+    public Collection<GenericParticipant> getParticipants(String groupSignature) {
+        GroupMembership membership = getMembership(groupSignature);
+        return membership == null ? Collections.emptyList() : membership.getParticipants();
+    }
 
-        HashSet<GenericParticipant> toRemove = new HashSet<>(participantsToRemove);
-        toRemove.retainAll(currentParticipants);
-        if(!toRemove.isEmpty()) {
-            contactsDAO.addRemoveGroupParticipants(groupSignature, toRemove, false);
-            currentParticipants.removeAll(toRemove);
-            changesPerformed = true;
+    @Override
+    public GroupMembership getMembership(String groupSignature) {
+        GroupMembership membership = memberships.get(groupSignature);
+        if(membership == null) {
+            // not loaded while participants of the group are changed
+            synchronized (groupLock(groupSignature)) {
+                membership = memberships.computeIfAbsent(groupSignature, this::loadMembership);
+            }
         }
+        return membership;
+    }
 
-        Set<GenericParticipant> toAdd = new HashSet<>(participantsToAdd);
-        toAdd.removeAll(currentParticipants);
-        if(!toAdd.isEmpty()) {
-            contactsDAO.addRemoveGroupParticipants(groupSignature, toAdd, true);
-            currentParticipants.addAll(toAdd);
-            changesPerformed = true;
+    @Override
+    public void refreshMembership(String groupSignature) {
+        synchronized (groupLock(groupSignature)) {
+            Group group = getGroup(groupSignature);
+            if(group == null) {
+                memberships.remove(groupSignature);
+            } else {
+                memberships.put(groupSignature, swapMembership(group, readParticipants(groupSignature, null)));
+            }
         }
+    }
 
-        if(changesPerformed) {
-            group.setEmpty(currentParticipants.isEmpty());
-            group.setLastChangeTime(System.currentTimeMillis());
-        }
+    private GroupMembership loadMembership(String groupSignature) {
+        Group group = getGroup(groupSignature);
+        return group == null ? null : new GroupMembership(groupSignature, group.getLastChangeTime(), readParticipants(groupSignature, null));
+    }
 
-        return new GroupParticipantsChangesHolder(
-                groupSignature,
-                currentParticipants,
-                toAdd,
-                toRemove
-        );
+    private Object groupLock(String groupSignature) {
+        int hash = groupSignature.hashCode();
+        hash ^= hash >>> 16;
+        return groupLocks[(hash & Integer.MAX_VALUE) % groupLocks.length];
     }
 
-    @Override
-    public Collection<GenericParticipant> getParticipants(String groupSignature) {
+    /**
+     * @return mutable copy of participants of snapshot, or of stored ones if there is no snapshot yet
+     */
+    private Set<GenericParticipant> readParticipants(String groupSignature, GroupMembership membership) {
+        if(membership != null) {
+            return new HashSet<>(membership.getParticipants());
+        }
         return CollectionsUtils.convertToSet(
                 contactsDAO.getGroupParticipants(groupSignature),
                 GenericContact::getContact
         );
     }
 
+    /**
+     * Saves the change to group and makes the next snapshot, its version is strictly greater than the previous one
+     * even if both changes happened in the same millisecond
+     */
+    private GroupMembership swapMembership(Group group, Collection<GenericParticipant> participants) {
+        group.setEmpty(participants.isEmpty());
+        group.setLastChangeTime(Math.max(System.currentTimeMillis(), group.getLastChangeTime() + 1));
+        groupDAO.save(group);
+        return new GroupMembership(group.getSignature(), group.getLastChangeTime(), participants);
+    }
+
     @Override
     public Group getGroup(String groupSignature) {
         return groupDAO.get(groupSignature);
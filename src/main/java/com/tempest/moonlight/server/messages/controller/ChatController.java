@@ -2,23 +2,28 @@ package com.tempest.moonlight.server.messages.controller;
 
 import java.security.Principal;
 import java.util.Collection;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Collections;
 
 import com.tempest.moonlight.server.messages.exceptions.*;
 import com.tempest.moonlight.server.domain.ParticipantType;
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
 import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.domain.messages.StatusTransition;
 import com.tempest.moonlight.server.users.dao.ActiveUsersDAO;
+import com.tempest.moonlight.server.groups.service.GroupMembership;
 import com.tempest.moonlight.server.groups.service.GroupService;
 import com.tempest.moonlight.server.messages.services.MessageService;
+import com.tempest.moonlight.server.messages.services.OfflineMessagesService;
 import com.tempest.moonlight.server.users.service.UserService;
 import com.tempest.moonlight.server.common.dto.DtoConverter;
+import com.tempest.moonlight.server.common.logging.HotPathLogger;
 import com.tempest.moonlight.server.messages.dto.ChatMessageDTO;
+import com.tempest.moonlight.server.messages.dto.DeliveryStatusBatchDTO;
+import com.tempest.moonlight.server.messages.dto.ReadUpToDTO;
 import com.tempest.moonlight.server.util.StringUtils;
 import com.tempest.moonlight.server.websockets.CustomMessageHeadersAccessor;
+import com.tempest.moonlight.server.websockets.DeliveryStatusNotifier;
 import com.tempest.moonlight.server.websockets.ToParticipantSender;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,6 +46,8 @@ import com.tempest.moonlight.server.domain.messages.ChatMessage;
 public class ChatController {
 	private static final Logger logger = Logger.getLogger(ChatController.class.getName());
 
+	private static final HotPathLogger messagesLogger = HotPathLogger.getLogger(ChatController.class, "chat-messages");
+
 	@Autowired
     private WebSocketMessageBrokerStats stats;
 
@@ -50,12 +57,18 @@ public class ChatController {
     @Autowired
     private ToParticipantSender toParticipantSender;
 
+    @Autowired
+    private DeliveryStatusNotifier deliveryStatusNotifier;
+
     @Autowired
     private DtoConverter dtoConverter;
 
     @Autowired
     private MessageService messageService;
 
+    @Autowired
+    private OfflineMessagesService offlineMessagesService;
+
     @Autowired
     private UserService userService;
 
@@ -89,10 +102,12 @@ public class ChatController {
         chatMessage = onUserMessageInner(chatMessage, message, ParticipantType.USER);
 
         sendDeliveryStatus(chatMessage.getFrom(), new MessageDeliveryStatus(chatMessage, MessageStatus.ARRIVED));
+        String recipient = chatMessage.getRecipient().getSignature();
+        offlineMessagesService.keepIfNotReceiving(recipient, chatMessage);
         toParticipantSender.sendToUserQueue(
-                chatMessage.getRecipient().getSignature(),
+                recipient,
                 "chat/incoming",
-                dtoConverter.convertToDTO(chatMessage, ChatMessageDTO.class)
+                dtoConverter.convertToOutbound(chatMessage)
         );
     }
 
@@ -105,15 +120,16 @@ public class ChatController {
                 throw new RecipientDoesNotExistException(ParticipantType.USER, recipientSignature);
             }
         } else if(recipientType == ParticipantType.GROUP) {
-            if(!groupService.existsGroup(recipientSignature)) {
+            GroupMembership membership = groupService.getMembership(recipientSignature);
+            if(membership == null) {
                 throw new RecipientDoesNotExistException(ParticipantType.GROUP, recipientSignature);
             }
-            if(!groupService.checkUserBelongsToGroup(recipientSignature, chatMessage.getFrom())) {
+            if(!membership.contains(chatMessage.getFrom())) {
                 throw new IllegalGroupRecipientException(recipientSignature);
             }
         }
 
-        logger.info("user sent message = " + chatMessage);
+        messagesLogger.info("user sent message key={} status={}", chatMessage.getKey(), chatMessage.getStatus());
 
         messageService.saveMessage(chatMessage);
         return chatMessage;
@@ -136,21 +152,51 @@ public class ChatController {
             throw new InvalidUserLoginException(recipientSignature);
         }
 
-        CustomMessageHeadersAccessor headerAccessor = CustomMessageHeadersAccessor.wrap(message);
-        headerAccessor.setImmutable();
-
-        chatMessage.setTime(headerAccessor.getTimestamp());
-        chatMessage.setUuid(headerAccessor.getId().toString());
+        chatMessage.setTime(CustomMessageHeadersAccessor.getTimestamp(message));
+        chatMessage.setUuid(CustomMessageHeadersAccessor.getId(message).toString());
 
         return chatMessage;
     }
 
+    /**
+     * Sender gets applied status coalesced with others by {@link DeliveryStatusNotifier}, the same as for batches
+     */
     @MessageMapping("messages/delivery")
     public void onMessageDeliveryStatus(Principal principal, MessageDeliveryStatus deliveryStatus) throws MessageHandlingException {
         deliveryStatus.setTo(principal.getName());
-        messageService.updateMessageDeliveryStatus(deliveryStatus);
+        if(messageService.updateMessageDeliveryStatus(deliveryStatus) == StatusTransition.APPLIED) {
+            deliveryStatusNotifier.notifySenders(Collections.singletonList(deliveryStatus));
+        }
+    }
+
+    /**
+     * Applies statuses together, senders get applied ones coalesced by {@link DeliveryStatusNotifier}.
+     * Batch is rejected if it has status of a message to group user does not belong to
+     */
+    @MessageMapping("messages/delivery/batch")
+    public void onMessageDeliveryStatuses(Principal principal, @Payload DeliveryStatusBatchDTO batchDTO) throws MessageHandlingException {
+        String name = principal.getName();
+        for (MessageDeliveryStatus deliveryStatus : batchDTO.getStatuses()) {
+            if(deliveryStatus.getRecipientType() == ParticipantType.USER.getValue()) {
+                deliveryStatus.setTo(name);
+            } else if(!StringUtils.hasText(deliveryStatus.getTo()) || !groupService.checkUserBelongsToGroup(deliveryStatus.getTo(), name)) {
+                throw new IllegalGroupRecipientException(deliveryStatus.getTo());
+            }
+        }
+        deliveryStatusNotifier.notifySenders(messageService.updateMessageDeliveryStatuses(batchDTO.getStatuses()));
+    }
 
-        sendDeliveryStatus(deliveryStatus.getFrom(), deliveryStatus);
+    @MessageMapping("messages/read")
+    public void onReadUpTo(Principal principal, @Payload ReadUpToDTO readUpToDTO) throws MessageHandlingException {
+        GenericParticipant companion = readUpToDTO.toParticipant();
+        if(companion == null || companion.getType() == null || !StringUtils.hasText(companion.getSignature())) {
+            throw new InvalidUserLoginException(readUpToDTO.getParticipant());
+        }
+        String name = principal.getName();
+        if(companion.getType() == ParticipantType.GROUP && !groupService.checkUserBelongsToGroup(companion.getSignature(), name)) {
+            throw new IllegalGroupRecipientException(companion.getSignature());
+        }
+        deliveryStatusNotifier.notifySenders(messageService.markReadUpTo(name, companion, readUpToDTO.getTime()));
     }
 
     private void sendDeliveryStatus(String to, MessageDeliveryStatus deliveryStatus) {
@@ -170,18 +216,19 @@ public class ChatController {
 
         sendDeliveryStatus(chatMessage.getFrom(), new MessageDeliveryStatus(chatMessage, MessageStatus.ARRIVED));
 
-        ChatMessageDTO groupMessageDTO = (ChatMessageDTO) dtoConverter.convertToDTO(chatMessage, ChatMessageDTO.class);
+        Object groupMessage = dtoConverter.convertToOutbound(chatMessage);
         Collection<GenericParticipant> participants = groupService.getParticipants(chatMessage.getRecipient().getSignature());
-        Map<GenericParticipant, ChatMessageDTO> participantsMessagesMap = participants.stream().collect(
-                Collectors.toMap(
-                        Function.identity(),
-                        participant -> groupMessageDTO
-                )
-        );
-        participantsMessagesMap.remove(new GenericParticipant(ParticipantType.USER, sender.getName()));
+        for (GenericParticipant recipient : participants) {
+            String login = recipient.getSignature();
+            if(!login.equals(chatMessage.getFrom())) {
+                offlineMessagesService.keepIfNotReceiving(login, chatMessage);
+            }
+        }
         toParticipantSender.sendToUsersQueue(
-                participantsMessagesMap,
-                "chat/incoming"
+                participants,
+                chatMessage.getFrom(),
+                "chat/incoming",
+                groupMessage
         );
     }
 
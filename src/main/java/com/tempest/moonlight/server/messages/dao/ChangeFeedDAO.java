@@ -0,0 +1,36 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.messages.MessageChange;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+
+import java.util.List;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ *
+ * Bounded per-user feeds of changes of messages. Sequences are valid only within the same epoch
+ */
+public interface ChangeFeedDAO {
+    long getEpoch();
+
+    /**
+     * @param status new status or null if message was created
+     */
+    void record(String user, MessageKey key, MessageStatus status);
+
+    /**
+     * @return sequence of the last change recorded in user's feed, 0 if there were none
+     */
+    long getLastSequence(String user);
+
+    /**
+     * @return true if all changes of user after the sequence are still kept in feed
+     */
+    boolean isAvailable(String user, long afterSequence);
+
+    /**
+     * @return up to limit changes of user with sequence greater than afterSequence, in order of sequence
+     */
+    List<MessageChange> getChanges(String user, long afterSequence, int limit);
+}
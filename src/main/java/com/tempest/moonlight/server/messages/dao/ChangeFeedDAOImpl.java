@@ -0,0 +1,103 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.messages.MessageChange;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ *
+ * Feeds live in memory, so epoch is the start time of the server: watermarks of previous runs are reset.
+ * Sequence is taken while feed of the user is locked, so sequences of every feed grow in order of appending
+ * and readers never see a change appear before an already returned one
+ */
+@Repository
+public class ChangeFeedDAOImpl implements ChangeFeedDAO {
+
+    @Value("${chat.messages.sync.feed-capacity:1000}")
+    private int capacity;
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentMap<String, Feed> feeds = new ConcurrentHashMap<>();
+
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public void record(String user, MessageKey key, MessageStatus status) {
+        feeds.compute(user, (u, feed) -> {
+            if (feed == null) {
+                feed = new Feed();
+            }
+            if (feed.changes.size() >= capacity) {
+                feed.truncatedUpTo = feed.changes.pollFirst().sequence;
+            }
+            feed.changes.addLast(new MessageChange(sequence.incrementAndGet(), key, status));
+            return feed;
+        });
+    }
+
+    @Override
+    public long getLastSequence(String user) {
+        long[] last = new long[1];
+        feeds.computeIfPresent(user, (u, feed) -> {
+            last[0] = feed.changes.isEmpty() ? feed.truncatedUpTo : feed.changes.peekLast().sequence;
+            return feed;
+        });
+        return last[0];
+    }
+
+    @Override
+    public boolean isAvailable(String user, long afterSequence) {
+        boolean[] available = {true};
+        feeds.computeIfPresent(user, (u, feed) -> {
+            available[0] = afterSequence >= feed.truncatedUpTo;
+            return feed;
+        });
+        return available[0];
+    }
+
+    @Override
+    public List<MessageChange> getChanges(String user, long afterSequence, int limit) {
+        List<MessageChange> changes = new ArrayList<>();
+        feeds.computeIfPresent(user, (u, feed) -> {
+            Iterator<MessageChange> iterator = feed.changes.descendingIterator();
+            int newer = 0;
+            while (iterator.hasNext() && iterator.next().sequence > afterSequence) {
+                newer++;
+            }
+            iterator = feed.changes.iterator();
+            for (int skip = feed.changes.size() - newer; skip > 0; skip--) {
+                iterator.next();
+            }
+            while (iterator.hasNext() && changes.size() < limit) {
+                changes.add(iterator.next());
+            }
+            return feed;
+        });
+        return changes;
+    }
+
+    private static class Feed {
+        private final ArrayDeque<MessageChange> changes = new ArrayDeque<>();
+        /**
+         * Sequence of the last dropped change
+         */
+        private long truncatedUpTo;
+    }
+}
@@ -0,0 +1,76 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.common.dao.journal.EntityCodec;
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.*;
+
+/**
+ * Created by Yurii on 2015-08-05.
+ *
+ * Binary form of messages for on-disk storage
+ */
+public class ChatMessageCodec implements EntityCodec<ChatMessage, MessageKey> {
+
+    @Override
+    public void writeEntity(DataOutput out, ChatMessage message) throws IOException {
+        writeString(out, message.getFrom());
+        writeType(out, message.getRecipient() == null ? null : message.getRecipient().getType());
+        writeString(out, message.getRecipient() == null ? null : message.getRecipient().getSignature());
+        out.writeLong(message.getTime());
+        writeString(out, message.getUuid());
+        writeString(out, message.getPacketId());
+        writeString(out, message.getSubject());
+        writeString(out, message.getText());
+        writeStatus(out, message.getStatus());
+    }
+
+    @Override
+    public ChatMessage readEntity(DataInput in, MessageKey key) throws IOException {
+        return readMessage(in);
+    }
+
+    public ChatMessage readMessage(DataInput in) throws IOException {
+        ChatMessage message = new ChatMessage()
+                .setFrom(readString(in))
+                .setType(readType(in))
+                .setTo(readString(in))
+                .setTime(in.readLong())
+                .setUuid(readString(in))
+                .setPacketId(readString(in))
+                .setSubject(readString(in))
+                .setText(readString(in))
+                .setStatus(readStatus(in));
+        message.getKey();
+        return message;
+    }
+
+    @Override
+    public void writeKey(DataOutput out, MessageKey key) throws IOException {
+        writeString(out, key.from);
+        writeString(out, key.to);
+        writeType(out, key.type);
+        writeString(out, key.udid);
+        writeString(out, key.packetId);
+    }
+
+    @Override
+    public MessageKey readKey(DataInput in) throws IOException {
+        return new MessageKey(readString(in), readString(in), readType(in), readString(in), readString(in));
+    }
+
+    public static void writeStatus(DataOutput out, MessageStatus status) throws IOException {
+        out.writeByte(status == null ? -1 : status.value);
+    }
+
+    public static MessageStatus readStatus(DataInput in) throws IOException {
+        byte value = in.readByte();
+        return value < 0 ? null : MessageStatus.getByValue(value);
+    }
+}
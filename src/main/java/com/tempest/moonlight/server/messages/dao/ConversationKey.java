@@ -0,0 +1,64 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.ParticipantType;
+
+/**
+ * Created by Yurii on 2015-07-02.
+ *
+ * Identifies a conversation: unordered pair of user logins or a group signature
+ */
+public final class ConversationKey {
+    public final ParticipantType type;
+    public final String first;
+    public final String second;
+
+    private ConversationKey(ParticipantType type, String first, String second) {
+        this.type = type;
+        this.first = first;
+        this.second = second;
+    }
+
+    public static ConversationKey between(String user, String companion) {
+        return user.compareTo(companion) <= 0
+                ? new ConversationKey(ParticipantType.USER, user, companion)
+                : new ConversationKey(ParticipantType.USER, companion, user);
+    }
+
+    public static ConversationKey ofGroup(String signature) {
+        return new ConversationKey(ParticipantType.GROUP, signature, signature);
+    }
+
+    public static ConversationKey fromMessageKey(MessageKey key) {
+        return key.type == ParticipantType.GROUP ? ofGroup(key.to) : between(key.from, key.to);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ConversationKey that = (ConversationKey) o;
+
+        if (type != that.type) return false;
+        if (!first.equals(that.first)) return false;
+        return second.equals(that.second);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + first.hashCode();
+        result = 31 * result + second.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "type=" + type +
+                ", first='" + first + '\'' +
+                ", second='" + second + '\'' +
+                '}';
+    }
+}
@@ -4,6 +4,11 @@ import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.domain.messages.ChatMessage;
 import com.tempest.moonlight.server.domain.MessageKey;
 import com.tempest.moonlight.server.common.dao.DAO;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.HistoryDirection;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
+import com.tempest.moonlight.server.domain.messages.StatusTransition;
 
 import java.util.Collection;
 
@@ -11,7 +16,19 @@ import java.util.Collection;
  * Created by Yurii on 2015-05-08.
  */
 public interface MessageDAO extends DAO<ChatMessage, MessageKey> {
+    /**
+     * Atomically advances status of message, see {@link MessageStatus#canAdvance}
+     */
+    StatusTransition advanceStatus(MessageKey key, MessageStatus status);
+
     Collection<ChatMessage> getMessagesOfUser(String login);
     Collection<ChatMessage> getMessagesBetween(String user, GenericParticipant companion);
     Collection<ChatMessage> getMessagesTo(GenericParticipant genericParticipant);
+
+    /**
+     * @param cursor null to start from the latest (BEFORE) or the earliest (AFTER) message
+     */
+    MessagesPage getMessagesOfUser(String login, HistoryCursor cursor, HistoryDirection direction, int limit);
+    MessagesPage getMessagesBetween(String user, GenericParticipant companion, HistoryCursor cursor, HistoryDirection direction, int limit);
+    MessagesPage getMessagesTo(GenericParticipant genericParticipant, HistoryCursor cursor, HistoryDirection direction, int limit);
 }
@@ -1,49 +1,88 @@
 package com.tempest.moonlight.server.messages.dao;
 
-import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.annotations.Journaled;
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.domain.messages.ChatMessage;
 import com.tempest.moonlight.server.domain.MessageKey;
 import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
-import com.tempest.moonlight.server.util.CollectionsUtils;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.HistoryDirection;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
+import com.tempest.moonlight.server.domain.messages.StatusTransition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by Yurii on 2015-05-08.
  */
 @Repository
+@Journaled(value = "messages", codec = ChatMessageCodec.class)
+@ConditionalOnProperty(name = "chat.messages.store", havingValue = "memory", matchIfMissing = true)
 public class MessageDAOMockImpl extends AbstractMockDAO<ChatMessage, MessageKey> implements MessageDAO {
-    @Override
-    public Collection<ChatMessage> getMessagesOfUser(String login) {
-        return CollectionsUtils.filterMapValuesByKey(getMap(), messagesOfUserPredicate(login));
-    }
 
-    private static Predicate<MessageKey> messagesOfUserPredicate(String user) {
-        return messagesOfParticipantPredicate(new GenericParticipant(ParticipantType.USER, user));
+    private final MessageIndex index = new MessageIndex(this::get);
+
+    @Override
+    protected void onSaved(MessageKey key, ChatMessage previous, ChatMessage entity) {
+        if (previous != null) {
+            if (previous.getTime() == entity.getTime()) {
+                return;
+            }
+            index.remove(key, previous.getTime());
+        }
+        index.add(key, entity.getTime());
     }
 
-    private static Predicate<MessageKey> messagesOfParticipantPredicate(GenericParticipant participant) {
-        return key -> key.type == participant.getType() && (participant.getSignature().equals(key.from) || participant.getSignature().equals(key.to));
+    @Override
+    protected void onDeleted(MessageKey key, ChatMessage entity) {
+        index.remove(key, entity.getTime());
     }
 
-    private static Predicate<MessageKey> messagesToParticipantPredicate(GenericParticipant participant) {
-        return key -> key.type == participant.getType() && participant.getSignature().equals(key.to);
+    @Override
+    public StatusTransition advanceStatus(MessageKey key, MessageStatus status) {
+        AtomicReference<StatusTransition> transition = new AtomicReference<>(StatusTransition.MISSING);
+        update(key, chatMessage -> {
+            if (!MessageStatus.canAdvance(chatMessage.getStatus(), status)) {
+                transition.set(StatusTransition.STALE);
+                return null;
+            }
+            transition.set(StatusTransition.APPLIED);
+            return chatMessage.setStatus(status);
+        });
+        return transition.get();
     }
 
-    private static Predicate<MessageKey> messagesBetweenPredicate(String user, GenericParticipant companion) {
-        return messagesOfUserPredicate(user).and(messagesOfParticipantPredicate(companion));
+    @Override
+    public Collection<ChatMessage> getMessagesOfUser(String login) {
+        return index.getMessagesOfUser(login);
     }
 
     @Override
     public Collection<ChatMessage> getMessagesBetween(String user, GenericParticipant companion) {
-        return CollectionsUtils.filterMapValuesByKey(getMap(), messagesBetweenPredicate(user, companion));
+        return index.getMessagesBetween(user, companion);
     }
 
     @Override
     public Collection<ChatMessage> getMessagesTo(GenericParticipant genericParticipant) {
-        return CollectionsUtils.filterMapValuesByKey(getMap(), messagesToParticipantPredicate(genericParticipant));
+        return index.getMessagesTo(genericParticipant);
+    }
+
+    @Override
+    public MessagesPage getMessagesOfUser(String login, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return index.getMessagesOfUser(login, cursor, direction, limit);
+    }
+
+    @Override
+    public MessagesPage getMessagesBetween(String user, GenericParticipant companion, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return index.getMessagesBetween(user, companion, cursor, direction, limit);
+    }
+
+    @Override
+    public MessagesPage getMessagesTo(GenericParticipant genericParticipant, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return index.getMessagesTo(genericParticipant, cursor, direction, limit);
     }
 }
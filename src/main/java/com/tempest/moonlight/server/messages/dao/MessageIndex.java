@@ -0,0 +1,242 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.HistoryDirection;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Created by Yurii on 2015-07-02.
+ *
+ * Secondary indexes of stored messages: by conversation and by user participating in private conversations.
+ * Entries are kept sorted by message time, so history pages are read without materializing whole conversation.
+ * Messages themselves are resolved by the owning DAO through the loader.
+ * Not thread safe for the same message key, callers must serialize changes of one key (see {@link com.tempest.moonlight.server.common.dao.AbstractMockDAO#onSaved})
+ */
+public class MessageIndex {
+
+    private final ConcurrentMap<ConversationKey, NavigableSet<Entry>> byConversation = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NavigableSet<Entry>> byUser = new ConcurrentHashMap<>();
+
+    private final Function<MessageKey, ChatMessage> loader;
+
+    public MessageIndex(Function<MessageKey, ChatMessage> loader) {
+        this.loader = loader;
+    }
+
+    public void add(MessageKey key, long time) {
+        Entry entry = new Entry(key, time);
+        add(byConversation, ConversationKey.fromMessageKey(key), entry);
+        if (key.type == ParticipantType.USER) {
+            add(byUser, key.from, entry);
+            if (!key.from.equals(key.to)) {
+                add(byUser, key.to, entry);
+            }
+        }
+    }
+
+    public void remove(MessageKey key, long time) {
+        Entry entry = new Entry(key, time);
+        remove(byConversation, ConversationKey.fromMessageKey(key), entry);
+        if (key.type == ParticipantType.USER) {
+            remove(byUser, key.from, entry);
+            remove(byUser, key.to, entry);
+        }
+    }
+
+    public NavigableSet<Entry> getConversation(ConversationKey conversationKey) {
+        return unmodifiable(byConversation.get(conversationKey));
+    }
+
+    /**
+     * @return entries of private messages sent or received by user
+     */
+    public NavigableSet<Entry> getOfUser(String login) {
+        return unmodifiable(byUser.get(login));
+    }
+
+    public Collection<ChatMessage> getMessagesOfUser(String login) {
+        return resolve(getOfUser(login), key -> true);
+    }
+
+    public Collection<ChatMessage> getMessagesBetween(String user, GenericParticipant companion) {
+        if (companion.getType() != ParticipantType.USER) {
+            return Collections.emptyList();
+        }
+        return resolve(getConversation(ConversationKey.between(user, companion.getSignature())), key -> true);
+    }
+
+    public Collection<ChatMessage> getMessagesTo(GenericParticipant participant) {
+        String signature = participant.getSignature();
+        if (participant.getType() == ParticipantType.GROUP) {
+            return resolve(getConversation(ConversationKey.ofGroup(signature)), key -> true);
+        }
+        return resolve(getOfUser(signature), key -> signature.equals(key.to));
+    }
+
+    public MessagesPage getMessagesOfUser(String login, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return page(getOfUser(login), key -> true, cursor, direction, limit);
+    }
+
+    public MessagesPage getMessagesBetween(String user, GenericParticipant companion, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        if (companion.getType() != ParticipantType.USER) {
+            return MessagesPage.empty(direction, cursor);
+        }
+        return page(getConversation(ConversationKey.between(user, companion.getSignature())), key -> true, cursor, direction, limit);
+    }
+
+    public MessagesPage getMessagesTo(GenericParticipant participant, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        String signature = participant.getSignature();
+        if (participant.getType() == ParticipantType.GROUP) {
+            return page(getConversation(ConversationKey.ofGroup(signature)), key -> true, cursor, direction, limit);
+        }
+        return page(getOfUser(signature), key -> signature.equals(key.to), cursor, direction, limit);
+    }
+
+    private List<ChatMessage> resolve(Collection<Entry> entries, Predicate<MessageKey> keyPredicate) {
+        List<ChatMessage> messages = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (keyPredicate.test(entry.key)) {
+                ChatMessage message = loader.apply(entry.key);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    private MessagesPage page(NavigableSet<Entry> entries, Predicate<MessageKey> keyPredicate, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        List<ChatMessage> messages = new ArrayList<>(Math.min(limit, 64));
+        HistoryCursor next = cursor;
+        boolean hasMore = false;
+        for (Entry entry : slice(entries, cursor, direction)) {
+            if (!keyPredicate.test(entry.key)) {
+                continue;
+            }
+            ChatMessage message = loader.apply(entry.key);
+            if (message == null) {
+                continue;
+            }
+            if (messages.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            messages.add(message);
+            next = entry.toCursor();
+        }
+        if (direction == HistoryDirection.BEFORE) {
+            Collections.reverse(messages);
+        }
+        return new MessagesPage(messages, direction, next, hasMore);
+    }
+
+    /**
+     * @return entries strictly before or after cursor, in the order of walking away from it
+     */
+    public static NavigableSet<Entry> slice(NavigableSet<Entry> entries, HistoryCursor cursor, HistoryDirection direction) {
+        if (direction == HistoryDirection.BEFORE) {
+            return (cursor == null ? entries : entries.headSet(Entry.lowerBound(cursor), false)).descendingSet();
+        } else {
+            return cursor == null ? entries : entries.tailSet(Entry.upperBound(cursor), false);
+        }
+    }
+
+    private static <IndexKey> void add(ConcurrentMap<IndexKey, NavigableSet<Entry>> index, IndexKey indexKey, Entry entry) {
+        index.compute(indexKey, (k, entries) -> {
+            if (entries == null) {
+                entries = new ConcurrentSkipListSet<>(Entry.ORDER);
+            }
+            entries.add(entry);
+            return entries;
+        });
+    }
+
+    private static <IndexKey> void remove(ConcurrentMap<IndexKey, NavigableSet<Entry>> index, IndexKey indexKey, Entry entry) {
+        index.computeIfPresent(indexKey, (k, entries) -> {
+            entries.remove(entry);
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+
+    private static NavigableSet<Entry> unmodifiable(NavigableSet<Entry> entries) {
+        return entries == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(entries);
+    }
+
+    public static final class Entry {
+        private static final Comparator<Entry> ORDER = Entry::compare;
+
+        public final MessageKey key;
+        public final long time;
+        private final String uuid;
+        /**
+         * -1/1 for search bounds placed before/after all entries with the same time and uuid, 0 for real entries
+         */
+        private final int bound;
+
+        private Entry(MessageKey key, long time) {
+            this(key, time, key.udid, 0);
+        }
+
+        private Entry(MessageKey key, long time, String uuid, int bound) {
+            this.key = key;
+            this.time = time;
+            this.uuid = uuid;
+            this.bound = bound;
+        }
+
+        private static Entry lowerBound(HistoryCursor cursor) {
+            return new Entry(null, cursor.time, cursor.uuid, -1);
+        }
+
+        private static Entry upperBound(HistoryCursor cursor) {
+            return new Entry(null, cursor.time, cursor.uuid, 1);
+        }
+
+        private static int compare(Entry first, Entry second) {
+            if (first.time != second.time) {
+                return first.time < second.time ? -1 : 1;
+            }
+            int result = first.uuid.compareTo(second.uuid);
+            if (result != 0) {
+                return result;
+            }
+            if (first.bound != second.bound) {
+                return first.bound < second.bound ? -1 : 1;
+            }
+            if (first.key == second.key) {
+                return 0;
+            }
+            result = first.key.from.compareTo(second.key.from);
+            if (result == 0) {
+                result = first.key.to.compareTo(second.key.to);
+            }
+            if (result == 0) {
+                result = first.key.type.compareTo(second.key.type);
+            }
+            if (result == 0) {
+                result = first.key.packetId.compareTo(second.key.packetId);
+            }
+            return result;
+        }
+
+        public HistoryCursor toCursor() {
+            return new HistoryCursor(time, uuid);
+        }
+    }
+}
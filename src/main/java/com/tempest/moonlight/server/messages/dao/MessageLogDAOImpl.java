@@ -0,0 +1,267 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.common.dao.AbstractIdentifiedEntityDAO;
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.HistoryDirection;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
+import com.tempest.moonlight.server.domain.messages.StatusTransition;
+import com.tempest.moonlight.server.messages.dao.log.MessageLog;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Created by Yurii on 2015-08-05.
+ *
+ * Durable message storage on top of {@link MessageLog}. Heap keeps only log positions and indexes,
+ * messages are decoded from memory mapped segments on every read. Indexes are rebuilt from the log on startup.
+ * Writes of a key append and apply their record under lock of the key, so records of the key are applied
+ * in the order of the log, and replaying the log restores the same state
+ */
+@Repository
+@ConditionalOnProperty(name = "chat.messages.store", havingValue = "log")
+public class MessageLogDAOImpl extends AbstractIdentifiedEntityDAO<ChatMessage, MessageKey> implements MessageDAO {
+
+    private static final Logger logger = Logger.getLogger(MessageLogDAOImpl.class.getName());
+
+    private static final byte OP_MESSAGE = 1;
+    private static final byte OP_STATUS = 2;
+    private static final byte OP_DELETE = 3;
+
+    private static final int KEY_LOCKS = 64;
+
+    @Value("${chat.messages.log.dir:data/messages}")
+    private String directory;
+
+    @Value("${chat.messages.log.segment-size:67108864}")
+    private int segmentSize;
+
+    @Value("${chat.messages.log.max-batch:512}")
+    private int maxBatch;
+
+    @Value("${chat.messages.log.fsync:true}")
+    private boolean fsync;
+
+    private final ChatMessageCodec codec = new ChatMessageCodec();
+
+    private final ConcurrentMap<MessageKey, Location> locations = new ConcurrentHashMap<>();
+    private final MessageIndex index = new MessageIndex(this::get);
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+    private MessageLog log;
+
+    public MessageLogDAOImpl() {
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        log = new MessageLog(new File(directory), segmentSize, maxBatch, fsync);
+        log.open(this::recover);
+        logger.info("Message log recovered, messages = " + locations.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        log.close();
+    }
+
+    private void recover(long position, byte op, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (op) {
+            case OP_MESSAGE: {
+                ChatMessage message = codec.readMessage(in);
+                applySave(message.getKey(), position, message.getTime(), message.getStatus());
+                break;
+            }
+            case OP_STATUS: {
+                applyStatus(codec.readKey(in), ChatMessageCodec.readStatus(in));
+                break;
+            }
+            case OP_DELETE: {
+                applyDelete(codec.readKey(in));
+                break;
+            }
+            default:
+                throw new IOException("Unknown message log record type " + op + " at " + position);
+        }
+    }
+
+    @Override
+    public void save(MessageKey key, ChatMessage entity) {
+        byte[] record = encode(out -> codec.writeEntity(out, entity));
+        synchronized (keyLock(key)) {
+            long position = log.append(OP_MESSAGE, record);
+            applySave(key, position, entity.getTime(), entity.getStatus());
+        }
+    }
+
+    @Override
+    public ChatMessage get(MessageKey key) {
+        Location location = locations.get(key);
+        if (location == null) {
+            return null;
+        }
+        try {
+            ChatMessage message = codec.readMessage(new DataInputStream(new ByteArrayInputStream(log.read(location.position))));
+            return message.setStatus(location.status);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean existsWithKey(MessageKey key) {
+        return locations.containsKey(key);
+    }
+
+    @Override
+    public boolean deleteWithKey(MessageKey key) {
+        synchronized (keyLock(key)) {
+            if (!locations.containsKey(key)) {
+                return false;
+            }
+            log.append(OP_DELETE, encode(out -> codec.writeKey(out, key)));
+            return applyDelete(key);
+        }
+    }
+
+    /**
+     * Record is appended only if status can be advanced, so the log has at most one record of every transition
+     */
+    @Override
+    public StatusTransition advanceStatus(MessageKey key, MessageStatus status) {
+        synchronized (keyLock(key)) {
+            Location location = locations.get(key);
+            if (location == null) {
+                return StatusTransition.MISSING;
+            }
+            if (!MessageStatus.canAdvance(location.status, status)) {
+                return StatusTransition.STALE;
+            }
+            log.append(OP_STATUS, encode(out -> {
+                codec.writeKey(out, key);
+                ChatMessageCodec.writeStatus(out, status);
+            }));
+            return applyStatus(key, status);
+        }
+    }
+
+    private void applySave(MessageKey key, long position, long time, MessageStatus status) {
+        locations.compute(key, (k, previous) -> {
+            if (previous == null) {
+                index.add(k, time);
+            } else if (previous.time != time) {
+                index.remove(k, previous.time);
+                index.add(k, time);
+            }
+            return new Location(position, time, status);
+        });
+    }
+
+    private StatusTransition applyStatus(MessageKey key, MessageStatus status) {
+        AtomicReference<StatusTransition> transition = new AtomicReference<>(StatusTransition.MISSING);
+        locations.computeIfPresent(key, (k, location) -> {
+            if (!MessageStatus.canAdvance(location.status, status)) {
+                transition.set(StatusTransition.STALE);
+                return location;
+            }
+            transition.set(StatusTransition.APPLIED);
+            return new Location(location.position, location.time, status);
+        });
+        return transition.get();
+    }
+
+    private boolean applyDelete(MessageKey key) {
+        Location[] deleted = new Location[1];
+        locations.computeIfPresent(key, (k, location) -> {
+            index.remove(k, location.time);
+            deleted[0] = location;
+            return null;
+        });
+        return deleted[0] != null;
+    }
+
+    private Object keyLock(MessageKey key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return keyLocks[(hash & Integer.MAX_VALUE) % keyLocks.length];
+    }
+
+    private static byte[] encode(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            encoder.encode(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Collection<ChatMessage> getMessagesOfUser(String login) {
+        return index.getMessagesOfUser(login);
+    }
+
+    @Override
+    public Collection<ChatMessage> getMessagesBetween(String user, GenericParticipant companion) {
+        return index.getMessagesBetween(user, companion);
+    }
+
+    @Override
+    public Collection<ChatMessage> getMessagesTo(GenericParticipant genericParticipant) {
+        return index.getMessagesTo(genericParticipant);
+    }
+
+    @Override
+    public MessagesPage getMessagesOfUser(String login, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return index.getMessagesOfUser(login, cursor, direction, limit);
+    }
+
+    @Override
+    public MessagesPage getMessagesBetween(String user, GenericParticipant companion, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return index.getMessagesBetween(user, companion, cursor, direction, limit);
+    }
+
+    @Override
+    public MessagesPage getMessagesTo(GenericParticipant genericParticipant, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return index.getMessagesTo(genericParticipant, cursor, direction, limit);
+    }
+
+    private interface Encoder {
+        void encode(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Location {
+        final long position;
+        final long time;
+        final MessageStatus status;
+
+        Location(long position, long time, MessageStatus status) {
+            this.position = position;
+            this.time = time;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+
+import java.util.List;
+
+/**
+ * Created by Yurii on 2015-08-13.
+ *
+ * Keys of messages received by users while they had no sessions able to receive them, in order of arrival.
+ * Keys are numbered by increasing sequence and stay in inbox until user acknowledges them
+ */
+public interface OfflineInboxDAO {
+    /**
+     * Appends key to the end of user's inbox. If inbox is full, its oldest key is dropped
+     * @return false if the oldest key was dropped
+     */
+    boolean append(String login, MessageKey key);
+
+    /**
+     * Returns up to limit oldest entries of user's inbox with sequence greater than afterSequence, without removing them
+     */
+    List<Entry> peek(String login, long afterSequence, int limit);
+
+    /**
+     * Removes entries of user's inbox with sequence up to the given one inclusive
+     * @return count of removed entries
+     */
+    int acknowledge(String login, long sequence);
+
+    int size(String login);
+
+    final class Entry {
+        public final long sequence;
+        public final MessageKey key;
+
+        public Entry(long sequence, MessageKey key) {
+            this.sequence = sequence;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by Yurii on 2015-08-13.
+ *
+ * Inbox of a user is modified only while its map entry is locked and is removed once everything is acknowledged.
+ * Sequence is shared by all inboxes, so a late acknowledgement never removes entries of a newer inbox of the user
+ */
+@Repository
+public class OfflineInboxDAOImpl implements OfflineInboxDAO {
+
+    @Value("${chat.messages.offline.inbox-capacity:1000}")
+    private int capacity;
+
+    private final ConcurrentMap<String, ArrayDeque<Entry>> inboxes = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public boolean append(String login, MessageKey key) {
+        AtomicBoolean dropped = new AtomicBoolean();
+        inboxes.compute(login, (l, inbox) -> {
+            if (inbox == null) {
+                inbox = new ArrayDeque<>();
+            } else if (inbox.size() >= capacity) {
+                inbox.pollFirst();
+                dropped.set(true);
+            }
+            inbox.addLast(new Entry(sequence.incrementAndGet(), key));
+            return inbox;
+        });
+        return !dropped.get();
+    }
+
+    @Override
+    public List<Entry> peek(String login, long afterSequence, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        inboxes.computeIfPresent(login, (l, inbox) -> {
+            for (Entry entry : inbox) {
+                if (entries.size() >= limit) {
+                    break;
+                }
+                if (entry.sequence > afterSequence) {
+                    entries.add(entry);
+                }
+            }
+            return inbox;
+        });
+        return entries.isEmpty() ? Collections.emptyList() : entries;
+    }
+
+    @Override
+    public int acknowledge(String login, long sequence) {
+        int[] removed = new int[1];
+        inboxes.computeIfPresent(login, (l, inbox) -> {
+            while (!inbox.isEmpty() && inbox.peekFirst().sequence <= sequence) {
+                inbox.pollFirst();
+                removed[0]++;
+            }
+            return inbox.isEmpty() ? null : inbox;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public int size(String login) {
+        int[] size = new int[1];
+        inboxes.computeIfPresent(login, (l, inbox) -> {
+            size[0] = inbox.size();
+            return inbox;
+        });
+        return size[0];
+    }
+}
@@ -0,0 +1,30 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Created by Yurii on 2015-08-17.
+ *
+ * Unread direct messages of users grouped by sender. Users are tracked since the first request of their counters,
+ * until then changes are ignored: counters are built from keys of loader, which sees all messages of user
+ */
+public interface UnreadMessagesDAO {
+    /**
+     * @param loader keys of all unread messages sent to user, called once per user
+     * @return numbers of unread messages per companion, companions without unread messages are omitted
+     */
+    Map<GenericParticipant, Integer> getCounters(String user, Supplier<Collection<MessageKey>> loader);
+
+    /**
+     * Message is added once, when it is saved unread, and removed once, when it becomes read.
+     * Both may race with loading of counters
+     */
+    void add(MessageKey key);
+
+    void remove(MessageKey key);
+}
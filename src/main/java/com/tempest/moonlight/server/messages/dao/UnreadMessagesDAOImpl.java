@@ -0,0 +1,168 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Created by Yurii on 2015-08-17.
+ *
+ * Keeps numbers of unread messages per sender, guarded by the counters of each user.
+ * Loader of counters runs outside of the map and of the counters lock: messages saved or read meanwhile
+ * are kept aside and reconciled with keys of loader once, so a message seen by both is counted once
+ */
+@Repository
+public class UnreadMessagesDAOImpl implements UnreadMessagesDAO {
+
+    private final ConcurrentMap<String, UserCounters> unreadByUser = new ConcurrentHashMap<>();
+
+    @Override
+    public Map<GenericParticipant, Integer> getCounters(String user, Supplier<Collection<MessageKey>> loader) {
+        while (true) {
+            UserCounters counters = unreadByUser.get(user);
+            if (counters == null) {
+                UserCounters loading = new UserCounters();
+                counters = unreadByUser.putIfAbsent(user, loading);
+                if (counters == null) {
+                    counters = loading;
+                    load(user, loading, loader);
+                }
+            }
+            Map<GenericParticipant, Integer> snapshot = counters.awaitSnapshot();
+            if (snapshot != null) {
+                return snapshot;
+            }
+            // loader of another request failed, its counters are removed, so this one loads again
+        }
+    }
+
+    private void load(String user, UserCounters loading, Supplier<Collection<MessageKey>> loader) {
+        Collection<MessageKey> keys;
+        try {
+            keys = loader.get();
+        } catch (RuntimeException | Error e) {
+            unreadByUser.remove(user, loading);
+            loading.fail();
+            throw e;
+        }
+        loading.load(keys);
+    }
+
+    @Override
+    public void add(MessageKey key) {
+        if (isTracked(key)) {
+            UserCounters counters = unreadByUser.get(key.to);
+            if (counters != null) {
+                counters.add(key);
+            }
+        }
+    }
+
+    @Override
+    public void remove(MessageKey key) {
+        if (isTracked(key)) {
+            UserCounters counters = unreadByUser.get(key.to);
+            if (counters != null) {
+                counters.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Status of group message is shared by all members, so it can not tell which of them read it
+     */
+    private static boolean isTracked(MessageKey key) {
+        return key.type == ParticipantType.USER && !key.from.equals(key.to);
+    }
+
+    private static class UserCounters {
+
+        /**
+         * Numbers of unread messages by sender, senders without unread messages are omitted. Null while loading
+         */
+        private Map<String, Integer> bySender;
+
+        /**
+         * Messages saved (true) or read (false) while loading, read is final
+         */
+        private Map<MessageKey, Boolean> pending = new HashMap<>();
+
+        private boolean failed;
+
+        private synchronized void add(MessageKey key) {
+            if (bySender == null) {
+                if (pending != null) {
+                    pending.putIfAbsent(key, Boolean.TRUE);
+                }
+            } else {
+                bySender.merge(key.from, 1, Integer::sum);
+            }
+        }
+
+        private synchronized void remove(MessageKey key) {
+            if (bySender == null) {
+                if (pending != null) {
+                    pending.put(key, Boolean.FALSE);
+                }
+            } else {
+                bySender.computeIfPresent(key.from, (from, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+
+        private synchronized void load(Collection<MessageKey> loaded) {
+            Set<MessageKey> unread = new HashSet<>(loaded);
+            pending.forEach((key, isUnread) -> {
+                if (isUnread) {
+                    unread.add(key);
+                } else {
+                    unread.remove(key);
+                }
+            });
+            pending = null;
+            bySender = new HashMap<>();
+            for (MessageKey key : unread) {
+                bySender.merge(key.from, 1, Integer::sum);
+            }
+            notifyAll();
+        }
+
+        private synchronized void fail() {
+            pending = null;
+            failed = true;
+            notifyAll();
+        }
+
+        /**
+         * @return counters once they are loaded, null if loading failed
+         */
+        private synchronized Map<GenericParticipant, Integer> awaitSnapshot() {
+            while (bySender == null && !failed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while unread counters are loaded", e);
+                }
+            }
+            if (failed) {
+                return null;
+            }
+            Map<GenericParticipant, Integer> snapshot = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> entry : bySender.entrySet()) {
+                snapshot.put(new GenericParticipant(ParticipantType.USER, entry.getKey()), entry.getValue());
+            }
+            return snapshot;
+        }
+    }
+}
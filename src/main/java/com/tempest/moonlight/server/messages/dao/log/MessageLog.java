@@ -0,0 +1,397 @@
+package com.tempest.moonlight.server.messages.dao.log;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Created by Yurii on 2015-08-05.
+ *
+ * Append-only log split into preallocated segment files named by sequential segment id.
+ * Record layout: [int payload length][int crc32 of op and payload][byte op][payload].
+ * Appends are written by single writer thread, which commits all pending records with one write and one fsync (group commit);
+ * {@link #append} returns only after the record is committed. Records are read through read-only memory mapped segments.
+ * Position of a record is segment id in high and offset in low 32 bits.
+ */
+public class MessageLog {
+
+    private static final Logger logger = Logger.getLogger(MessageLog.class.getName());
+
+    public static final int HEADER_SIZE = 9;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int QUEUE_CAPACITY = 16 * 1024;
+
+    public interface RecordVisitor {
+        void onRecord(long position, byte op, byte[] payload) throws IOException;
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxBatch;
+    private final boolean fsync;
+
+    private final ConcurrentMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final BlockingQueue<PendingAppend> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * Accessed by writer thread only after {@link #open}
+     */
+    private Segment active;
+    private int writePosition;
+    private ByteBuffer batchBuffer = ByteBuffer.allocateDirect(256 * 1024);
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MessageLog(File directory, int segmentSize, int maxBatch, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBatch = maxBatch;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Maps existing segments, passes every valid record to visitor in log order and starts the writer.
+     * Log tail after the last valid record (torn write) is erased.
+     */
+    public void open(RecordVisitor visitor) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create message log directory " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        int[] ids = new int[files == null ? 0 : files.length];
+        for (int i = 0; i < ids.length; i++) {
+            String name = files[i].getName();
+            ids[i] = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(ids);
+
+        for (int id : ids) {
+            Segment segment = Segment.open(segmentFile(id), id, segmentSize);
+            segments.put(id, segment);
+            active = segment;
+            writePosition = scan(segment, visitor);
+        }
+        if (active == null) {
+            active = createSegment(0);
+            writePosition = 0;
+        } else {
+            eraseTail(active, writePosition);
+        }
+        logger.info("Message log opened: directory = " + directory + ", segments = " + segments.size() + ", write position = " + active.id + ":" + writePosition);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "message-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public long append(byte op, byte[] payload) {
+        if (!running) {
+            throw new IllegalStateException("Message log is closed");
+        }
+        if (HEADER_SIZE + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit into segment");
+        }
+        PendingAppend pendingAppend = new PendingAppend(op, payload);
+        try {
+            while (!queue.offer(pendingAppend, 100, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    throw new IllegalStateException("Message log is closed");
+                }
+            }
+            // close could stop the writer and drain the queue between the check above and offer,
+            // then nobody completes the append unless it is taken back here
+            if (!running && queue.remove(pendingAppend)) {
+                throw new IllegalStateException("Message log is closed");
+            }
+            return pendingAppend.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while appending to message log", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? new UncheckedIOException((IOException) cause) : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return payload of record at position
+     */
+    public byte[] read(long position) {
+        Segment segment = segments.get(segmentId(position));
+        if (segment == null) {
+            throw new IllegalArgumentException("No segment for position " + position);
+        }
+        ByteBuffer view = segment.mapped.duplicate();
+        view.position(segmentOffset(position));
+        int length = view.getInt();
+        view.position(view.position() + 5);
+        byte[] payload = new byte[length];
+        view.get(payload);
+        return payload;
+    }
+
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PendingAppend pendingAppend;
+        while ((pendingAppend = queue.poll()) != null) {
+            pendingAppend.result.completeExceptionally(new IllegalStateException("Message log is closed"));
+        }
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.force(true);
+                segment.channel.close();
+            } catch (IOException e) {
+                logger.error("Error while closing message log segment " + segment.id, e);
+            }
+        }
+        logger.info("Message log closed");
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error while writing message log batch of " + batch.size() + " records", e);
+                for (PendingAppend pendingAppend : batch) {
+                    pendingAppend.result.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes records of the batch and completes them with their positions.
+     * If writing fails, whatever part of the batch reached the segments is erased and write position goes back to the batch start,
+     * so failed records are neither overwritten halfway nor replayed after restart
+     */
+    private void writeBatch(List<PendingAppend> batch) throws IOException {
+        Segment startSegment = active;
+        int startPosition = writePosition;
+        try {
+            writeRecords(batch);
+        } catch (IOException | RuntimeException e) {
+            rollBack(startSegment, startPosition);
+            throw e;
+        }
+    }
+
+    private void writeRecords(List<PendingAppend> batch) throws IOException {
+        batchBuffer.clear();
+        long[] positions = new long[batch.size()];
+        for (int i = 0; i < positions.length; i++) {
+            PendingAppend pendingAppend = batch.get(i);
+            int recordSize = HEADER_SIZE + pendingAppend.payload.length;
+            if (writePosition + batchBuffer.position() + recordSize > active.size) {
+                flush();
+                if (fsync) {
+                    active.channel.force(false);
+                }
+                active = createSegment(active.id + 1);
+                writePosition = 0;
+            }
+            if (batchBuffer.remaining() < recordSize) {
+                flush();
+                if (batchBuffer.capacity() < recordSize) {
+                    batchBuffer = ByteBuffer.allocateDirect(recordSize);
+                }
+            }
+            positions[i] = position(active.id, writePosition + batchBuffer.position());
+            batchBuffer.putInt(pendingAppend.payload.length)
+                    .putInt(pendingAppend.crc)
+                    .put(pendingAppend.op)
+                    .put(pendingAppend.payload);
+        }
+        flush();
+        if (fsync) {
+            active.channel.force(false);
+        }
+        for (int i = 0; i < positions.length; i++) {
+            batch.get(i).result.complete(positions[i]);
+        }
+    }
+
+    private void rollBack(Segment startSegment, int startPosition) {
+        try {
+            for (int id = active.id; id > startSegment.id; id--) {
+                Segment segment = segments.remove(id);
+                segment.channel.close();
+                if (!segmentFile(id).delete()) {
+                    throw new IOException("Can not delete message log segment " + id);
+                }
+            }
+            // failed write could leave bytes up to the end of its buffer
+            long end = active == startSegment ? Math.min(startSegment.size, (long) writePosition + batchBuffer.remaining()) : startSegment.size;
+            erase(startSegment, startPosition, end);
+        } catch (IOException e) {
+            // the scan stops at the first record with broken crc, fully written failed records may be replayed
+            logger.error("Error while erasing failed message log batch at " + startSegment.id + ":" + startPosition, e);
+        } finally {
+            active = startSegment;
+            writePosition = startPosition;
+            batchBuffer.clear();
+        }
+    }
+
+    /**
+     * Writes buffered records to active segment
+     */
+    private void flush() throws IOException {
+        batchBuffer.flip();
+        while (batchBuffer.hasRemaining()) {
+            writePosition += active.channel.write(batchBuffer, writePosition);
+        }
+        batchBuffer.clear();
+    }
+
+    private int scan(Segment segment, RecordVisitor visitor) throws IOException {
+        ByteBuffer view = segment.mapped.duplicate();
+        int offset = 0;
+        while (offset + HEADER_SIZE <= segment.size) {
+            view.position(offset);
+            int length = view.getInt();
+            if (length <= 0 || offset + HEADER_SIZE + length > segment.size) {
+                break;
+            }
+            int crc = view.getInt();
+            byte op = view.get();
+            byte[] payload = new byte[length];
+            view.get(payload);
+            if (crc(op, payload) != crc) {
+                logger.warn("Message log segment " + segment.id + " has corrupted record at offset " + offset + ", ignoring the rest");
+                break;
+            }
+            visitor.onRecord(position(segment.id, offset), op, payload);
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private void eraseTail(Segment segment, int from) throws IOException {
+        if (from + 4 > segment.size || segment.mapped.getInt(from) == 0) {
+            return;
+        }
+        erase(segment, from, segment.size);
+    }
+
+    /**
+     * Fills [from, to) of segment with zeros
+     */
+    private void erase(Segment segment, long from, long to) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+        for (long position = from; position < to; position += zeros.limit()) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), to - position));
+            while (zeros.hasRemaining()) {
+                segment.channel.write(zeros, position + zeros.position());
+            }
+        }
+        segment.channel.force(false);
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = Segment.open(segmentFile(id), id, segmentSize);
+        segments.put(id, segment);
+        logger.info("Message log segment " + id + " created");
+        return segment;
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("%010d%s", id, SEGMENT_SUFFIX));
+    }
+
+    static int crc(byte op, byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(op);
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    public static long position(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    public static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+
+    public static int segmentOffset(long position) {
+        return (int) position;
+    }
+
+    private static class PendingAppend {
+        final byte op;
+        final byte[] payload;
+        final int crc;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        PendingAppend(byte op, byte[] payload) {
+            this.op = op;
+            this.payload = payload;
+            this.crc = crc(op, payload);
+        }
+    }
+
+    private static class Segment {
+        final int id;
+        final long size;
+        final FileChannel channel;
+        final MappedByteBuffer mapped;
+
+        private Segment(int id, FileChannel channel, MappedByteBuffer mapped) {
+            this.id = id;
+            this.size = mapped.capacity();
+            this.channel = channel;
+            this.mapped = mapped;
+        }
+
+        static Segment open(File file, int id, int preallocateSize) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            if (randomAccessFile.length() < preallocateSize) {
+                randomAccessFile.setLength(preallocateSize);
+            }
+            FileChannel channel = randomAccessFile.getChannel();
+            return new Segment(id, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by Yurii on 2015-08-16.
+ */
+public class DeliveryStatusBatchDTO {
+
+    private List<MessageDeliveryStatus> statuses = new ArrayList<>();
+
+    public DeliveryStatusBatchDTO() {
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryStatusBatchDTO{" +
+                "statuses=" + statuses.size() +
+                '}';
+    }
+
+    public List<MessageDeliveryStatus> getStatuses() {
+        return statuses;
+    }
+
+    public DeliveryStatusBatchDTO setStatuses(List<MessageDeliveryStatus> statuses) {
+        this.statuses = statuses;
+        return this;
+    }
+}
@@ -0,0 +1,67 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.common.dto.ServerToClientDTO;
+import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ */
+public class MessageDeliveryStatusDTO implements ServerToClientDTO<MessageDeliveryStatus> {
+
+    private String from;
+    private String to;
+    private int recipientType;
+
+    private String packetId;
+    private String uuid;
+
+    private int status;
+
+    @Override
+    public void fillWithEntity(MessageDeliveryStatus deliveryStatus) {
+        from = deliveryStatus.getFrom();
+        to = deliveryStatus.getTo();
+        recipientType = deliveryStatus.getRecipientType();
+
+        packetId = deliveryStatus.getPacketId();
+        uuid = deliveryStatus.getUuid();
+
+        status = deliveryStatus.getStatus();
+    }
+
+    @Override
+    public String toString() {
+        return "MessageDeliveryStatusDTO{" +
+                "from='" + from + '\'' +
+                ", to='" + to + '\'' +
+                ", recipientType=" + recipientType +
+                ", packetId='" + packetId + '\'' +
+                ", uuid='" + uuid + '\'' +
+                ", status=" + status +
+                '}';
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public int getRecipientType() {
+        return recipientType;
+    }
+
+    public String getPacketId() {
+        return packetId;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
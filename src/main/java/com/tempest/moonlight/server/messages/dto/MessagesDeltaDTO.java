@@ -0,0 +1,101 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.domain.messages.MessagesDelta;
+
+import java.util.Collection;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ */
+public class MessagesDeltaDTO {
+
+    private long epoch;
+    private long sequence;
+    private boolean reset;
+    private boolean hasMore;
+
+    private Collection<?> messages;
+    private Collection<?> statuses;
+
+    public MessagesDeltaDTO() {
+    }
+
+    /**
+     * @param messages messages of the delta converted by {@link com.tempest.moonlight.server.common.dto.DtoConverter#convertToOutbound(Collection)}
+     * @param statuses statuses of the delta converted to {@link MessageDeliveryStatusDTO}s
+     */
+    public MessagesDeltaDTO(MessagesDelta delta, Collection<?> messages, Collection<?> statuses) {
+        this.epoch = delta.getEpoch();
+        this.sequence = delta.getSequence();
+        this.reset = delta.isReset();
+        this.hasMore = delta.hasMore();
+        this.messages = messages;
+        this.statuses = statuses;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesDeltaDTO{" +
+                "epoch=" + epoch +
+                ", sequence=" + sequence +
+                ", reset=" + reset +
+                ", hasMore=" + hasMore +
+                ", messages=" + messages.size() +
+                ", statuses=" + statuses.size() +
+                '}';
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public MessagesDeltaDTO setEpoch(long epoch) {
+        this.epoch = epoch;
+        return this;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public MessagesDeltaDTO setSequence(long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public MessagesDeltaDTO setReset(boolean reset) {
+        this.reset = reset;
+        return this;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public MessagesDeltaDTO setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+        return this;
+    }
+
+    public Collection<?> getMessages() {
+        return messages;
+    }
+
+    public MessagesDeltaDTO setMessages(Collection<?> messages) {
+        this.messages = messages;
+        return this;
+    }
+
+    public Collection<?> getStatuses() {
+        return statuses;
+    }
+
+    public MessagesDeltaDTO setStatuses(Collection<?> statuses) {
+        this.statuses = statuses;
+        return this;
+    }
+}
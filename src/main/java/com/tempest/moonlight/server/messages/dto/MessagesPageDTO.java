@@ -0,0 +1,85 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
+
+import java.util.Collection;
+
+/**
+ * Created by Yurii on 2015-08-03.
+ */
+public class MessagesPageDTO {
+
+    private Integer participantType;
+    private String participant;
+
+    private Collection<?> messages;
+
+    private int direction;
+    private Long cursorTime;
+    private String cursorUuid;
+    private boolean hasMore;
+
+    public MessagesPageDTO() {
+    }
+
+    /**
+     * @param messages messages of the page converted by {@link com.tempest.moonlight.server.common.dto.DtoConverter#convertToOutbound(Collection)}
+     */
+    public MessagesPageDTO(GenericParticipant participant, MessagesPage page, Collection<?> messages) {
+        if (participant != null) {
+            this.participantType = participant.getType().getValue();
+            this.participant = participant.getSignature();
+        }
+        this.messages = messages;
+        this.direction = page.getDirection().getValue();
+        HistoryCursor next = page.getNext();
+        if (next != null) {
+            this.cursorTime = next.time;
+            this.cursorUuid = next.uuid;
+        }
+        this.hasMore = page.hasMore();
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesPageDTO{" +
+                "participantType=" + participantType +
+                ", participant='" + participant + '\'' +
+                ", messages=" + messages.size() +
+                ", direction=" + direction +
+                ", cursorTime=" + cursorTime +
+                ", cursorUuid='" + cursorUuid + '\'' +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+
+    public Integer getParticipantType() {
+        return participantType;
+    }
+
+    public String getParticipant() {
+        return participant;
+    }
+
+    public Collection<?> getMessages() {
+        return messages;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public Long getCursorTime() {
+        return cursorTime;
+    }
+
+    public String getCursorUuid() {
+        return cursorUuid;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
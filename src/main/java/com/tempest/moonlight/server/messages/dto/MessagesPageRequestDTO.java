@@ -0,0 +1,109 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.HistoryDirection;
+
+/**
+ * Created by Yurii on 2015-08-03.
+ */
+public class MessagesPageRequestDTO {
+
+    /**
+     * Companion, ignored by messages/all/page
+     */
+    private int participantType;
+    private String participant;
+
+    /**
+     * Cursor returned with previous page, absent for the first page
+     */
+    private Long cursorTime;
+    private String cursorUuid;
+
+    private int direction;
+    private int limit;
+
+    public MessagesPageRequestDTO() {
+    }
+
+    public GenericParticipant toParticipant() {
+        return participant == null ? null : new GenericParticipant(ParticipantType.getByValue(participantType), participant);
+    }
+
+    public HistoryCursor toCursor() {
+        return cursorTime == null ? null : new HistoryCursor(cursorTime, cursorUuid);
+    }
+
+    public HistoryDirection toDirection() {
+        HistoryDirection historyDirection = HistoryDirection.getByValue(direction);
+        return historyDirection == null ? HistoryDirection.BEFORE : historyDirection;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesPageRequestDTO{" +
+                "participantType=" + participantType +
+                ", participant='" + participant + '\'' +
+                ", cursorTime=" + cursorTime +
+                ", cursorUuid='" + cursorUuid + '\'' +
+                ", direction=" + direction +
+                ", limit=" + limit +
+                '}';
+    }
+
+    public int getParticipantType() {
+        return participantType;
+    }
+
+    public MessagesPageRequestDTO setParticipantType(int participantType) {
+        this.participantType = participantType;
+        return this;
+    }
+
+    public String getParticipant() {
+        return participant;
+    }
+
+    public MessagesPageRequestDTO setParticipant(String participant) {
+        this.participant = participant;
+        return this;
+    }
+
+    public Long getCursorTime() {
+        return cursorTime;
+    }
+
+    public MessagesPageRequestDTO setCursorTime(Long cursorTime) {
+        this.cursorTime = cursorTime;
+        return this;
+    }
+
+    public String getCursorUuid() {
+        return cursorUuid;
+    }
+
+    public MessagesPageRequestDTO setCursorUuid(String cursorUuid) {
+        this.cursorUuid = cursorUuid;
+        return this;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public MessagesPageRequestDTO setDirection(int direction) {
+        this.direction = direction;
+        return this;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public MessagesPageRequestDTO setLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+}
@@ -0,0 +1,54 @@
+package com.tempest.moonlight.server.messages.dto;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ */
+public class MessagesSyncRequestDTO {
+
+    /**
+     * Watermark returned with previous delta, absent for the first sync
+     */
+    private long epoch;
+    private long sequence;
+
+    private int limit;
+
+    public MessagesSyncRequestDTO() {
+    }
+
+    @Override
+    public String toString() {
+        return "MessagesSyncRequestDTO{" +
+                "epoch=" + epoch +
+                ", sequence=" + sequence +
+                ", limit=" + limit +
+                '}';
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public MessagesSyncRequestDTO setEpoch(long epoch) {
+        this.epoch = epoch;
+        return this;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public MessagesSyncRequestDTO setSequence(long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public MessagesSyncRequestDTO setLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+}
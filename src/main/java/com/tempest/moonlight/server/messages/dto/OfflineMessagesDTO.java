@@ -0,0 +1,51 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.domain.messages.OfflineMessages;
+
+import java.util.Collection;
+
+/**
+ * Created by Yurii on 2015-08-13.
+ */
+public class OfflineMessagesDTO {
+
+    private Collection<?> messages;
+    /**
+     * Client acknowledges it with the next request, absent if the batch is empty
+     */
+    private Long sequence;
+    private boolean hasMore;
+
+    public OfflineMessagesDTO() {
+    }
+
+    /**
+     * @param messages messages of the batch converted by {@link com.tempest.moonlight.server.common.dto.DtoConverter#convertToOutbound(Collection)}
+     */
+    public OfflineMessagesDTO(OfflineMessages offlineMessages, Collection<?> messages) {
+        this.messages = messages;
+        this.sequence = offlineMessages.getSequence();
+        this.hasMore = offlineMessages.hasMore();
+    }
+
+    @Override
+    public String toString() {
+        return "OfflineMessagesDTO{" +
+                "messages=" + messages.size() +
+                ", sequence=" + sequence +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+
+    public Collection<?> getMessages() {
+        return messages;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,31 @@
+package com.tempest.moonlight.server.messages.dto;
+
+/**
+ * Created by Yurii on 2015-08-13.
+ */
+public class OfflineMessagesRequestDTO {
+
+    /**
+     * Sequence of the previously received batch, absent for the first request
+     */
+    private Long ack;
+
+    public OfflineMessagesRequestDTO() {
+    }
+
+    @Override
+    public String toString() {
+        return "OfflineMessagesRequestDTO{" +
+                "ack=" + ack +
+                '}';
+    }
+
+    public Long getAck() {
+        return ack;
+    }
+
+    public OfflineMessagesRequestDTO setAck(Long ack) {
+        this.ack = ack;
+        return this;
+    }
+}
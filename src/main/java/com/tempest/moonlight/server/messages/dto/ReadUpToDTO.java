@@ -0,0 +1,60 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+
+/**
+ * Created by Yurii on 2015-08-16.
+ *
+ * All messages of conversation with participant up to time are read
+ */
+public class ReadUpToDTO {
+
+    private int participantType;
+    private String participant;
+
+    private long time;
+
+    public ReadUpToDTO() {
+    }
+
+    public GenericParticipant toParticipant() {
+        return participant == null ? null : new GenericParticipant(ParticipantType.getByValue(participantType), participant);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadUpToDTO{" +
+                "participantType=" + participantType +
+                ", participant='" + participant + '\'' +
+                ", time=" + time +
+                '}';
+    }
+
+    public int getParticipantType() {
+        return participantType;
+    }
+
+    public ReadUpToDTO setParticipantType(int participantType) {
+        this.participantType = participantType;
+        return this;
+    }
+
+    public String getParticipant() {
+        return participant;
+    }
+
+    public ReadUpToDTO setParticipant(String participant) {
+        this.participant = participant;
+        return this;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public ReadUpToDTO setTime(long time) {
+        this.time = time;
+        return this;
+    }
+}
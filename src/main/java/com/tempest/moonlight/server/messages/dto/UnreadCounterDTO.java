@@ -0,0 +1,40 @@
+package com.tempest.moonlight.server.messages.dto;
+
+import com.tempest.moonlight.server.contacts.dto.GenericParticipantDTO;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+
+/**
+ * Created by Yurii on 2015-08-17.
+ *
+ * Number of unread messages of conversation with participant
+ */
+public class UnreadCounterDTO extends GenericParticipantDTO {
+
+    private int count;
+
+    public UnreadCounterDTO() {
+    }
+
+    public UnreadCounterDTO(GenericParticipant participant, int count) {
+        fillWithEntity(participant);
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        return "UnreadCounterDTO{" +
+                "type=" + type +
+                ", signature='" + signature + '\'' +
+                ", count=" + count +
+                '}';
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public UnreadCounterDTO setCount(int count) {
+        this.count = count;
+        return this;
+    }
+}
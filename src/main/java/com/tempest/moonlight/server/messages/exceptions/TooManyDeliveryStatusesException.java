@@ -0,0 +1,12 @@
+package com.tempest.moonlight.server.messages.exceptions;
+
+/**
+ * Created by Yurii on 2015-08-16.
+ */
+public class TooManyDeliveryStatusesException extends MessageHandlingException {
+    private static final long serialVersionUID = 1L;
+
+    public TooManyDeliveryStatusesException(int count, int maxCount) {
+        super("Too many delivery statuses in batch = " + count + ". At most " + maxCount + " are allowed");
+    }
+}
@@ -2,10 +2,18 @@ package com.tempest.moonlight.server.messages.services;
 
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.HistoryDirection;
+import com.tempest.moonlight.server.domain.messages.MessagesDelta;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
+import com.tempest.moonlight.server.domain.messages.OfflineMessages;
+import com.tempest.moonlight.server.domain.messages.StatusTransition;
 import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
 import com.tempest.moonlight.server.messages.exceptions.MessageHandlingException;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Yurii on 2015-05-08.
@@ -15,11 +23,60 @@ public interface MessageService {
     Collection<ChatMessage> getMessagesOfUser(String user);
 
     Collection<ChatMessage> getMessagesBetween(String user, GenericParticipant companion);
-    Collection<ChatMessage> getUndeliveredMessages(String user);
+    /**
+     * Keeps message to be replayed when user connects, see {@link #getUndeliveredMessages(String)}
+     */
+    void addToOfflineInbox(String user, ChatMessage chatMessage);
+
+    /**
+     * Returns next batch of messages from offline inbox of user without removing them,
+     * so the same batch is returned until user acknowledges it by {@link #acknowledgeUndelivered(String, long)}.
+     * Direct messages that were delivered or read in the meantime are skipped
+     * @return up to offline batch size messages, empty batch when inbox is empty
+     */
+    OfflineMessages getUndeliveredMessages(String user);
+
+    /**
+     * Removes messages of offline inbox of user up to sequence of the received batch inclusive
+     */
+    void acknowledgeUndelivered(String user, long sequence);
+
+    MessagesPage getMessagesOfUser(String user, HistoryCursor cursor, HistoryDirection direction, int limit);
+
+    /**
+     * Changes of messages of user (same ones as of {@link #getMessagesOfUser(String)}) after the watermark.
+     * Watermark of another epoch or older than the kept changes results in reset delta
+     */
+    MessagesDelta getMessagesDelta(String user, long epoch, long sequence, int limit);
+    MessagesPage getMessagesBetween(String user, GenericParticipant companion, HistoryCursor cursor, HistoryDirection direction, int limit);
 
     Collection<ChatMessage> getMessagesOfGroup(String group);
     Collection<ChatMessage> getMessagesOfChannel(String channel);
     void markMessageDelivered(ChatMessage chatMessage, boolean delivered);
 
-    void updateMessageDeliveryStatus(MessageDeliveryStatus deliveryStatus) throws MessageHandlingException;
+    /**
+     * Advances status of message, late or repeated receipts do not change it
+     * @return {@link StatusTransition#APPLIED} or {@link StatusTransition#STALE}
+     * @throws com.tempest.moonlight.server.messages.exceptions.MessageDoesNotExistsException if there is no such message
+     */
+    StatusTransition updateMessageDeliveryStatus(MessageDeliveryStatus deliveryStatus) throws MessageHandlingException;
+
+    /**
+     * Applies statuses of batch, statuses of absent messages and stale ones are skipped
+     * @return statuses that were applied
+     */
+    List<MessageDeliveryStatus> updateMessageDeliveryStatuses(Collection<MessageDeliveryStatus> deliveryStatuses) throws MessageHandlingException;
+
+    /**
+     * Marks messages of companion to user (to group if companion is group) not later than time as read,
+     * going back through a bounded number of messages. Already read messages are skipped, since receipts
+     * of other sessions may leave unread ones before them
+     * @return statuses that were applied
+     */
+    List<MessageDeliveryStatus> markReadUpTo(String user, GenericParticipant companion, long time);
+
+    /**
+     * Numbers of unread direct messages to user per sender, group messages are not counted
+     */
+    Map<GenericParticipant, Integer> getUnreadCounters(String user);
 }
@@ -4,17 +4,34 @@ import com.tempest.moonlight.server.domain.MessageKey;
 import com.tempest.moonlight.server.domain.ParticipantType;
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.HistoryCursor;
+import com.tempest.moonlight.server.domain.messages.HistoryDirection;
+import com.tempest.moonlight.server.domain.messages.MessageChange;
+import com.tempest.moonlight.server.domain.messages.MessagesDelta;
+import com.tempest.moonlight.server.domain.messages.MessagesPage;
 import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
 import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.domain.messages.OfflineMessages;
+import com.tempest.moonlight.server.domain.messages.StatusTransition;
 import com.tempest.moonlight.server.messages.exceptions.IllegalMessageDeliveryStatusException;
 import com.tempest.moonlight.server.messages.exceptions.MessageDoesNotExistsException;
 import com.tempest.moonlight.server.messages.exceptions.MessageHandlingException;
+import com.tempest.moonlight.server.messages.exceptions.TooManyDeliveryStatusesException;
+import com.tempest.moonlight.server.messages.dao.ChangeFeedDAO;
 import com.tempest.moonlight.server.messages.dao.MessageDAO;
+import com.tempest.moonlight.server.messages.dao.OfflineInboxDAO;
+import com.tempest.moonlight.server.messages.dao.UnreadMessagesDAO;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Yurii on 2015-05-08.
@@ -22,15 +39,57 @@ import java.util.Collection;
 @Service
 public class MessageServiceImpl implements MessageService {
 
+    private static final Logger logger = Logger.getLogger(MessageServiceImpl.class.getName());
+
     @Autowired
     private MessageDAO messageDAO;
 
+    @Autowired
+    private OfflineInboxDAO offlineInboxDAO;
+
+    @Autowired
+    private ChangeFeedDAO changeFeedDAO;
+
+    @Autowired
+    private UnreadMessagesDAO unreadMessagesDAO;
+
+    @Value("${chat.messages.offline.batch-size:100}")
+    private int offlineBatchSize;
+
+    @Value("${chat.messages.delivery.max-batch-size:500}")
+    private int maxDeliveryBatchSize;
+
+    @Value("${chat.messages.history.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${chat.messages.history.max-page-size:200}")
+    private int maxPageSize;
+
     @Override
     public void saveMessage(ChatMessage chatMessage) {
         if(chatMessage == null) {
             throw new NullPointerException();
         }
+        if(chatMessage.getStatus() == null) {
+            chatMessage.setStatus(MessageStatus.ARRIVED);
+        }
+        // messages of one sender are saved in order on its inbound lane, so a resent one is seen here
+        boolean resent = messageDAO.existsWithKey(chatMessage.getKey());
         messageDAO.save(chatMessage);
+        recordChange(chatMessage.getKey(), null);
+        if(!resent && chatMessage.getStatus() != MessageStatus.READ) {
+            unreadMessagesDAO.add(chatMessage.getKey());
+        }
+    }
+
+    /**
+     * Records change to feeds of the users whose messages/all contains the message
+     */
+    private void recordChange(MessageKey key, MessageStatus status) {
+        changeFeedDAO.record(key.from, key, status);
+        if(key.type == ParticipantType.USER && !key.to.equals(key.from)) {
+            changeFeedDAO.record(key.to, key, status);
+        }
     }
 
     @Override
@@ -48,8 +107,103 @@ public class MessageServiceImpl implements MessageService {
     }
 
     @Override
-    public Collection<ChatMessage> getUndeliveredMessages(String user) {
-        return null;
+    public void addToOfflineInbox(String user, ChatMessage chatMessage) {
+        if(!offlineInboxDAO.append(user, chatMessage.getKey())) {
+            logger.warn("Offline inbox of user " + user + " is full, the oldest message was dropped");
+        }
+    }
+
+    @Override
+    public OfflineMessages getUndeliveredMessages(String user) {
+        List<ChatMessage> messages = new ArrayList<>();
+        long after = 0;
+        boolean hasMore = false;
+        while (messages.size() < offlineBatchSize) {
+            List<OfflineInboxDAO.Entry> entries = offlineInboxDAO.peek(user, after, offlineBatchSize - messages.size());
+            if(entries.isEmpty()) {
+                hasMore = false;
+                break;
+            }
+            // skipped entries advance the sequence too, so acknowledgement removes them as well
+            for (OfflineInboxDAO.Entry entry : entries) {
+                after = entry.sequence;
+                ChatMessage chatMessage = messageDAO.get(entry.key);
+                if(chatMessage != null && isUndelivered(chatMessage)) {
+                    messages.add(chatMessage);
+                }
+            }
+            hasMore = true;
+        }
+        return after == 0 ? OfflineMessages.empty() : new OfflineMessages(messages, after, hasMore);
+    }
+
+    @Override
+    public void acknowledgeUndelivered(String user, long sequence) {
+        offlineInboxDAO.acknowledge(user, sequence);
+    }
+
+    /**
+     * Status of group message is shared by all members, so it can not tell whether this user got it
+     */
+    private static boolean isUndelivered(ChatMessage chatMessage) {
+        return chatMessage.getRecipient().getType() == ParticipantType.GROUP
+                || chatMessage.getStatus() == null
+                || chatMessage.getStatus() == MessageStatus.ARRIVED;
+    }
+
+    @Override
+    public MessagesPage getMessagesOfUser(String user, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        return messageDAO.getMessagesOfUser(user, cursor, checkDirection(direction), checkPageSize(limit));
+    }
+
+    @Override
+    public MessagesPage getMessagesBetween(String user, GenericParticipant companion, HistoryCursor cursor, HistoryDirection direction, int limit) {
+        if(companion.getType() == ParticipantType.GROUP) {
+            return messageDAO.getMessagesTo(companion, cursor, checkDirection(direction), checkPageSize(limit));
+        } else {
+            return messageDAO.getMessagesBetween(user, companion, cursor, checkDirection(direction), checkPageSize(limit));
+        }
+    }
+
+    private static HistoryDirection checkDirection(HistoryDirection direction) {
+        return direction == null ? HistoryDirection.BEFORE : direction;
+    }
+
+    @Override
+    public MessagesDelta getMessagesDelta(String user, long epoch, long sequence, int limit) {
+        long currentEpoch = changeFeedDAO.getEpoch();
+        if(epoch != currentEpoch || !changeFeedDAO.isAvailable(user, sequence)) {
+            return MessagesDelta.reset(currentEpoch, changeFeedDAO.getLastSequence(user));
+        }
+
+        int pageSize = checkPageSize(limit);
+        List<MessageChange> changes = changeFeedDAO.getChanges(user, sequence, pageSize + 1);
+        boolean hasMore = changes.size() > pageSize;
+        if(hasMore) {
+            changes = changes.subList(0, pageSize);
+        }
+
+        List<ChatMessage> messages = new ArrayList<>();
+        Map<MessageKey, MessageDeliveryStatus> statuses = new LinkedHashMap<>();
+        for (MessageChange change : changes) {
+            ChatMessage chatMessage = messageDAO.get(change.key);
+            if(chatMessage == null) {
+                continue;
+            }
+            if(change.isCreated()) {
+                messages.add(chatMessage);
+            } else {
+                statuses.remove(change.key);
+                statuses.put(change.key, new MessageDeliveryStatus(chatMessage, change.status));
+            }
+        }
+
+        long nextSequence = changes.isEmpty() ? sequence : changes.get(changes.size() - 1).sequence;
+        return new MessagesDelta(currentEpoch, nextSequence, false, hasMore, messages, new ArrayList<>(statuses.values()));
+    }
+
+    private int checkPageSize(int limit) {
+        return limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
     }
 
     @Override
@@ -68,18 +222,95 @@ public class MessageServiceImpl implements MessageService {
     }
 
     @Override
-    public void updateMessageDeliveryStatus(MessageDeliveryStatus deliveryStatus) throws MessageHandlingException {
+    public StatusTransition updateMessageDeliveryStatus(MessageDeliveryStatus deliveryStatus) throws MessageHandlingException {
         MessageKey messageKey = MessageKey.fromDeliveryStatus(deliveryStatus);
-        if(!messageDAO.existsWithKey(messageKey)) {
+        StatusTransition transition = advanceStatus(messageKey, checkDeliveryStatus(deliveryStatus));
+        if(transition == StatusTransition.MISSING) {
             throw new MessageDoesNotExistsException(messageKey);
         }
+        return transition;
+    }
 
-        ChatMessage chatMessage = messageDAO.get(messageKey);
+    @Override
+    public List<MessageDeliveryStatus> updateMessageDeliveryStatuses(Collection<MessageDeliveryStatus> deliveryStatuses) throws MessageHandlingException {
+        if(deliveryStatuses.size() > maxDeliveryBatchSize) {
+            throw new TooManyDeliveryStatusesException(deliveryStatuses.size(), maxDeliveryBatchSize);
+        }
+        for (MessageDeliveryStatus deliveryStatus : deliveryStatuses) {
+            checkDeliveryStatus(deliveryStatus);
+        }
+
+        List<MessageDeliveryStatus> applied = new ArrayList<>(deliveryStatuses.size());
+        for (MessageDeliveryStatus deliveryStatus : deliveryStatuses) {
+            MessageKey messageKey = MessageKey.fromDeliveryStatus(deliveryStatus);
+            StatusTransition transition = advanceStatus(messageKey, MessageStatus.getByValue(deliveryStatus.getStatus()));
+            if(transition == StatusTransition.APPLIED) {
+                applied.add(deliveryStatus);
+            } else if(transition == StatusTransition.MISSING) {
+                logger.warn("Delivery status of absent message " + messageKey + " is skipped");
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public List<MessageDeliveryStatus> markReadUpTo(String user, GenericParticipant companion, long time) {
+        List<MessageDeliveryStatus> applied = new ArrayList<>();
+        HistoryCursor cursor = new HistoryCursor(time + 1, null);
+        // own messages of user are interleaved with companion's ones, so more than a batch may be looked through
+        int scanLimit = 2 * maxDeliveryBatchSize;
+        for (int scanned = 0; scanned < scanLimit && applied.size() < maxDeliveryBatchSize; ) {
+            MessagesPage page = getMessagesBetween(user, companion, cursor, HistoryDirection.BEFORE, maxPageSize);
+            List<ChatMessage> messages = page.getMessages();
+            scanned += messages.size();
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                ChatMessage chatMessage = messages.get(i);
+                if(chatMessage.getFrom().equals(user) || chatMessage.getStatus() == MessageStatus.READ) {
+                    continue;
+                }
+                if(advanceStatus(chatMessage.getKey(), MessageStatus.READ) == StatusTransition.APPLIED) {
+                    applied.add(new MessageDeliveryStatus(chatMessage, MessageStatus.READ));
+                }
+            }
+            if(!page.hasMore()) {
+                break;
+            }
+            cursor = page.getNext();
+        }
+        return applied;
+    }
+
+    private static MessageStatus checkDeliveryStatus(MessageDeliveryStatus deliveryStatus) throws IllegalMessageDeliveryStatusException {
         MessageStatus status = MessageStatus.getByValue(deliveryStatus.getStatus());
         if(!(status == MessageStatus.DELIVERED || status == MessageStatus.READ)) {
             throw new IllegalMessageDeliveryStatusException(status);
         }
-        //TODO check if user downgrades status!
-        chatMessage.setStatus(status);
+        return status;
+    }
+
+    private StatusTransition advanceStatus(MessageKey messageKey, MessageStatus status) {
+        StatusTransition transition = messageDAO.advanceStatus(messageKey, status);
+        if(transition == StatusTransition.APPLIED) {
+            recordChange(messageKey, status);
+            if(status == MessageStatus.READ) {
+                unreadMessagesDAO.remove(messageKey);
+            }
+        }
+        return transition;
+    }
+
+    @Override
+    public Map<GenericParticipant, Integer> getUnreadCounters(String user) {
+        return unreadMessagesDAO.getCounters(user, () -> {
+            List<MessageKey> keys = new ArrayList<>();
+            for (ChatMessage chatMessage : messageDAO.getMessagesOfUser(user)) {
+                MessageKey key = chatMessage.getKey();
+                if(key.type == ParticipantType.USER && user.equals(key.to) && !user.equals(key.from)
+                        && chatMessage.getStatus() != MessageStatus.READ) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        });
     }
 }
@@ -0,0 +1,23 @@
+package com.tempest.moonlight.server.messages.services;
+
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ *
+ * Offline inbox of users: keeps messages for users without receiving sessions and replays them to sessions on request
+ */
+public interface OfflineMessagesService {
+
+    /**
+     * Keeps message in offline inbox of user, unless user has a session receiving messages
+     */
+    void keepIfNotReceiving(String user, ChatMessage chatMessage);
+
+    /**
+     * Marks session as receiving and sends it the next batch of offline inbox of user
+     * to /user/queue/messages/offline, asynchronously
+     * @param ack sequence of the previous batch received by client, null for the first request
+     */
+    void replay(String user, String sessionId, Long ack);
+}
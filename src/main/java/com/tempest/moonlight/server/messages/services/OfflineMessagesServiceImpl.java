@@ -0,0 +1,68 @@
+package com.tempest.moonlight.server.messages.services;
+
+import com.tempest.moonlight.server.common.dto.DtoConverter;
+import com.tempest.moonlight.server.common.logging.HotPathLogger;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.OfflineMessages;
+import com.tempest.moonlight.server.event.SessionEventsExecutor;
+import com.tempest.moonlight.server.messages.dto.OfflineMessagesDTO;
+import com.tempest.moonlight.server.users.service.ActiveUsersService;
+import com.tempest.moonlight.server.websockets.ToParticipantSender;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Created by Yurii on 2015-08-14.
+ *
+ * Replay runs on the lane of user in {@link SessionEventsExecutor}, after connect of the session,
+ * and marks the session as receiving before the batch is read: message sent meanwhile is either
+ * kept in inbox and so in the batch, or sent to the session directly.
+ * Batch stays in inbox until client acknowledges it with the next request
+ */
+@Service
+public class OfflineMessagesServiceImpl implements OfflineMessagesService {
+
+    private static final HotPathLogger sessionsLogger = HotPathLogger.getLogger(OfflineMessagesServiceImpl.class, "session-events");
+
+    private static final String OFFLINE_MESSAGES_DESTINATION = "messages/offline";
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private ActiveUsersService activeUsersService;
+
+    @Autowired
+    private SessionEventsExecutor sessionEventsExecutor;
+
+    @Autowired
+    private ToParticipantSender toParticipantSender;
+
+    @Autowired
+    private DtoConverter dtoConverter;
+
+    @Override
+    public void keepIfNotReceiving(String user, ChatMessage chatMessage) {
+        if(!activeUsersService.isReceiving(user)) {
+            messageService.addToOfflineInbox(user, chatMessage);
+        }
+    }
+
+    @Override
+    public void replay(String user, String sessionId, Long ack) {
+        sessionEventsExecutor.execute(user, () -> {
+            if(ack != null) {
+                messageService.acknowledgeUndelivered(user, ack);
+            }
+            if(!activeUsersService.markSessionReceiving(sessionId)) {
+                return;
+            }
+            OfflineMessages batch = messageService.getUndeliveredMessages(user);
+            sessionsLogger.info("offline messages requested user={} session={} ack={}", user, sessionId, ack);
+            toParticipantSender.sendToSessionQueue(
+                    user, sessionId, OFFLINE_MESSAGES_DESTINATION,
+                    new OfflineMessagesDTO(batch, dtoConverter.convertToOutbound(batch.getMessages()))
+            );
+        });
+    }
+}
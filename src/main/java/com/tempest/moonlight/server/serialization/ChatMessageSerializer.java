@@ -0,0 +1,32 @@
+package com.tempest.moonlight.server.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+
+import java.io.IOException;
+
+/**
+ * Created by Yurii on 2015-08-12.
+ *
+ * Same JSON as of {@link com.tempest.moonlight.server.messages.dto.ChatMessageDTO}
+ */
+public class ChatMessageSerializer extends JsonSerializer<ChatMessage> {
+    @Override
+    public void serialize(ChatMessage value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+        GenericParticipant recipient = value.getRecipient();
+
+        jgen.writeStartObject();
+        jgen.writeStringField("from", value.getFrom());
+        jgen.writeNumberField("recipientType", recipient.getType().getValue());
+        jgen.writeStringField("recipient", recipient.getSignature());
+        jgen.writeNumberField("time", value.getTime());
+        jgen.writeStringField("uuid", value.getUuid());
+        jgen.writeStringField("packetId", value.getPacketId());
+        jgen.writeStringField("subject", value.getSubject());
+        jgen.writeStringField("text", value.getText());
+        jgen.writeEndObject();
+    }
+}
@@ -0,0 +1,30 @@
+package com.tempest.moonlight.server.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.tempest.moonlight.server.domain.contacts.ContactRequest;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+
+import java.io.IOException;
+
+/**
+ * Created by Yurii on 2015-08-12.
+ *
+ * Same JSON as of {@link com.tempest.moonlight.server.contacts.dto.ContactRequestDTO}
+ */
+public class ContactRequestSerializer extends JsonSerializer<ContactRequest> {
+    @Override
+    public void serialize(ContactRequest value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+        GenericParticipant contact = value.getContact();
+
+        jgen.writeStartObject();
+        jgen.writeStringField("initiator", value.getInitiator());
+        jgen.writeStringField("recipient", value.getRecipient());
+        jgen.writeNumberField("type", contact.getType().getValue());
+        jgen.writeStringField("signature", contact.getSignature());
+        jgen.writeNumberField("status", value.getStatus().getValue());
+        jgen.writeNumberField("time", value.getTime());
+        jgen.writeEndObject();
+    }
+}
@@ -0,0 +1,36 @@
+package com.tempest.moonlight.server.serialization;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.Serializers;
+import com.tempest.moonlight.server.annotations.DirectSerializer;
+import org.springframework.beans.BeanUtils;
+
+/**
+ * Created by Yurii on 2015-08-12.
+ *
+ * Serializes classes annotated with {@link DirectSerializer} with their serializers.
+ * ObjectMapper caches found serializers, so annotation is read once per class
+ */
+public class DirectSerializersModule extends SimpleModule {
+    private static final long serialVersionUID = 1L;
+
+    public DirectSerializersModule() {
+        super(DirectSerializersModule.class.getSimpleName());
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        context.addSerializers(new Serializers.Base() {
+            @Override
+            public JsonSerializer<?> findSerializer(SerializationConfig config, JavaType type, BeanDescription beanDesc) {
+                DirectSerializer directSerializer = type.getRawClass().getAnnotation(DirectSerializer.class);
+                return directSerializer == null ? null : BeanUtils.instantiateClass(directSerializer.value());
+            }
+        });
+    }
+}
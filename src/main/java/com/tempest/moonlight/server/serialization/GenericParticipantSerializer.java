@@ -0,0 +1,23 @@
+package com.tempest.moonlight.server.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+
+import java.io.IOException;
+
+/**
+ * Created by Yurii on 2015-08-12.
+ *
+ * Same JSON as of {@link com.tempest.moonlight.server.contacts.dto.GenericParticipantDTO}
+ */
+public class GenericParticipantSerializer extends JsonSerializer<GenericParticipant> {
+    @Override
+    public void serialize(GenericParticipant value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+        jgen.writeStartObject();
+        jgen.writeNumberField("type", value.getType().getValue());
+        jgen.writeStringField("signature", value.getSignature());
+        jgen.writeEndObject();
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
 import java.util.Collection;
 
 /**
@@ -26,8 +27,8 @@ public class UsersController {
 
     @MessageMapping("users/match")
     @SendToUser("/queue/users/match")
-    public Collection<GenericParticipantDTO> onGetMatchingParticipants(@Payload GenericParticipantDTO participantDTO) {
-        Collection<GenericParticipant> matching = userService.getMatching(participantDTO.getSignature());
+    public Collection<GenericParticipantDTO> onGetMatchingParticipants(Principal principal, @Payload GenericParticipantDTO participantDTO) {
+        Collection<GenericParticipant> matching = userService.getMatching(principal.getName(), participantDTO.getSignature());
         return (Collection<GenericParticipantDTO>) dtoConverter.convertToDTOs(matching);
     }
 }
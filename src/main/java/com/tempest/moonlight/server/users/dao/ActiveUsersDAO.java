@@ -16,4 +16,26 @@ public interface ActiveUsersDAO extends IdentifiedEntityDAO<UserSession, UserSes
     Map<String, Boolean> areUsersActive(Collection<String> logins);
 
     boolean containsSessionsOfUser(String login);
+
+    /**
+     * @return true if user has a session that requested its offline messages, so it receives incoming messages
+     */
+    boolean hasReceivingSessions(String login);
+
+    /**
+     * Marks live session as receiving incoming messages
+     * @return false if there is no such session
+     */
+    boolean markReceiving(String sessionId);
+
+    /**
+     * Saves session and registers it for its user atomically with respect to other sessions of the same user
+     * @return true if this is the first live session of user
+     */
+    boolean addSession(UserSession session);
+
+    /**
+     * @return true if removed session was the last live session of its user, false elsewhere or if there was no such session
+     */
+    boolean removeSession(String sessionId);
 }
@@ -2,11 +2,15 @@ package com.tempest.moonlight.server.users.dao;
 
 import com.tempest.moonlight.server.event.UserSession;
 import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
-import com.tempest.moonlight.server.util.CollectionsUtils;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -15,6 +19,19 @@ import java.util.stream.Collectors;
  */
 @Repository
 public class ActiveUsersDAOImpl extends AbstractMockDAO<UserSession, UserSession> implements ActiveUsersDAO {
+
+    /**
+     * IDs of live sessions by login. Set of a login is only modified while its entry is locked
+     * and is removed together with the last session, so presence check is a single lookup
+     */
+    private final ConcurrentMap<String, Set<String>> sessionsByLogin = new ConcurrentHashMap<>();
+
+    /**
+     * IDs of live sessions that receive incoming messages by login, subset of {@link #sessionsByLogin}.
+     * Modified only while the entry of login in {@link #sessionsByLogin} is locked
+     */
+    private final ConcurrentMap<String, Set<String>> receivingSessionsByLogin = new ConcurrentHashMap<>();
+
 //    @Override
 //    public Collection<UserSession> getActiveSessions() {
 //        return getMap().values();
@@ -28,7 +45,7 @@ public class ActiveUsersDAOImpl extends AbstractMockDAO<UserSession, UserSession
 
     @Override
     public Map<String, Boolean> areUsersActive(Collection<String> logins) {
-        return logins.stream().collect(
+        return logins.stream().distinct().collect(
                 Collectors.toMap(
                         Function.identity(),
                         this::containsSessionsOfUser
@@ -38,9 +55,90 @@ public class ActiveUsersDAOImpl extends AbstractMockDAO<UserSession, UserSession
 
     @Override
     public boolean containsSessionsOfUser(String login) {
-        return CollectionsUtils.mapKeysContain(
-                getMap(),
-                entry -> entry.getKey().getLogin().equals(login)
-        );
+        return sessionsByLogin.containsKey(login);
+    }
+
+    @Override
+    public boolean hasReceivingSessions(String login) {
+        return receivingSessionsByLogin.containsKey(login);
+    }
+
+    @Override
+    public boolean markReceiving(String sessionId) {
+        UserSession session = get(new UserSession(sessionId));
+        if (session == null) {
+            return false;
+        }
+
+        AtomicBoolean marked = new AtomicBoolean();
+        sessionsByLogin.computeIfPresent(session.getLogin(), (login, sessions) -> {
+            if (sessions.contains(sessionId)) {
+                receivingSessionsByLogin.computeIfAbsent(login, l -> new HashSet<>()).add(sessionId);
+                marked.set(true);
+            }
+            return sessions;
+        });
+        return marked.get();
+    }
+
+    @Override
+    public void save(UserSession key, UserSession session) {
+        addSession(session);
+    }
+
+    @Override
+    public boolean deleteWithKey(UserSession key) {
+        return removeSession(key.getSessionId(), new AtomicBoolean());
+    }
+
+    @Override
+    public boolean addSession(UserSession session) {
+        AtomicBoolean first = new AtomicBoolean();
+        sessionsByLogin.compute(session.getLogin(), (login, sessions) -> {
+            if (sessions == null) {
+                sessions = new HashSet<>();
+                first.set(true);
+            }
+            sessions.add(session.getSessionId());
+            super.save(session, session);
+            return sessions;
+        });
+        return first.get();
+    }
+
+    @Override
+    public boolean removeSession(String sessionId) {
+        AtomicBoolean last = new AtomicBoolean();
+        removeSession(sessionId, last);
+        return last.get();
+    }
+
+    /**
+     * @param last set to true if removed session was the last one of its user
+     * @return true if session existed
+     */
+    private boolean removeSession(String sessionId, AtomicBoolean last) {
+        UserSession session = get(new UserSession(sessionId));
+        if (session == null) {
+            return false;
+        }
+
+        AtomicBoolean deleted = new AtomicBoolean();
+        sessionsByLogin.computeIfPresent(session.getLogin(), (login, sessions) -> {
+            if (super.deleteWithKey(session)) {
+                deleted.set(true);
+                sessions.remove(sessionId);
+                receivingSessionsByLogin.computeIfPresent(login, (l, receiving) -> {
+                    receiving.remove(sessionId);
+                    return receiving.isEmpty() ? null : receiving;
+                });
+                if (sessions.isEmpty()) {
+                    last.set(true);
+                    return null;
+                }
+            }
+            return sessions;
+        });
+        return deleted.get();
     }
 }
@@ -0,0 +1,131 @@
+package com.tempest.moonlight.server.users.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Created by Yurii on 2015-08-20.
+ *
+ * Case insensitive search of logins by substring.
+ * Prefixes are looked up in sorted set of lower cased logins, substrings in trigram index:
+ * every 3 characters long substring of login maps to the set of logins containing it.
+ * Query of at least {@link #GRAM} characters is checked against logins of its rarest trigram only.
+ * Shorter query matches prefixes of logins only: as a substring it would match too many logins
+ * to index them or to scan them on every key stroke
+ */
+class LoginSearchIndex {
+
+    static final int GRAM = 3;
+
+    /**
+     * Separates lower cased login from original one, sorts before any character of login
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    private final NavigableSet<String> sorted = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentMap<String, Set<String>> loginsByGram = new ConcurrentHashMap<>();
+
+    void add(String login) {
+        String lowerCased = toLowerCase(login);
+        sorted.add(lowerCased + SEPARATOR + login);
+        for (String gram : grams(lowerCased)) {
+            loginsByGram.compute(gram, (g, logins) -> {
+                if (logins == null) {
+                    logins = ConcurrentHashMap.newKeySet();
+                }
+                logins.add(login);
+                return logins;
+            });
+        }
+    }
+
+    void remove(String login) {
+        String lowerCased = toLowerCase(login);
+        sorted.remove(lowerCased + SEPARATOR + login);
+        for (String gram : grams(lowerCased)) {
+            loginsByGram.computeIfPresent(gram, (g, logins) -> {
+                logins.remove(login);
+                return logins.isEmpty() ? null : logins;
+            });
+        }
+    }
+
+    List<String> find(String str, int limit) {
+        return find(str, limit, Collections.emptySet());
+    }
+
+    /**
+     * @param excluded logins that are skipped, so they do not count towards limit
+     * @return up to limit logins containing str: exact match first, then ones starting with str in alphabetical order,
+     * then the rest of matching ones. If str is shorter than {@link #GRAM}, only logins starting with it are matched
+     */
+    List<String> find(String str, int limit, Set<String> excluded) {
+        if (str == null || str.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String query = toLowerCase(str);
+        Set<String> found = new LinkedHashSet<>();
+
+        for (String entry : sorted.subSet(query + SEPARATOR, true, query + Character.MAX_VALUE, true)) {
+            if (found.size() >= limit) {
+                return new ArrayList<>(found);
+            }
+            String login = getLogin(entry);
+            if (!excluded.contains(login)) {
+                found.add(login);
+            }
+        }
+
+        if (query.length() >= GRAM) {
+            for (String login : getRarestGramLogins(query)) {
+                if (found.size() >= limit) {
+                    break;
+                }
+                if (!excluded.contains(login) && toLowerCase(login).contains(query)) {
+                    found.add(login);
+                }
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private Set<String> getRarestGramLogins(String query) {
+        Set<String> rarest = null;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            Set<String> logins = loginsByGram.get(query.substring(i, i + GRAM));
+            if (logins == null) {
+                return Collections.emptySet();
+            }
+            if (rarest == null || logins.size() < rarest.size()) {
+                rarest = logins;
+            }
+        }
+        return rarest;
+    }
+
+    private static String getLogin(String entry) {
+        return entry.substring(entry.indexOf(SEPARATOR) + 1);
+    }
+
+    private static Collection<String> grams(String lowerCased) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= lowerCased.length(); i++) {
+            grams.add(lowerCased.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static String toLowerCase(String str) {
+        return str.toLowerCase(Locale.ROOT);
+    }
+}
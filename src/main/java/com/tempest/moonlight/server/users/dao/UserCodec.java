@@ -0,0 +1,37 @@
+package com.tempest.moonlight.server.users.dao;
+
+import com.tempest.moonlight.server.common.dao.journal.EntityCodec;
+import com.tempest.moonlight.server.domain.User;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.readString;
+import static com.tempest.moonlight.server.common.dao.journal.Codecs.writeString;
+
+/**
+ * Created by Yurii on 2015-08-07.
+ */
+public class UserCodec implements EntityCodec<User, String> {
+    @Override
+    public void writeKey(DataOutput out, String login) throws IOException {
+        writeString(out, login);
+    }
+
+    @Override
+    public String readKey(DataInput in) throws IOException {
+        return readString(in);
+    }
+
+    @Override
+    public void writeEntity(DataOutput out, User user) throws IOException {
+        writeString(out, user.getLogin());
+        writeString(out, user.getPassword());
+    }
+
+    @Override
+    public User readEntity(DataInput in, String login) throws IOException {
+        return new User(readString(in), readString(in));
+    }
+}
@@ -4,10 +4,23 @@ import com.tempest.moonlight.server.domain.User;
 import com.tempest.moonlight.server.common.dao.DAO;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Yurii on 2015-05-08.
  */
 public interface UserDAO extends DAO<User, String> {
     Collection<User> getLoginContains(String str);
+
+    /**
+     * Case insensitive, the best matches first: equal login, then logins starting with str, then the rest.
+     * str shorter than 3 characters matches beginnings of logins only
+     */
+    List<User> getLoginContains(String str, int limit);
+
+    /**
+     * The same as {@link #getLoginContains(String, int)}, but users with excluded logins are skipped before limit is applied
+     */
+    List<User> getLoginContains(String str, int limit, Set<String> excluded);
 }
@@ -1,23 +1,60 @@
 package com.tempest.moonlight.server.users.dao;
 
+import com.tempest.moonlight.server.annotations.Journaled;
 import com.tempest.moonlight.server.domain.User;
 import com.tempest.moonlight.server.common.dao.AbstractMockDAO;
-import com.tempest.moonlight.server.util.CollectionsUtils;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Yurii on 2015-05-07.
  */
 @Repository
+@Journaled(value = "users", codec = UserCodec.class)
 public class UserDAOMockImpl extends AbstractMockDAO<User, String> implements UserDAO {
+
+    /**
+     * Maintained under the entry lock of main map
+     */
+    private final LoginSearchIndex loginSearchIndex = new LoginSearchIndex();
+
     @Override
     public Collection<User> getLoginContains(String str) {
-        String strLC = str.toLowerCase();
-        return CollectionsUtils.filterMapValuesByKey(
-                getMap(),
-                key -> key.toLowerCase().contains(strLC)
-        );
+        return getLoginContains(str, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<User> getLoginContains(String str, int limit) {
+        return getLoginContains(str, limit, Collections.emptySet());
+    }
+
+    @Override
+    public List<User> getLoginContains(String str, int limit, Set<String> excluded) {
+        List<String> logins = loginSearchIndex.find(str, limit, excluded);
+        List<User> users = new ArrayList<>(logins.size());
+        for (String login : logins) {
+            User user = get(login);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    @Override
+    protected void onSaved(String key, User previous, User entity) {
+        if (previous == null) {
+            loginSearchIndex.add(key);
+        }
+    }
+
+    @Override
+    protected void onDeleted(String key, User entity) {
+        loginSearchIndex.remove(key);
     }
 }
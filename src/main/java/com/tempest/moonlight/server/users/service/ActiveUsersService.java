@@ -20,6 +20,17 @@ public interface ActiveUsersService {
 
     boolean sessionExists(String sessionId);
 
+    /**
+     * Marks session as receiving incoming messages, so messages to its user are no longer kept in offline inbox
+     * @return false if there is no such session
+     */
+    boolean markSessionReceiving(String sessionId);
+
+    /**
+     * @return true if user has a session receiving incoming messages
+     */
+    boolean isReceiving(String login);
+
     /**
      *
      * @param sessionId ID of WebSocket session
@@ -20,9 +20,7 @@ public class ActiveUsersServiceImpl implements ActiveUsersService {
 
     @Override
     public boolean addUserSession(UserSession userSession) {
-        boolean containsSessionsOfUser = activeUsersDAO.containsSessionsOfUser(userSession.getLogin());
-        activeUsersDAO.save(userSession);
-        return !containsSessionsOfUser;
+        return activeUsersDAO.addSession(userSession);
     }
 
     @Override
@@ -57,9 +55,18 @@ public class ActiveUsersServiceImpl implements ActiveUsersService {
         return activeUsersDAO.exists(new UserSession(sessionId));
     }
 
+    @Override
+    public boolean markSessionReceiving(String sessionId) {
+        return activeUsersDAO.markReceiving(sessionId);
+    }
+
+    @Override
+    public boolean isReceiving(String login) {
+        return activeUsersDAO.hasReceivingSessions(login);
+    }
+
     @Override
     public boolean deleteUserSession(String sessionId, String login) {
-        activeUsersDAO.deleteWithKey(new UserSession(sessionId, login));
-        return !activeUsersDAO.containsSessionsOfUser(login);
+        return activeUsersDAO.removeSession(sessionId);
     }
 }
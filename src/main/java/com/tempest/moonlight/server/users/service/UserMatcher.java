@@ -3,10 +3,15 @@ package com.tempest.moonlight.server.users.service;
 import com.tempest.moonlight.server.domain.User;
 
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * Created by Yurii on 2015-06-21.
  */
 public interface UserMatcher {
-    Collection<User> getMatching(String login);
+    /**
+     * @param excluded logins that are not returned and do not count towards the limit
+     * @return limited number of users whose logins contain login, the best matches first
+     */
+    Collection<User> getMatching(String login, Set<String> excluded);
 }
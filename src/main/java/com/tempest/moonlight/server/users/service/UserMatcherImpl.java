@@ -3,9 +3,11 @@ package com.tempest.moonlight.server.users.service;
 import com.tempest.moonlight.server.domain.User;
 import com.tempest.moonlight.server.users.dao.UserDAO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * Created by Yurii on 2015-06-21.
@@ -16,8 +18,11 @@ public class UserMatcherImpl implements UserMatcher {
     @Autowired
     private UserDAO userDAO;
 
+    @Value("${chat.users.search.limit:20}")
+    private int limit;
+
     @Override
-    public Collection<User> getMatching(String login) {
-        return userDAO.getLoginContains(login);
+    public Collection<User> getMatching(String login, Set<String> excluded) {
+        return userDAO.getLoginContains(login, limit, excluded);
     }
 }
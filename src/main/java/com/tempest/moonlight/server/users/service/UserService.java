@@ -14,5 +14,8 @@ public interface UserService extends UserDetailsService {
     boolean checkUserExists(String login);
     boolean checkUserPassword(String login, String password);
     User registerUser(String login, String password) throws UserAlreadyExistsException;
-    Collection<GenericParticipant> getMatching(String login);
+    /**
+     * @return users whose logins contain query, except user and contacts of user
+     */
+    Collection<GenericParticipant> getMatching(String user, String query);
 }
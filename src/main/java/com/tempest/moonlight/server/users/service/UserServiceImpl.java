@@ -18,6 +18,7 @@ import org.springframework.util.StringUtils;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -75,15 +76,19 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
-    public Collection<GenericParticipant> getMatching(String login) {
-        Collection<User> matching = userMatcher.getMatching(login);
-        matching.remove(new User(login));
-        Set<GenericParticipant> matchingParticipants = CollectionsUtils.convertToSet(
-                matching,
-                user -> new GenericParticipant(ParticipantType.USER, user.getLogin())
+    public Collection<GenericParticipant> getMatching(String user, String query) {
+        // excluded before the limit is applied, so the limit is filled with other users
+        Set<String> excluded = new HashSet<>();
+        excluded.add(user);
+        for (GenericParticipant contact : ContactsService.asGenericParticipants(contactsService.getContactsOfUser(user))) {
+            if(contact.getType() == ParticipantType.USER) {
+                excluded.add(contact.getSignature());
+            }
+        }
+        return CollectionsUtils.convertToList(
+                userMatcher.getMatching(query, excluded),
+                matching -> new GenericParticipant(ParticipantType.USER, matching.getLogin())
         );
-        matchingParticipants.removeAll(ContactsService.asGenericParticipants(contactsService.getContactsOfUser(login)));
-        return matchingParticipants;
     }
 
     private static String encodePassword(String password) {
@@ -0,0 +1,58 @@
+package com.tempest.moonlight.server.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Supplier;
+
+/**
+ * Created by Yurii on 2015-08-11.
+ *
+ * Suppliers calling public no-args constructors directly. Every supplier is a class generated once
+ * by {@link LambdaMetafactory} (same as for {@code Type::new}), so creating instances needs no reflection
+ */
+public class ConstructorFactories {
+
+    private static final MethodType SUPPLIER_FACTORY_TYPE = MethodType.methodType(Supplier.class);
+    private static final MethodType SUPPLIER_GET_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType NO_ARGS_CONSTRUCTOR_TYPE = MethodType.methodType(void.class);
+
+    private static final ClassValue<Supplier<?>> FACTORIES = new ClassValue<Supplier<?>>() {
+        @Override
+        protected Supplier<?> computeValue(Class<?> type) {
+            try {
+                return createFactory(type);
+            } catch (Throwable e) {
+                IllegalArgumentException error = new IllegalArgumentException("Can not create factory for " + type.getName(), e);
+                return () -> {
+                    throw error;
+                };
+            }
+        }
+    };
+
+    /**
+     * @return cached factory of instances of type. If type has no public no-args constructor,
+     * every call of returned supplier throws {@link IllegalArgumentException}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Supplier<T> of(Class<T> type) {
+        return (Supplier<T>) FACTORIES.get(type);
+    }
+
+    private static Supplier<?> createFactory(Class<?> type) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle constructor = lookup.findConstructor(type, NO_ARGS_CONSTRUCTOR_TYPE);
+        CallSite callSite = LambdaMetafactory.metafactory(
+                lookup,
+                "get",
+                SUPPLIER_FACTORY_TYPE,
+                SUPPLIER_GET_TYPE,
+                constructor,
+                MethodType.methodType(type)
+        );
+        return (Supplier<?>) callSite.getTarget().invokeExact();
+    }
+}
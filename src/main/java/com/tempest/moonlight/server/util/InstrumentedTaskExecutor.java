@@ -0,0 +1,151 @@
+package com.tempest.moonlight.server.util;
+
+import org.apache.log4j.Logger;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by Yurii on 2015-08-23.
+ *
+ * Thread pool task executor which counts submitted and rejected tasks and measures how long tasks wait for a thread.
+ * Optionally runs every task on its own virtual thread instead of the pool, if the JVM has them
+ * (looked up reflectively, on older JVMs the pool is used)
+ */
+public class InstrumentedTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = Logger.getLogger(InstrumentedTaskExecutor.class.getName());
+
+    private final boolean virtualThreads;
+
+    private ExecutorService virtualThreadExecutor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitTotalNanos = new LongAdder();
+    private final AtomicLong waitMaxNanos = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+
+    public InstrumentedTaskExecutor(String name, boolean virtualThreads, boolean callerRunsWhenFull) {
+        this.virtualThreads = virtualThreads;
+        setThreadNamePrefix(name + "-");
+        RejectedExecutionHandler handler = callerRunsWhenFull
+                ? new ThreadPoolExecutor.CallerRunsPolicy()
+                : new ThreadPoolExecutor.AbortPolicy();
+        setRejectedExecutionHandler((task, executor) -> {
+            rejected.increment();
+            handler.rejectedExecution(task, executor);
+        });
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+        ExecutorService pool = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+        if (virtualThreads) {
+            virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+        }
+        return pool;
+    }
+
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info(getThreadNamePrefix() + " tasks run on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not available in this JVM, " + getThreadNamePrefix() + " tasks run on the pool");
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submitted.increment();
+        long submittedAt = System.nanoTime();
+        dispatch(task, () -> {
+            recordWait(submittedAt);
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Hands measured wrapper of task to a thread, subclasses may choose the thread by the original task
+     */
+    protected void dispatch(Runnable task, Runnable measured) {
+        if (virtualThreadExecutor == null) {
+            super.execute(measured);
+            return;
+        }
+        try {
+            virtualThreadExecutor.execute(measured);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new TaskRejectedException("Executor [" + virtualThreadExecutor + "] did not accept task: " + task, e);
+        }
+    }
+
+    private void recordWait(long submittedAt) {
+        long waitNanos = System.nanoTime() - submittedAt;
+        waitTotalNanos.add(waitNanos);
+        waitMaxNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+    }
+
+    public boolean isOnVirtualThreads() {
+        return virtualThreadExecutor != null;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return count of tasks waiting for a pool thread, always 0 on virtual threads
+     */
+    public int getQueueDepth() {
+        return virtualThreadExecutor != null ? 0 : getThreadPoolExecutor().getQueue().size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return count of tasks which did not fit into the queue, including ones run by caller instead
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getWaitTotalNanos() {
+        return waitTotalNanos.sum();
+    }
+
+    public long getWaitMaxNanos() {
+        return waitMaxNanos.get();
+    }
+}
@@ -0,0 +1,231 @@
+package com.tempest.moonlight.server.util;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by Yurii on 2015-08-10.
+ *
+ * Fixed set of single-threaded lanes with bounded queues.
+ * Tasks with the same stripe key always run on the same lane, so they are executed in submission order.
+ * When queue of a lane is full, submitter blocks until there is room (backpressure instead of unbounded growth),
+ * or, if lanes overflow, the task is kept in unbounded overflow queue of the lane and submitter never waits.
+ * Overflow is moved to the lane queue in order, by the submitter right after it adds a task to overflow
+ * and by the lane thread after each task
+ */
+public class StripedExecutor {
+
+    private final ThreadPoolExecutor[] lanes;
+
+    /**
+     * Overflow queues of lanes, null if submitters wait for room. Queue is also the lock guarding submissions
+     * to its lane while it is not empty, so overflowed tasks are not overtaken
+     */
+    private final Queue<Runnable>[] overflows;
+
+    private final LongAdder saturations = new LongAdder();
+
+    public StripedExecutor(String name, int lanesCount, int queueCapacity) {
+        this(name, lanesCount, queueCapacity, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    public StripedExecutor(String name, int lanesCount, int queueCapacity, boolean overflow) {
+        if (lanesCount <= 0) {
+            throw new IllegalArgumentException("lanesCount = " + lanesCount);
+        }
+        lanes = new ThreadPoolExecutor[lanesCount];
+        overflows = overflow ? (Queue<Runnable>[]) new Queue<?>[lanesCount] : null;
+        for (int i = 0; i < lanesCount; i++) {
+            int lane = i;
+            String threadName = name + "-" + i;
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            };
+            if (overflow) {
+                overflows[i] = new ConcurrentLinkedQueue<>();
+                lanes[i] = new ThreadPoolExecutor(
+                        1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity),
+                        threadFactory,
+                        this::addToOverflow
+                ) {
+                    @Override
+                    protected void afterExecute(Runnable task, Throwable failure) {
+                        drainOverflow(lane);
+                    }
+                };
+            } else {
+                lanes[i] = new ThreadPoolExecutor(
+                        1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity),
+                        threadFactory,
+                        this::waitForRoom
+                );
+            }
+        }
+    }
+
+    private void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        saturations.increment();
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room in lane queue", e);
+        }
+    }
+
+    /**
+     * Called with overflow of the lane locked, see {@link #executeOnLane(int, Runnable)}.
+     * Lane thread may have run out of tasks since the lane queue was found full, so the overflow is moved
+     * to the lane queue right away, otherwise nothing would wake the lane up to take it
+     */
+    private void addToOverflow(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        saturations.increment();
+        int lane = indexOf(executor);
+        overflows[lane].add(task);
+        moveOverflow(lane);
+    }
+
+    private int indexOf(ThreadPoolExecutor executor) {
+        for (int i = 0; i < lanes.length; i++) {
+            if (lanes[i] == executor) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a lane of this executor");
+    }
+
+    /**
+     * Runs on the lane thread after each task. Overflow found empty here may get a task right after the check,
+     * but then its submitter moves it to the lane queue itself, see {@link #addToOverflow(Runnable, ThreadPoolExecutor)}
+     */
+    private void drainOverflow(int lane) {
+        Queue<Runnable> overflow = overflows[lane];
+        if (overflow.isEmpty()) {
+            return;
+        }
+        synchronized (overflow) {
+            moveOverflow(lane);
+        }
+    }
+
+    /**
+     * Moves head tasks of overflow to the lane queue while it has room, overflow of the lane has to be locked
+     */
+    private void moveOverflow(int lane) {
+        Queue<Runnable> overflow = overflows[lane];
+        Runnable task;
+        while ((task = overflow.peek()) != null && lanes[lane].getQueue().offer(task)) {
+            overflow.poll();
+        }
+    }
+
+    public int getLanesCount() {
+        return lanes.length;
+    }
+
+    public int laneOf(Object stripeKey) {
+        int hash = stripeKey.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    public void execute(Object stripeKey, Runnable task) {
+        executeOnLane(laneOf(stripeKey), task);
+    }
+
+    public void executeOnLane(int lane, Runnable task) {
+        if (overflows == null) {
+            lanes[lane].execute(task);
+            return;
+        }
+        Queue<Runnable> overflow = overflows[lane];
+        synchronized (overflow) {
+            if (overflow.isEmpty()) {
+                lanes[lane].execute(task);
+            } else {
+                addToOverflow(task, lanes[lane]);
+            }
+        }
+    }
+
+    /**
+     * @return count of tasks waiting in queues of all lanes, including overflow
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth + getOverflowDepth();
+    }
+
+    /**
+     * @return count of tasks waiting in overflow queues of all lanes
+     */
+    public int getOverflowDepth() {
+        int depth = 0;
+        if (overflows != null) {
+            for (Queue<Runnable> overflow : overflows) {
+                depth += overflow.size();
+            }
+        }
+        return depth;
+    }
+
+    public int getActiveCount() {
+        int active = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            active += lane.getActiveCount();
+        }
+        return active;
+    }
+
+    public long getCompletedTaskCount() {
+        long completed = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            completed += lane.getCompletedTaskCount();
+        }
+        return completed;
+    }
+
+    /**
+     * @return how many times submitters found lane queue full and had to wait for room or put task to overflow
+     */
+    public long getSaturationCount() {
+        return saturations.sum();
+    }
+
+    /**
+     * Stops accepting tasks and waits for already submitted ones
+     * @return true if all lanes terminated before timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.tempest.moonlight.server.websockets;
+
+import com.tempest.moonlight.server.util.InstrumentedTaskExecutor;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by Yurii on 2015-08-23.
+ *
+ * Creates executors of message channels (inbound, outbound, broker) from chat.channels.[name].* properties
+ * and publishes their saturation: active threads, queue depth, wait for a thread and rejected tasks.
+ * Full queue either makes the sending thread run the task itself (backpressure) or rejects the message.
+ * Channel ordered by user or session handles messages of one user or session in order, see {@link OrderedChannelExecutor}
+ */
+@Component
+public class ChannelExecutors implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger(ChannelExecutors.class.getName());
+
+    private static final String PREFIX = "chat.channels.";
+
+    @Autowired
+    private Environment environment;
+
+    private final Map<String, InstrumentedTaskExecutor> executors = new ConcurrentHashMap<>();
+
+    /**
+     * @return false if executor of the channel is disabled by chat.channels.[name].enabled
+     */
+    public boolean configure(String name, ChannelRegistration registration) {
+        if (!getProperty(name, "enabled", Boolean.class, true)) {
+            return false;
+        }
+        int threads = getProperty(name, "threads", Integer.class, 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        int maxThreads = Math.max(threads, getProperty(name, "max-threads", Integer.class, 0));
+        int queueCapacity = getProperty(name, "queue-capacity", Integer.class, 10000);
+        int keepAliveSec = getProperty(name, "keep-alive-sec", Integer.class, 60);
+
+        boolean virtualThreads = getProperty(name, "virtual-threads", Boolean.class, false);
+        boolean callerRuns = getProperty(name, "caller-runs", Boolean.class, true);
+        String orderedBy = getProperty(name, "ordered-by", String.class, "none");
+
+        InstrumentedTaskExecutor executor = "none".equalsIgnoreCase(orderedBy)
+                ? new InstrumentedTaskExecutor("channel-" + name, virtualThreads, callerRuns)
+                : new OrderedChannelExecutor("channel-" + name,
+                        OrderedChannelExecutor.OrderedBy.valueOf(orderedBy.toUpperCase(Locale.ROOT)), virtualThreads, callerRuns);
+        registration.taskExecutor(executor)
+                .corePoolSize(threads)
+                .maxPoolSize(maxThreads)
+                .queueCapacity(queueCapacity)
+                .keepAliveSeconds(keepAliveSec);
+        executors.put(name, executor);
+        logger.info("Channel " + name + ": threads = " + threads + ".." + maxThreads + ", queue capacity = " + queueCapacity
+                + ", ordered by = " + orderedBy);
+        return true;
+    }
+
+    private <T> T getProperty(String name, String key, Class<T> type, T defaultValue) {
+        return environment.getProperty(PREFIX + name + "." + key, type, defaultValue);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        executors.forEach((name, executor) -> {
+            String prefix = PREFIX + name + ".";
+            long submitted = executor.getSubmittedCount();
+            metrics.add(new Metric<>(prefix + "virtual-threads", executor.isOnVirtualThreads() ? 1 : 0));
+            metrics.add(new Metric<>(prefix + "pool-size", executor.getPoolSize()));
+            metrics.add(new Metric<>(prefix + "active", executor.getActiveCount()));
+            metrics.add(new Metric<>(prefix + "queue.depth", executor.getQueueDepth()));
+            metrics.add(new Metric<>(prefix + "submitted", submitted));
+            metrics.add(new Metric<>(prefix + "rejected", executor.getRejectedCount()));
+            metrics.add(new Metric<>(prefix + "wait.mean-ms", submitted == 0 ? 0.0 : executor.getWaitTotalNanos() / 1e6 / submitted));
+            metrics.add(new Metric<>(prefix + "wait.max-ms", executor.getWaitMaxNanos() / 1e6));
+        });
+        return metrics;
+    }
+}
@@ -1,71 +1,33 @@
 package com.tempest.moonlight.server.websockets;
 
-import org.apache.log4j.Logger;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.messaging.MessageHeaders;
-import org.springframework.messaging.support.ChannelInterceptorAdapter;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.ImmutableMessageChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Yurii on 2015-05-10.
+ *
+ * Stamps inbound messages with server id, timestamp and sequence, in place.
+ * Being an {@link ImmutableMessageChannelInterceptor} it makes STOMP handler leave headers of messages mutable,
+ * so they are stamped through the message's own accessor and then made immutable, without copying the headers.
+ * Must be the last interceptor of the channel.
+ * Handlers read the stamps by {@link CustomMessageHeadersAccessor#getId(Message)} and others
  */
-public class CustomChannelInterceptor extends ChannelInterceptorAdapter {
+public class CustomChannelInterceptor extends ImmutableMessageChannelInterceptor {
 
-    private static final Logger logger = Logger.getLogger(CustomChannelInterceptor.class.getName());
+    private final AtomicLong sequence = new AtomicLong();
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
-        super.preSend(message, channel);
-
-//        logger.error("\n");
-
-//        CustomMessageHeadersAccessor accessor = CustomMessageHeadersAccessor.wrap(message);
-        MessageHeaders headers = message.getHeaders();
-        Long timestamp = headers.getTimestamp();
-//        logger.error("preSend! => id = " + headers.getId() + ", time = " + timestamp);
-
-//        if(timestamp == null || timestamp == -1 || timestamp == 0 || headers.getId() == null) {
-//            return CustomMessageHeadersAccessor.makeWithIdAndTimestamp(message);
-//        } else {
-//            return message;
-//        }
-        return message;
-    }
-
-    @Override
-    public void postSend(Message<?> message, MessageChannel channel, boolean sent) {
-        super.postSend(message, channel, sent);
-
-        CustomMessageHeadersAccessor accessor = CustomMessageHeadersAccessor.wrap(message);
-//        logger.error("\n");
-//        logger.error("channel = " + channel);
-//        logger.error("payload = " + message.getPayload());
-        Long timestamp = accessor.getTimestamp();
-//        logger.error("postSend! => id = " + accessor.getId() + ", time = " + timestamp);
-        if(timestamp == null || timestamp == -1 || timestamp == 0) {
-            accessor.setImmutable();
-//            logger.error("postSend! After setImmutable() => id = " + accessor.getId() + ", time = " + accessor.getTimestamp());
-        }
-    }
-
-    @Override
-    public Message<?> postReceive(Message<?> message, MessageChannel channel) {
-        super.postReceive(message, channel);
-
-        CustomMessageHeadersAccessor accessor = CustomMessageHeadersAccessor.wrap(message);
-//        logger.error("\n");
-//        logger.error("channel = " + channel);
-//        logger.error("payload = " + message.getPayload());
-
-        Long timestamp = accessor.getTimestamp();
-//        logger.error("postReceive! => id = " + accessor.getId() + ", time = " + timestamp);
-        if(timestamp == null || timestamp == -1 || timestamp == 0) {
-            accessor.setImmutable();
-//            logger.error("postReceive! After setImmutable() => id = " + accessor.getId() + ", time = " + accessor.getTimestamp());
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
+        if (accessor != null && accessor.isMutable()) {
+            CustomMessageHeadersAccessor.HEADER_INITIALIZER.initHeaders(accessor);
+            accessor.setHeader(CustomMessageHeadersAccessor.SEQUENCE_HEADER, sequence.incrementAndGet());
         }
-        return message;
+        // id and timestamp are generated when headers become immutable
+        return super.preSend(message, channel);
     }
 }
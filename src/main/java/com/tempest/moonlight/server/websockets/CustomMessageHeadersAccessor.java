@@ -9,12 +9,18 @@ import org.springframework.util.AlternativeJdkIdGenerator;
 
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Created by Yurii on 2015-05-07.
  */
 public class CustomMessageHeadersAccessor extends SimpMessageHeaderAccessor {
 
+    /**
+     * Monotonic number of inbound message on this server, set by {@link CustomChannelInterceptor}
+     */
+    public static final String SEQUENCE_HEADER = "chatSequence";
+
     public static final IdTimestampMessageHeaderInitializer HEADER_INITIALIZER;
 
     static {
@@ -33,6 +39,26 @@ public class CustomMessageHeadersAccessor extends SimpMessageHeaderAccessor {
         HEADER_INITIALIZER.initHeaders(this);
     }
 
+    /**
+     * Reads stamps of inbound message without wrapping it, message which was not stamped is wrapped to stamp its copy
+     */
+    public static UUID getId(Message<?> message) {
+        UUID id = message.getHeaders().getId();
+        return id != null ? id : setIdAndTimestamp(message).getId();
+    }
+
+    public static long getTimestamp(Message<?> message) {
+        Long timestamp = message.getHeaders().getTimestamp();
+        return timestamp != null ? timestamp : setIdAndTimestamp(message).getTimestamp();
+    }
+
+    /**
+     * @return sequence of inbound message or null if it was not stamped
+     */
+    public static Long getSequence(Message<?> message) {
+        return message.getHeaders().get(SEQUENCE_HEADER, Long.class);
+    }
+
     public static CustomMessageHeadersAccessor wrap(Message<?> message) {
         return new CustomMessageHeadersAccessor(message);
     }
@@ -0,0 +1,92 @@
+package com.tempest.moonlight.server.websockets;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Yurii on 2015-08-16.
+ *
+ * Collects delivery statuses for senders of messages and sends each sender all statuses collected
+ * during flush interval as one frame to /user/queue/messages/delivery/batch.
+ * Later status of the same message replaces the earlier one
+ */
+@Component
+public class DeliveryStatusNotifier {
+
+    private static final Logger logger = Logger.getLogger(DeliveryStatusNotifier.class.getName());
+
+    private static final String DESTINATION = "messages/delivery/batch";
+
+    @Value("${chat.messages.delivery.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Autowired
+    private ToParticipantSender toParticipantSender;
+
+    private final ConcurrentMap<String, Map<MessageKey, MessageDeliveryStatus>> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushExecutor;
+
+    @PostConstruct
+    public void start() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "delivery-status-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flushExecutor.shutdown();
+        flush();
+    }
+
+    /**
+     * Queues statuses to be sent to the senders of their messages
+     */
+    public void notifySenders(Collection<MessageDeliveryStatus> deliveryStatuses) {
+        for (MessageDeliveryStatus deliveryStatus : deliveryStatuses) {
+            pending.compute(deliveryStatus.getFrom(), (sender, statuses) -> {
+                if (statuses == null) {
+                    statuses = new LinkedHashMap<>();
+                }
+                MessageKey key = MessageKey.fromDeliveryStatus(deliveryStatus);
+                statuses.remove(key);
+                statuses.put(key, deliveryStatus);
+                return statuses;
+            });
+        }
+    }
+
+    private void flush() {
+        for (String sender : pending.keySet()) {
+            Map<MessageKey, MessageDeliveryStatus> statuses = pending.remove(sender);
+            if (statuses == null) {
+                continue;
+            }
+            try {
+                toParticipantSender.sendToUserQueue(sender, DESTINATION, new ArrayList<>(statuses.values()));
+            } catch (RuntimeException e) {
+                logger.error("Unable to send delivery statuses to " + sender, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.tempest.moonlight.server.websockets;
+
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.util.StripedExecutor;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Created by Yurii on 2015-08-10.
+ *
+ * Delivers messages to many recipients off the inbound channel threads.
+ * Recipients are split into shards by lane of their signature, every shard is delivered by its lane,
+ * so messages to the same recipient keep their order while shards of one fan-out run in parallel.
+ * Messages to a single recipient go through its lane too, so they never overtake a fan-out queued for it.
+ * Inbound channel threads never wait: when queue of a lane is full, deliveries overflow to unbounded queue of the lane
+ */
+@Component
+public class FanOutExecutor implements PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger(FanOutExecutor.class.getName());
+
+    @Value("${chat.fanout.threads:0}")
+    private int threads;
+
+    @Value("${chat.fanout.queue-capacity:1024}")
+    private int queueCapacity;
+
+    private StripedExecutor executor;
+
+    private final LongAdder fanOuts = new LongAdder();
+    private final LongAdder recipients = new LongAdder();
+    private final LongAdder latencyTotalNanos = new LongAdder();
+    private final AtomicLong latencyMaxNanos = new AtomicLong();
+    private final LongAdder failures = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        int lanes = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new StripedExecutor("fan-out", lanes, queueCapacity, true);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!executor.shutdown(5, TimeUnit.SECONDS)) {
+            logger.warn("Fan-out lanes did not finish pending deliveries in time");
+        }
+    }
+
+    /**
+     * Schedules delivery to every participant and returns immediately
+     */
+    public void fanOut(Collection<GenericParticipant> participants, Consumer<GenericParticipant> delivery) {
+        fanOut(participants, null, delivery);
+    }
+
+    /**
+     * @param except login of participant to skip, may be null
+     */
+    public void fanOut(Collection<GenericParticipant> participants, String except, Consumer<GenericParticipant> delivery) {
+        if (participants.isEmpty()) {
+            return;
+        }
+
+        int lanesCount = executor.getLanesCount();
+        List<List<GenericParticipant>> shards = new ArrayList<>(lanesCount);
+        for (int i = 0; i < lanesCount; i++) {
+            shards.add(null);
+        }
+        int shardsCount = 0;
+        int recipientsCount = 0;
+        for (GenericParticipant participant : participants) {
+            if (except != null && except.equals(participant.getSignature())) {
+                continue;
+            }
+            recipientsCount++;
+            int lane = executor.laneOf(participant.getSignature());
+            List<GenericParticipant> shard = shards.get(lane);
+            if (shard == null) {
+                shard = new ArrayList<>();
+                shards.set(lane, shard);
+                shardsCount++;
+            }
+            shard.add(participant);
+        }
+        if (shardsCount == 0) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        AtomicInteger remainingShards = new AtomicInteger(shardsCount);
+        fanOuts.increment();
+        recipients.add(recipientsCount);
+
+        for (int lane = 0; lane < lanesCount; lane++) {
+            List<GenericParticipant> shard = shards.get(lane);
+            if (shard == null) {
+                continue;
+            }
+            executor.executeOnLane(lane, () -> {
+                for (GenericParticipant participant : shard) {
+                    try {
+                        delivery.accept(participant);
+                    } catch (RuntimeException e) {
+                        failures.increment();
+                        logger.error("Unable to deliver message to " + participant, e);
+                    }
+                }
+                if (remainingShards.decrementAndGet() == 0) {
+                    onCompleted(System.nanoTime() - started);
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedules delivery to single recipient on its lane, after deliveries already scheduled for it
+     */
+    public void send(String login, Runnable delivery) {
+        executor.execute(login, () -> {
+            try {
+                delivery.run();
+            } catch (RuntimeException e) {
+                failures.increment();
+                logger.error("Unable to deliver message to " + login, e);
+            }
+        });
+    }
+
+    private void onCompleted(long latencyNanos) {
+        latencyTotalNanos.add(latencyNanos);
+        latencyMaxNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long count = fanOuts.sum();
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("chat.fanout.lanes", executor.getLanesCount()));
+        metrics.add(new Metric<>("chat.fanout.queue.depth", executor.getQueueDepth()));
+        metrics.add(new Metric<>("chat.fanout.overflow.depth", executor.getOverflowDepth()));
+        metrics.add(new Metric<>("chat.fanout.active", executor.getActiveCount()));
+        metrics.add(new Metric<>("chat.fanout.saturations", executor.getSaturationCount()));
+        metrics.add(new Metric<>("chat.fanout.count", count));
+        metrics.add(new Metric<>("chat.fanout.recipients", recipients.sum()));
+        metrics.add(new Metric<>("chat.fanout.failures", failures.sum()));
+        metrics.add(new Metric<>("chat.fanout.latency.mean-ms", count == 0 ? 0.0 : latencyTotalNanos.sum() / 1e6 / count));
+        metrics.add(new Metric<>("chat.fanout.latency.max-ms", latencyMaxNanos.get() / 1e6));
+        return metrics;
+    }
+}
@@ -0,0 +1,122 @@
+package com.tempest.moonlight.server.websockets;
+
+import com.tempest.moonlight.server.util.InstrumentedTaskExecutor;
+import com.tempest.moonlight.server.util.StripedExecutor;
+import org.apache.log4j.Logger;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.security.Principal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Yurii on 2015-08-23.
+ *
+ * Channel executor handling messages of one user (or one session) on the same lane, in the order they were sent,
+ * while messages of different users are handled in parallel on other lanes. There are as many lanes as core threads.
+ * Full lane makes the sending thread wait for room, running the message on the sender would break the order.
+ * Tasks which are not messages, or messages without user and session, run on the pool
+ */
+public class OrderedChannelExecutor extends InstrumentedTaskExecutor {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = Logger.getLogger(OrderedChannelExecutor.class.getName());
+
+    public enum OrderedBy {
+        /**
+         * All sessions of a user share the lane, messages without user are ordered by session
+         */
+        USER,
+        SESSION
+    }
+
+    private final String name;
+
+    private final OrderedBy orderedBy;
+
+    private int queueCapacity;
+
+    private StripedExecutor lanes;
+
+    public OrderedChannelExecutor(String name, OrderedBy orderedBy, boolean virtualThreads, boolean callerRunsWhenFull) {
+        super(name, virtualThreads, callerRunsWhenFull);
+        this.name = name;
+        this.orderedBy = orderedBy;
+    }
+
+    @Override
+    public void setQueueCapacity(int queueCapacity) {
+        super.setQueueCapacity(queueCapacity);
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Queue capacity is shared by lanes
+     */
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+        int lanesCount = getCorePoolSize();
+        lanes = new StripedExecutor(name, lanesCount, Math.max(1, queueCapacity / lanesCount));
+        return super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+    }
+
+    @Override
+    protected void dispatch(Runnable task, Runnable measured) {
+        Object key = task instanceof MessageHandlingRunnable ? getKey(((MessageHandlingRunnable) task).getMessage()) : null;
+        if (key == null) {
+            super.dispatch(task, measured);
+        } else {
+            lanes.execute(key, measured);
+        }
+    }
+
+    private Object getKey(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        if (orderedBy == OrderedBy.USER) {
+            Principal user = SimpMessageHeaderAccessor.getUser(headers);
+            if (user != null) {
+                return user.getName();
+            }
+        }
+        return SimpMessageHeaderAccessor.getSessionId(headers);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (lanes == null) {
+            return;
+        }
+        try {
+            if (!lanes.shutdown(5, TimeUnit.SECONDS)) {
+                logger.warn("Lanes of " + name + " did not finish pending messages in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return lanes.getLanesCount() + super.getPoolSize();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return lanes.getQueueDepth() + super.getQueueDepth();
+    }
+
+    /**
+     * @return count of tasks which did not fit into the pool queue, plus times a sender waited for room in a full lane
+     */
+    @Override
+    public long getRejectedCount() {
+        return lanes.getSaturationCount() + super.getRejectedCount();
+    }
+}
@@ -0,0 +1,425 @@
+package com.tempest.moonlight.server.websockets;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptorAdapter;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by Yurii on 2015-08-22.
+ *
+ * Bounds the outbound traffic of every WebSocket session.
+ * Intercepts MESSAGE frames on client outbound channel: up to max-in-flight frames of a session are passed
+ * towards its socket, the following ones wait in its send queue until the socket takes the passed ones.
+ * Frames written to the socket are counted by decorator of session, so slow socket keeps its frames queued here.
+ * When the queue exceeds its count or size limit {@link OverflowStrategy} of the frame's destination decides
+ * what is lost, a session whose socket made no progress for send time limit is closed.
+ * Either way only the slow session degrades, memory it may hold is bounded
+ */
+@Component
+public class OutboundPolicy extends ChannelInterceptorAdapter implements WebSocketHandlerDecoratorFactory, PublicMetrics {
+
+    private static final Logger logger = Logger.getLogger(OutboundPolicy.class.getName());
+
+    /**
+     * Marks frames released from send queue, they are already counted as in flight
+     */
+    private static final String RELEASED_HEADER = "chatOutboundReleased";
+
+    private static final String MESSAGE_FRAME_PREFIX = "MESSAGE";
+
+    @Value("${chat.outbound.max-in-flight:16}")
+    private int maxInFlight;
+
+    @Value("${chat.outbound.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${chat.outbound.queue-size-limit:1048576}")
+    private long queueSizeLimit;
+
+    @Value("${chat.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    @Value("${chat.outbound.drop-oldest:/queue/presence,/queue/typing}")
+    private String[] dropOldestDestinations;
+
+    @Value("${chat.outbound.coalesce:/queue/messages/delivery}")
+    private String[] coalesceDestinations;
+
+    private final ConcurrentMap<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+
+    private volatile MessageChannel outboundChannel;
+
+    /**
+     * Executor of the outbound channel, null if the channel sends on the calling thread
+     */
+    private volatile Executor outboundExecutor;
+
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionOutbox outbox = new SessionOutbox(session);
+                outboxes.put(session.getId(), outbox);
+                super.afterConnectionEstablished(new OutboxSessionDecorator(session, outbox));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                SessionOutbox outbox = outboxes.remove(session.getId());
+                if (outbox != null) {
+                    synchronized (outbox) {
+                        outbox.clear();
+                    }
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[])
+                || headers.containsKey(RELEASED_HEADER)) {
+            return message;
+        }
+        SessionOutbox outbox = outboxes.get(SimpMessageHeaderAccessor.getSessionId(headers));
+        if (outbox == null) {
+            return message;
+        }
+        if (outboundChannel != channel) {
+            outboundChannel = channel;
+            outboundExecutor = channel instanceof ExecutorSubscribableChannel ? ((ExecutorSubscribableChannel) channel).getExecutor() : null;
+        }
+        return admit(outbox, (Message<byte[]>) message);
+    }
+
+    /**
+     * @return message if it may go to socket right away, null if it is queued or lost
+     */
+    private Message<byte[]> admit(SessionOutbox outbox, Message<byte[]> message) {
+        boolean disconnect;
+        synchronized (outbox) {
+            if (outbox.closing) {
+                dropped.increment();
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (outbox.inFlight > 0 && now - outbox.progressAt > sendTimeLimitMs) {
+                timedOut.increment();
+                disconnect = true;
+            } else if (outbox.held.isEmpty() && outbox.inFlight < maxInFlight) {
+                if (outbox.inFlight++ == 0) {
+                    outbox.progressAt = now;
+                }
+                passed.increment();
+                return message;
+            } else {
+                disconnect = !enqueue(outbox, message);
+            }
+            if (disconnect) {
+                outbox.clear();
+                outbox.closing = true;
+            }
+        }
+        if (disconnect) {
+            close(outbox.session);
+        }
+        return null;
+    }
+
+    /**
+     * @return false if the queue is over limits and has nothing to drop
+     */
+    private boolean enqueue(SessionOutbox outbox, Message<byte[]> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        OverflowStrategy strategy = getStrategy(destination);
+        if (strategy == OverflowStrategy.COALESCE && coalesce(outbox, message)) {
+            coalesced.increment();
+            return true;
+        }
+        outbox.add(new QueuedFrame(message, strategy));
+        queued.increment();
+        while (outbox.held.size() > queueCapacity || outbox.heldSize > queueSizeLimit) {
+            if (!outbox.dropOldestDroppable()) {
+                logger.warn("Send queue of session " + outbox.session.getId() + " is full, closing it");
+                return false;
+            }
+            dropped.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Merges JSON array payload into the latest queued frame of the same subscription, if it is an array too
+     */
+    private boolean coalesce(SessionOutbox outbox, Message<byte[]> message) {
+        byte[] payload = message.getPayload();
+        if (!isJsonArray(payload)) {
+            return false;
+        }
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        Iterator<QueuedFrame> iterator = outbox.held.descendingIterator();
+        while (iterator.hasNext()) {
+            QueuedFrame frame = iterator.next();
+            if (!Objects.equals(subscriptionId, SimpMessageHeaderAccessor.getSubscriptionId(frame.message.getHeaders()))) {
+                continue;
+            }
+            if (!isJsonArray(frame.message.getPayload())) {
+                return false;
+            }
+            byte[] merged = mergeJsonArrays(frame.message.getPayload(), payload);
+            outbox.heldSize += merged.length - frame.message.getPayload().length;
+            frame.message = MessageBuilder.createMessage(merged, message.getHeaders());
+            return true;
+        }
+        return false;
+    }
+
+    private OverflowStrategy getStrategy(String destination) {
+        if (destination == null) {
+            return OverflowStrategy.DISCONNECT;
+        }
+        for (String prefix : dropOldestDestinations) {
+            if (destination.contains(prefix)) {
+                return OverflowStrategy.DROP_OLDEST;
+            }
+        }
+        for (String prefix : coalesceDestinations) {
+            if (destination.contains(prefix)) {
+                return OverflowStrategy.COALESCE;
+            }
+        }
+        return OverflowStrategy.DISCONNECT;
+    }
+
+    /**
+     * Called once socket took a MESSAGE frame, from inside the flush of the session.
+     * Queued frames are released into the freed in-flight slots by a task on the outbound executor,
+     * sending them right here would re-enter the flush of the same session on this thread
+     */
+    private void onSent(SessionOutbox outbox) {
+        synchronized (outbox) {
+            outbox.inFlight--;
+            outbox.progressAt = System.currentTimeMillis();
+            if (outbox.releasing || outbox.closing || outbox.held.isEmpty()) {
+                return;
+            }
+            outbox.releasing = true;
+        }
+        Runnable release = () -> release(outbox);
+        Executor executor = outboundExecutor;
+        if (executor == null) {
+            release.run();
+            return;
+        }
+        try {
+            executor.execute(release);
+        } catch (RejectedExecutionException e) {
+            release.run();
+        }
+    }
+
+    /**
+     * Sends queued frames while there are free in-flight slots. Only one release of a session runs at a time,
+     * frames sent by it may complete on this very thread (caller-runs executor), then {@link #onSent(SessionOutbox)}
+     * just frees the slot and this loop takes it
+     */
+    private void release(SessionOutbox outbox) {
+        MessageChannel channel = outboundChannel;
+        while (true) {
+            List<Message<byte[]>> released = new ArrayList<>();
+            synchronized (outbox) {
+                while (!outbox.closing && !outbox.held.isEmpty() && outbox.inFlight < maxInFlight) {
+                    released.add(outbox.poll().message);
+                    outbox.inFlight++;
+                }
+                if (released.isEmpty()) {
+                    outbox.releasing = false;
+                    return;
+                }
+            }
+            for (Message<byte[]> message : released) {
+                channel.send(MessageBuilder.fromMessage(message).setHeader(RELEASED_HEADER, Boolean.TRUE).build());
+            }
+        }
+    }
+
+    private void close(WebSocketSession session) {
+        disconnected.increment();
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to close slow session " + session.getId(), e);
+        }
+    }
+
+    private static boolean isJsonArray(byte[] payload) {
+        return payload.length >= 2 && payload[0] == '[' && payload[payload.length - 1] == ']';
+    }
+
+    private static byte[] mergeJsonArrays(byte[] first, byte[] second) {
+        if (first.length == 2) {
+            return second;
+        }
+        if (second.length == 2) {
+            return first;
+        }
+        byte[] merged = new byte[first.length + second.length - 1];
+        System.arraycopy(first, 0, merged, 0, first.length - 1);
+        merged[first.length - 1] = ',';
+        System.arraycopy(second, 1, merged, first.length, second.length - 1);
+        return merged;
+    }
+
+    private static boolean isMessageFrame(WebSocketMessage<?> message) {
+        return message instanceof TextMessage && ((TextMessage) message).getPayload().startsWith(MESSAGE_FRAME_PREFIX);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long queuedNow = 0;
+        for (SessionOutbox outbox : outboxes.values()) {
+            synchronized (outbox) {
+                queuedNow += outbox.held.size();
+            }
+        }
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("chat.outbound.sessions", outboxes.size()));
+        metrics.add(new Metric<>("chat.outbound.queue-depth", queuedNow));
+        metrics.add(new Metric<>("chat.outbound.passed", passed.sum()));
+        metrics.add(new Metric<>("chat.outbound.queued", queued.sum()));
+        metrics.add(new Metric<>("chat.outbound.dropped", dropped.sum()));
+        metrics.add(new Metric<>("chat.outbound.coalesced", coalesced.sum()));
+        metrics.add(new Metric<>("chat.outbound.disconnected", disconnected.sum()));
+        metrics.add(new Metric<>("chat.outbound.timeouts", timedOut.sum()));
+        return metrics;
+    }
+
+    /**
+     * Counts MESSAGE frames actually written to socket, whatever buffers them in front of it.
+     * Writes to the delegate explicitly, sendMessage of {@link WebSocketSessionDecorator} does nothing in this Spring version
+     */
+    private class OutboxSessionDecorator extends WebSocketSessionDecorator {
+
+        private final SessionOutbox outbox;
+
+        private OutboxSessionDecorator(WebSocketSession session, SessionOutbox outbox) {
+            super(session);
+            this.outbox = outbox;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (!isMessageFrame(message)) {
+                getDelegate().sendMessage(message);
+                return;
+            }
+            try {
+                getDelegate().sendMessage(message);
+            } finally {
+                onSent(outbox);
+            }
+        }
+    }
+
+    /**
+     * State of one session, guarded by its monitor
+     */
+    private static class SessionOutbox {
+        private final WebSocketSession session;
+        private final ArrayDeque<QueuedFrame> held = new ArrayDeque<>();
+        private long heldSize;
+        private int inFlight;
+        private long progressAt;
+        private boolean closing;
+        /**
+         * Release of queued frames is scheduled or running
+         */
+        private boolean releasing;
+
+        private SessionOutbox(WebSocketSession session) {
+            this.session = session;
+        }
+
+        private void add(QueuedFrame frame) {
+            held.addLast(frame);
+            heldSize += frame.message.getPayload().length;
+        }
+
+        private QueuedFrame poll() {
+            QueuedFrame frame = held.pollFirst();
+            heldSize -= frame.message.getPayload().length;
+            return frame;
+        }
+
+        private boolean dropOldestDroppable() {
+            Iterator<QueuedFrame> iterator = held.iterator();
+            while (iterator.hasNext()) {
+                QueuedFrame frame = iterator.next();
+                if (frame.strategy != OverflowStrategy.DISCONNECT) {
+                    iterator.remove();
+                    heldSize -= frame.message.getPayload().length;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void clear() {
+            held.clear();
+            heldSize = 0;
+        }
+    }
+
+    private static class QueuedFrame {
+        private Message<byte[]> message;
+        private final OverflowStrategy strategy;
+
+        private QueuedFrame(Message<byte[]> message, OverflowStrategy strategy) {
+            this.message = message;
+            this.strategy = strategy;
+        }
+    }
+}
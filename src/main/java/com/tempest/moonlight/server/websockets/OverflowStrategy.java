@@ -0,0 +1,22 @@
+package com.tempest.moonlight.server.websockets;
+
+/**
+ * Created by Yurii on 2015-08-22.
+ *
+ * What {@link OutboundPolicy} does with frames of a session whose send queue is full
+ */
+public enum OverflowStrategy {
+    /**
+     * Oldest queued frame of this kind is dropped, for frames superseded by later ones (presence, typing)
+     */
+    DROP_OLDEST,
+    /**
+     * Frame is merged into the queued one of the same subscription if both are JSON arrays (receipts),
+     * otherwise the oldest one is dropped as with {@link #DROP_OLDEST}
+     */
+    COALESCE,
+    /**
+     * Frame can not be lost (chat messages), so the session is closed and the client resynchronizes on reconnect
+     */
+    DISCONNECT
+}
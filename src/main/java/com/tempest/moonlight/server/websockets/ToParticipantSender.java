@@ -1,15 +1,22 @@
 package com.tempest.moonlight.server.websockets;
 
 import com.tempest.moonlight.server.common.dto.ToMessageConvertedEntity;
+import com.tempest.moonlight.server.common.logging.HotPathLogger;
 import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.function.BiConsumer;
 
 /**
  * Created by Yurii on 2015-06-17.
@@ -19,27 +26,114 @@ public class ToParticipantSender {
 
     private static final Logger logger = Logger.getLogger(ToParticipantSender.class.getName());
 
+    private static final HotPathLogger outboundLogger = HotPathLogger.getLogger(ToParticipantSender.class, "outbound");
+
     @Autowired
     private SimpMessagingTemplate simpMessagingTemplate;
 
+    @Autowired
+    private FanOutExecutor fanOutExecutor;
+
+    /**
+     * Serializes message on the calling thread and sends it asynchronously on lane of the user,
+     * so it keeps order with messages sent to the user by {@link #sendToUsersQueue(Collection, String, Object)}
+     */
     public void sendToUserQueue(String login, String destination, Object message) {
-        logger.error("sendToUserQueue(" + "login = [" + login + "], destination = [" + destination + "], message = [" + message + "]" + ")");
-        simpMessagingTemplate.convertAndSend("/user/" + login + "/queue/" + destination, message);
+        outboundLogger.info("sendToUserQueue login={} destination={} type={}", login, destination, typeOf(message));
+        send(login, destination, toMessage(message, SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE)));
     }
 
     public void sendToUserQueue(String login, String destination, ToMessageConvertedEntity toMessageConvertedEntity) {
-        simpMessagingTemplate.convertAndSend("/user/" + login + "/queue/" + destination, toMessageConvertedEntity.getPayload(), toMessageConvertedEntity.getHeaders());
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        Map<String, Object> headers = toMessageConvertedEntity.getHeaders();
+        if (headers != null) {
+            headers.forEach((name, value) -> headerAccessor.setNativeHeader(name, value != null ? value.toString() : null));
+        }
+        send(login, destination, toMessage(toMessageConvertedEntity.getPayload(), headerAccessor));
+    }
+
+    /**
+     * Sends message to queue of the single session of user, other sessions of user do not get it
+     */
+    public void sendToSessionQueue(String login, String sessionId, String destination, Object message) {
+        outboundLogger.info("sendToSessionQueue login={} session={} destination={}", login, sessionId, destination);
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionId);
+        send(login, destination, toMessage(message, headerAccessor));
     }
 
     public void sendToUserQueue(GenericParticipant participant, String destination, Object message) {
         sendToUserQueue(participant.getSignature(), destination, message);
     }
 
+    /**
+     * Serializes message once on the calling thread and sends the same payload to queue of every participant
+     * asynchronously, see {@link FanOutExecutor}
+     */
     public void sendToUsersQueue(Collection<GenericParticipant> participants, String destination, Object message) {
-        participants.forEach(participant -> sendToUserQueue(participant, destination, message));
+        sendToUsersQueue(participants, null, destination, message);
+    }
+
+    /**
+     * The same as {@link #sendToUsersQueue(Collection, String, Object)}, but skips participant with login except,
+     * so shared collections (e.g. {@link com.tempest.moonlight.server.groups.service.GroupMembership}) need no copy
+     */
+    public void sendToUsersQueue(Collection<GenericParticipant> participants, String except, String destination, Object message) {
+        if (participants.isEmpty()) {
+            return;
+        }
+        outboundLogger.info("sendToUsersQueue participants={} destination={} type={}", participants.size(), destination, typeOf(message));
+
+        Message<?> sharedMessage = toMessage(message, SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE));
+        fanOutExecutor.fanOut(
+                participants,
+                except,
+                participant -> simpMessagingTemplate.send(getUserQueue(participant.getSignature(), destination), sharedMessage)
+        );
     }
 
+    /**
+     * Participants that are mapped to the same message instance share single serialized payload
+     */
     public void sendToUsersQueue(Map<GenericParticipant, ?> participantMessageMap, String destination) {
-        participantMessageMap.forEach((participant, message) -> sendToUserQueue(participant, destination, message));
+        Map<Object, Collection<GenericParticipant>> participantsByMessage = new IdentityHashMap<>();
+        participantMessageMap.forEach(
+                (participant, message) -> participantsByMessage.computeIfAbsent(message, m -> new ArrayList<>()).add(participant)
+        );
+        participantsByMessage.forEach((message, participants) -> sendToUsersQueue(participants, destination, message));
+    }
+
+    private void send(String login, String destination, Message<?> message) {
+        fanOutExecutor.send(login, () -> simpMessagingTemplate.send(getUserQueue(login, destination), message));
+    }
+
+    /**
+     * Converts payload the same way convertAndSend does. Headers of the returned message are made immutable,
+     * so messaging template copies them on every send and sets destination of the copy only,
+     * and lanes sending the message concurrently never change it
+     */
+    private Message<?> toMessage(Object payload, SimpMessageHeaderAccessor headerAccessor) {
+        headerAccessor.setImmutable();
+        Message<?> message = simpMessagingTemplate.getMessageConverter().toMessage(payload, headerAccessor.getMessageHeaders());
+        if (message == null) {
+            throw new MessageConversionException("Unable to convert payload of type " + payload.getClass().getName());
+        }
+        // converter may return headers it left mutable
+        MessageHeaderAccessor messageAccessor = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
+        if (messageAccessor != null && messageAccessor.isMutable()) {
+            messageAccessor.setImmutable();
+        }
+        return message;
+    }
+
+    private static String getUserQueue(String login, String destination) {
+        return "/user/" + login + "/queue/" + destination;
+    }
+
+    /**
+     * Messages may change after they are sent, so hot path log gets only their type
+     */
+    private static String typeOf(Object message) {
+        return message == null ? null : message.getClass().getSimpleName();
     }
 }
@@ -17,7 +17,8 @@ var appConst = (function () {
                     ARRIVED: 0,
                     DELIVERED: 1,
                     READ: 2
-                }
+                },
+                DELIVERY_FLUSH_MS: 50
             }
         },
         CONTACTS: {
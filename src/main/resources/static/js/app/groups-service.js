@@ -11,6 +11,32 @@ servicesModule.factory('GroupsService', ['AppEvents', 'ChatSocket', function(app
         console.log(group);
     };
 
+    var sameParticipant = function(first, second) {
+        return first.type == second.type && first.signature == second.signature;
+    };
+
+    /**
+     * Delta continues only participants list of its previousVersion, the whole list is requested after a gap
+     */
+    var applyGroupDelta = function(frame) {
+        var delta = JSON.parse(frame.body);
+        if(group.signature != delta.signature) {
+            return false;
+        }
+        if(group.version != delta.previousVersion) {
+            getGroupParticipants(delta.signature);
+            return false;
+        }
+        var participants = (group.participants || []).filter(function(participant) {
+            return !delta.removed.some(function(removed) {
+                return sameParticipant(participant, removed);
+            });
+        });
+        group.participants = participants.concat(delta.added);
+        group.version = delta.version;
+        return true;
+    };
+
     var createGroup = function(groupSignature) {
         chatSocket.send(
             paths.GROUPS.CREATE_SEND,
@@ -75,6 +101,14 @@ servicesModule.factory('GroupsService', ['AppEvents', 'ChatSocket', function(app
                     //chatService.setParticipants(group.participants);
                     notifyGroupCreated();
                 }
+            );
+            chatSocket.subscribe(
+                paths.GROUPS.DELTA_SUB,
+                function(frame) {
+                    if(applyGroupDelta(frame)) {
+                        notifyGroupCreated();
+                    }
+                }
             )
         }
     }
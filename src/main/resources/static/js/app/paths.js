@@ -32,10 +32,15 @@ var paths = (function () {
             INCOMING_SUB: sub("chat/incoming"),
 
             DELIVERY_SUB: sub("messages/delivery"),
-            DELIVERY_SEND: send("messages/delivery")
+            DELIVERY_SEND: send("messages/delivery"),
+
+            DELIVERY_BATCH_SUB: sub("messages/delivery/batch"),
+            DELIVERY_BATCH_SEND: send("messages/delivery/batch"),
+            READ_UP_TO_SEND: send("messages/read")
         },
         GROUPS: {
             GROUPS_SUB: sub("groups"),
+            DELTA_SUB: sub("groups/delta"),
 
             CREATE_SEND: send("groups/create"),
             GET_PARTICIPANTS_SEND: send("groups/get"),
@@ -45,11 +50,23 @@ var paths = (function () {
             PARTICIPANT_SEND: send("messages/participant"),
             PARTICIPANT_SUB: sub("messages/participant"),
 
+            PARTICIPANT_PAGE_SEND: send("messages/participant/page"),
+            PARTICIPANT_PAGE_SUB: sub("messages/participant/page"),
+
             ALL_MESSAGES_SEND: send("messages/all"),
             ALL_MESSAGES_SUB: sub("messages/all"),
 
+            ALL_MESSAGES_PAGE_SEND: send("messages/all/page"),
+            ALL_MESSAGES_PAGE_SUB: sub("messages/all/page"),
+
             OFFLINE_MESSAGES_SEND: send("messages/offline"),
-            OFFLINE_MESSAGES_SUB: sub("messages/offline")
+            OFFLINE_MESSAGES_SUB: sub("messages/offline"),
+
+            MESSAGES_SYNC_SEND: send("messages/sync"),
+            MESSAGES_SYNC_SUB: sub("messages/sync"),
+
+            UNREAD_COUNTERS_SEND: send("messages/unread"),
+            UNREAD_COUNTERS_SUB: sub("messages/unread")
         },
         CONTACTS: {
             GET_SEND: send("contacts/get"),
@@ -107,6 +107,13 @@ servicesModule.factory('ChatService', ['AppEvents', 'ChatSocket', 'NotificationS
                 }
             );
 
+            chatSocket.subscribe(
+                paths.CHAT.DELIVERY_BATCH_SUB,
+                function(deliveryStatuses) {
+                    messagesService.messagesDelivered(deliveryStatuses);
+                }
+            );
+
             chatSocket.subscribe("/topic/chat.typing", function (message) {
                 var parsed = JSON.parse(message.body);
                 if (parsed.username === userService.username()) return;
@@ -124,19 +131,24 @@ servicesModule.factory('ChatService', ['AppEvents', 'ChatSocket', 'NotificationS
             chatSocket.subscribe(
                 paths.PRESENCE.PRESENCE_SUB,
                 function (message) {
-                    var presence = JSON.parse(message.body);
-                    var presenceStatus = presence.status;
-                    var login = presence.login;
-                    console.log("Presence '" + presenceStatus + "' received from '" + login + "'");
-                    if (presenceStatus === "offline") {
-                        for (var index in conversation.participants) {
-                            if (conversation.participants[index].username === login) {
-                                conversation.participants.splice(index, 1);
+                    var presences = JSON.parse(message.body);
+                    if (!Array.isArray(presences)) {
+                        presences = [presences];
+                    }
+                    presences.forEach(function (presence) {
+                        var presenceStatus = presence.status;
+                        var login = presence.login;
+                        console.log("Presence '" + presenceStatus + "' received from '" + login + "'");
+                        if (presenceStatus === "offline") {
+                            for (var index in conversation.participants) {
+                                if (conversation.participants[index].username === login) {
+                                    conversation.participants.splice(index, 1);
+                                }
                             }
+                        } else if (presenceStatus == "online") {
+                            conversation.participants.unshift({username: presence.login, typing: false});
                         }
-                    } else if (presenceStatus == "online") {
-                        conversation.participants.unshift({username: presence.login, typing: false});
-                    }
+                    });
                     //notifyConversationUpdated();
                 }
             );
@@ -3,30 +3,44 @@
  */
 'use strict';
 
-servicesModule.factory('MessagesService', ['$injector', 'AppEvents', 'ChatSocket', 'UserService', function($injector, appEvents, chatSocket, userService) {
+servicesModule.factory('MessagesService', ['$injector', '$timeout', 'AppEvents', 'ChatSocket', 'UserService', function($injector, $timeout, appEvents, chatSocket, userService) {
     var messages = [];
 
     var queuedMessages = [];
+
+    var pendingDeliveryStatuses = [];
     
     var parseMessages = function (_messages) {
         messages = JSON.parse(_messages);
     };
 
-    var confirmDeliveryStatus = function (from, recipientType, packetId, uuid, status) {
+    var flushDeliveryStatuses = function () {
+        var statuses = pendingDeliveryStatuses;
+        pendingDeliveryStatuses = [];
         chatSocket.send(
-            paths.CHAT.DELIVERY_SEND,
+            paths.CHAT.DELIVERY_BATCH_SEND,
             {},
-            JSON.stringify(
-                {
-                    to: userService.username(),
-                    from: from,
-                    packetId: packetId,
-                    recipientType: recipientType,
-                    uuid: uuid,
-                    status: status
-                }
-            )
-        )
+            JSON.stringify({statuses: statuses})
+        );
+    };
+
+    /**
+     * Statuses confirmed during flush interval (e.g. a batch of offline messages) are sent as one frame
+     */
+    var confirmDeliveryStatus = function (from, recipientType, packetId, uuid, status) {
+        if(pendingDeliveryStatuses.length === 0) {
+            $timeout(flushDeliveryStatuses, appConst.CHAT.MESSAGE.DELIVERY_FLUSH_MS, false);
+        }
+        pendingDeliveryStatuses.push(
+            {
+                to: userService.username(),
+                from: from,
+                packetId: packetId,
+                recipientType: recipientType,
+                uuid: uuid,
+                status: status
+            }
+        );
     };
 
     var confirmPrivateMessageDelivery = function(message) {
@@ -83,6 +97,76 @@ servicesModule.factory('MessagesService', ['$injector', 'AppEvents', 'ChatSocket
         queuedMessages.push(message);
     };
 
+    var isKnownMessage = function (packetId) {
+        if(findMessage(packetId)) {
+            return true;
+        }
+        for (var i = 0; i < queuedMessages.length; i++) {
+            if(queuedMessages[i].packetId === packetId) {
+                return true;
+            }
+        }
+        return false;
+    };
+
+    var onIncomingMessage = function (message) {
+        var contactsService = $injector.get("ContactsService");
+
+        if(!isFromContact(message, contactsService.selected())) {
+            var contactUsername = "";
+            var contactType = 0;
+            if(message.recipientType === appConst.CONTACTS.TYPE.USER) {
+                contactUsername = message.from;
+                contactType = appConst.CONTACTS.TYPE.USER;
+            } else if(message.recipientType === appConst.CONTACTS.TYPE.GROUP) {
+                contactUsername = message.to ? message.to : message.recipient;
+                contactType = appConst.CONTACTS.TYPE.GROUP;
+            }
+            contactsService.incrementQueuedMessagesAmount(contactUsername, contactType);
+            addMessageToQueue(message);
+        } else {
+            if(message.recipientType === appConst.CONTACTS.TYPE.USER) {
+                confirmPrivateMessageDelivery(message);
+                message.priv = true;
+            }
+            addMessage(message, appConst.CHAT.MESSAGE.STATUS.DELIVERED);
+        }
+    };
+
+    /**
+     * Server keeps the batch until it is acknowledged by the next request,
+     * ack is the sequence of the received batch or null for the first request
+     */
+    var requestOfflineMessages = function (ack) {
+        chatSocket.send(
+            paths.SYNC.OFFLINE_MESSAGES_SEND,
+            {},
+            JSON.stringify({ack: ack})
+        );
+    };
+
+    var onOfflineMessages = function (batch) {
+        for (var i = 0; i < batch.messages.length; i++) {
+            // message could also arrive live while the batch was on its way
+            if(!isKnownMessage(batch.messages[i].packetId)) {
+                onIncomingMessage(batch.messages[i]);
+            }
+        }
+        if(batch.sequence !== null && batch.sequence !== undefined) {
+            // acknowledges the batch, server responds with the next one, empty one has no sequence
+            requestOfflineMessages(batch.sequence);
+        }
+    };
+
+    var applyDeliveryStatus = function (status) {
+        var message = findMessage(status.packetId);
+        if(message){
+            message.status = status.status;
+            message.uuid = status.uuid;
+            message.time = status.time ? status.time : message.time;
+        }
+    };
+
     var isFromContact = function (message, contact) {
         if(message.recipientType === appConst.CONTACTS.TYPE.USER){
             if(message.from === contact.signature) {
@@ -101,43 +185,28 @@ servicesModule.factory('MessagesService', ['$injector', 'AppEvents', 'ChatSocket
         set: function (_messages) { messages = _messages; },
         addMessage: function(message, status) { addMessage(message, status); },
         messageDelivered: function (deliveryStatus) {
-            var status = JSON.parse(deliveryStatus.body);
-            var message = findMessage(status.packetId);
-            if(message){
-                message.status = status.status;
-                message.uuid = status.uuid;
-                message.time = status.time ? status.time : message.time;
-            }
+            applyDeliveryStatus(JSON.parse(deliveryStatus.body));
+        },
+        messagesDelivered: function (deliveryStatuses) {
+            JSON.parse(deliveryStatuses.body).forEach(applyDeliveryStatus);
         },
         switchConversation: function (contact) { loadMessages(contact); },
         initSubscription: function () {
             chatSocket.subscribe(
                 paths.CHAT.INCOMING_SUB,
                 function (messageStr) {
-                    var message = JSON.parse(messageStr.body);
-                    var contactsService = $injector.get("ContactsService");
-
-                    if(!isFromContact(message, contactsService.selected())) {
-                        var contactUsername = "";
-                        var contactType = 0;
-                        if(message.recipientType === appConst.CONTACTS.TYPE.USER) {
-                            contactUsername = message.from;
-                            contactType = appConst.CONTACTS.TYPE.USER;
-                        } else if(message.recipientType === appConst.CONTACTS.TYPE.GROUP) {
-                            contactUsername = message.to ? message.to : message.recipient;
-                            contactType = appConst.CONTACTS.TYPE.GROUP;
-                        }
-                        contactsService.incrementQueuedMessagesAmount(contactUsername, contactType);
-                        addMessageToQueue(message);
-                    } else {
-                        if(message.recipientType === appConst.CONTACTS.TYPE.USER) {
-                            confirmPrivateMessageDelivery(message);
-                            message.priv = true;
-                        }
-                        addMessage(message, appConst.CHAT.MESSAGE.STATUS.DELIVERED);
-                    }
+                    onIncomingMessage(JSON.parse(messageStr.body));
+                }
+            );
+
+            chatSocket.subscribe(
+                paths.SYNC.OFFLINE_MESSAGES_SUB,
+                function (frame) {
+                    onOfflineMessages(JSON.parse(frame.body));
                 }
             );
+            // subscribed to incoming messages, so nothing is lost between the offline batches and live messages
+            requestOfflineMessages(null);
 
             chatSocket.subscribe("/user/queue/sync/messages",
                 function (message) {
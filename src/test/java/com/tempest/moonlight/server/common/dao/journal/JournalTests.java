@@ -0,0 +1,139 @@
+package com.tempest.moonlight.server.common.dao.journal;
+
+import com.tempest.moonlight.server.domain.User;
+import com.tempest.moonlight.server.users.dao.UserCodec;
+import com.tempest.moonlight.server.users.dao.UserDAOMockImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JournalTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void savesAndDeletesAreRestoredFromWal() throws IOException {
+        File directory = folder.getRoot();
+        Journal<User, String> journal = new Journal<>("users", directory, new UserCodec());
+        UserDAOMockImpl users = new UserDAOMockImpl();
+        users.attachJournal(journal);
+        users.save(new User("alice", "1"));
+        users.save(new User("bob", "2"));
+        users.save(new User("alice", "3"));
+        assertTrue(users.deleteWithKey("bob"));
+        assertFalse(users.deleteWithKey("carol"));
+        journal.close();
+
+        UserDAOMockImpl restored = restore(directory);
+        assertEquals("3", restored.get("alice").getPassword());
+        assertFalse(restored.existsWithKey("bob"));
+        assertEquals(1, restored.getLoginContains("ali").size());
+    }
+
+    @Test
+    public void snapshotWithLaterWalIsRestoredAndOldGenerationsAreDeleted() throws IOException {
+        File directory = folder.getRoot();
+        Journal<User, String> journal = new Journal<>("users", directory, new UserCodec());
+        UserDAOMockImpl users = new UserDAOMockImpl();
+        users.attachJournal(journal);
+        for (int i = 0; i < 10000; i++) {
+            users.save(new User("user" + i, "p" + i));
+        }
+        journal.snapshot();
+        users.deleteWithKey("user0");
+        users.save(new User("user1", "changed"));
+        journal.close();
+
+        String[] files = directory.list();
+        assertEquals(2, files.length);
+
+        UserDAOMockImpl restored = restore(directory);
+        assertFalse(restored.existsWithKey("user0"));
+        assertEquals("changed", restored.get("user1").getPassword());
+        assertEquals("p9999", restored.get("user9999").getPassword());
+    }
+
+    @Test
+    public void tornWalTailIsIgnored() throws IOException {
+        File directory = folder.getRoot();
+        Journal<User, String> journal = new Journal<>("users", directory, new UserCodec());
+        UserDAOMockImpl users = new UserDAOMockImpl();
+        users.attachJournal(journal);
+        users.save(new User("alice", "1"));
+        users.save(new User("bob", "2"));
+        journal.close();
+
+        File wal = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(wal, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        UserDAOMockImpl restored = restore(directory);
+        assertTrue(restored.existsWithKey("alice"));
+        assertFalse(restored.existsWithKey("bob"));
+    }
+
+    @Test
+    public void concurrentWritesOfKeyAreRestoredInMapOrder() throws Exception {
+        File directory = folder.getRoot();
+        Journal<User, String> journal = new Journal<>("users", directory, new UserCodec());
+        UserDAOMockImpl users = new UserDAOMockImpl();
+        users.attachJournal(journal);
+
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < 8; writer++) {
+                int id = writer;
+                futures.add(writers.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String login = "user" + (i % 16);
+                        if (i % 5 == 0) {
+                            users.deleteWithKey(login);
+                        } else {
+                            users.save(new User(login, id + "-" + i));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+        journal.close();
+
+        UserDAOMockImpl restored = restore(directory);
+        for (int i = 0; i < 16; i++) {
+            User expected = users.get("user" + i);
+            User actual = restored.get("user" + i);
+            assertEquals(expected == null, actual == null);
+            if (expected != null) {
+                assertEquals(expected.getPassword(), actual.getPassword());
+            }
+        }
+    }
+
+    private static UserDAOMockImpl restore(File directory) throws IOException {
+        Journal<User, String> journal = new Journal<>("users", directory, new UserCodec());
+        UserDAOMockImpl users = new UserDAOMockImpl();
+        users.attachJournal(journal);
+        journal.close();
+        return users;
+    }
+}
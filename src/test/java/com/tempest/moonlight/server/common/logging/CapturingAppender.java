@@ -0,0 +1,42 @@
+package com.tempest.moonlight.server.common.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps messages of the logger it is attached to, the logger writes to nothing else.
+ * Log4j API of the application is bridged to logback, so the appender is attached to logback logger of the same name
+ */
+class CapturingAppender extends AppenderBase<ILoggingEvent> {
+
+    final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+    private final Logger logger;
+
+    CapturingAppender(String loggerName) {
+        logger = (Logger) LoggerFactory.getLogger(loggerName);
+        logger.setLevel(Level.DEBUG);
+        logger.setAdditive(false);
+        logger.addAppender(this);
+        start();
+    }
+
+    void detach() {
+        stop();
+        logger.detachAppender(this);
+        logger.setAdditive(true);
+        logger.setLevel(null);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        messages.add(event.getFormattedMessage());
+    }
+}
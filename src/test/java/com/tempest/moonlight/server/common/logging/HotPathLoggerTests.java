@@ -0,0 +1,110 @@
+package com.tempest.moonlight.server.common.logging;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class HotPathLoggerTests {
+
+    private final CapturingAppender appender = new CapturingAppender(HotPathLoggerTests.class.getName());
+
+    @After
+    public void tearDown() {
+        HotPathLogger.stop();
+        appender.detach();
+    }
+
+    @Test
+    public void placeholdersAreReplacedInOrder() {
+        assertEquals("a=1 b=2 c=3", format("a={} b={} c={}", 1, 2, 3));
+        assertEquals("a=null b=2", format("a={} b={}", null, 2, null));
+    }
+
+    @Test
+    public void extraArgumentsAreSkipped() {
+        assertEquals("a=1 only", format("a={} only", 1, 2, 3));
+        assertEquals("no placeholders", format("no placeholders", 1, 2, 3));
+    }
+
+    @Test
+    public void placeholdersWithoutArgumentsAreKept() {
+        HotPathLogger logger = startLogger("format", 1);
+        logger.info("a={} b={} c={}", 1);
+        logger.info("a={} b={} c={}", 1, 2);
+        logger.info("a={} b={} c={} d={}", 1, 2, 3);
+
+        assertEquals("a=1 b={} c={}", appender.messages.get(0));
+        assertEquals("a=1 b=2 c={}", appender.messages.get(1));
+        assertEquals("a=1 b=2 c=3 d={}", appender.messages.get(2));
+    }
+
+    @Test
+    public void zeroSamplingDisablesCategory() {
+        HotPathLogger logger = startLogger("sampling-zero", 0);
+        long sampledOut = HotPathLogger.getSampledOutCount();
+        for (int i = 0; i < 100; i++) {
+            logger.info("event {}", i);
+        }
+
+        assertTrue(appender.messages.isEmpty());
+        assertEquals(sampledOut, HotPathLogger.getSampledOutCount());
+    }
+
+    @Test
+    public void samplingByOneLogsEveryEvent() {
+        HotPathLogger logger = startLogger("sampling-one", 1);
+        long sampledOut = HotPathLogger.getSampledOutCount();
+        for (int i = 0; i < 100; i++) {
+            logger.debug("event {}", i);
+        }
+
+        assertEquals(100, appender.messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("event " + i, appender.messages.get(i));
+        }
+        assertEquals(sampledOut, HotPathLogger.getSampledOutCount());
+    }
+
+    @Test
+    public void samplingByNLogsAboutEveryNthEvent() {
+        HotPathLogger logger = startLogger("sampling-ten", 10);
+        long sampledOut = HotPathLogger.getSampledOutCount();
+        int events = 10000;
+        for (int i = 0; i < events; i++) {
+            logger.info("event {}", i);
+        }
+
+        int logged = appender.messages.size();
+        assertTrue("logged " + logged, logged > 700 && logged < 1300);
+        assertEquals(events - logged, HotPathLogger.getSampledOutCount() - sampledOut);
+    }
+
+    @Test
+    public void startedRingWritesEventsOnItsThread() throws InterruptedException {
+        LogRingBuffer ring = new LogRingBuffer(16);
+        HotPathLogger logger = HotPathLogger.getLogger(HotPathLoggerTests.class, "ring");
+        HotPathLogger.start(ring, Collections.singletonMap("ring", 1));
+        logger.info("event {} of {}", 1, "ring");
+        assertSame(ring, HotPathLogger.stop());
+        ring.close(5000);
+
+        assertEquals(1, appender.messages.size());
+        String message = appender.messages.get(0);
+        String prefix = "[" + Thread.currentThread().getName() + "] event 1 of ring (+";
+        assertTrue(message, message.startsWith(prefix) && Pattern.matches("\\d+ ms\\)", message.substring(prefix.length())));
+    }
+
+    private HotPathLogger startLogger(String category, int sampleEvery) {
+        HotPathLogger logger = HotPathLogger.getLogger(HotPathLoggerTests.class, category);
+        HotPathLogger.start(null, Collections.singletonMap(category, sampleEvery));
+        return logger;
+    }
+
+    private static String format(String format, Object arg0, Object arg1, Object arg2) {
+        return HotPathLogger.format(new StringBuilder(), format, arg0, arg1, arg2).toString();
+    }
+}
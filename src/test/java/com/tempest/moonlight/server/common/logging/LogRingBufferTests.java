@@ -0,0 +1,146 @@
+package com.tempest.moonlight.server.common.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class LogRingBufferTests {
+
+    private static final Pattern EVENT = Pattern.compile("\\[(.+)] event (\\d+) \\(\\+\\d+ ms\\)");
+
+    private final Logger target = Logger.getLogger(LogRingBufferTests.class.getName());
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean blockFirst;
+
+    private final CapturingAppender appender = new CapturingAppender(LogRingBufferTests.class.getName()) {
+        @Override
+        protected void append(ILoggingEvent event) {
+            if (blockFirst && writing.getCount() > 0) {
+                writing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.append(event);
+        }
+    };
+
+    private LogRingBuffer ring;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        if (ring != null) {
+            ring.close(5000);
+        }
+        appender.detach();
+    }
+
+    @Test
+    public void eventsOfEveryProducerAreWrittenInOrder() throws InterruptedException {
+        int producers = 4;
+        int events = 5000;
+        ring = new LogRingBuffer(producers * events);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < events; i++) {
+                    ring.offer(target, Level.INFO, "event {}", i, null, null);
+                }
+            }, "producer-" + p));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ring.close(5000);
+
+        assertEquals(producers * events, appender.messages.size());
+        assertEquals(producers * events, ring.getWrittenCount());
+        assertEquals(0, ring.getDroppedCount());
+        Map<String, Integer> nextByProducer = new HashMap<>();
+        for (String message : appender.messages) {
+            Matcher matcher = EVENT.matcher(message);
+            assertTrue(message, matcher.matches());
+            int expected = nextByProducer.getOrDefault(matcher.group(1), 0);
+            assertEquals(message, expected, Integer.parseInt(matcher.group(2)));
+            nextByProducer.put(matcher.group(1), expected + 1);
+        }
+        assertEquals(producers, nextByProducer.size());
+    }
+
+    @Test
+    public void eventsAreDroppedAndCountedWhenRingIsFull() throws InterruptedException {
+        blockFirst = true;
+        ring = new LogRingBuffer(4);
+        assertEquals(4, ring.getCapacity());
+
+        assertTrue(ring.offer(target, Level.INFO, "event {}", 0, null, null));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // slot of the event being written is not free yet
+        for (int i = 1; i < 4; i++) {
+            assertTrue(ring.offer(target, Level.INFO, "event {}", i, null, null));
+        }
+        for (int i = 4; i < 10; i++) {
+            assertFalse(ring.offer(target, Level.INFO, "event {}", i, null, null));
+        }
+        assertEquals(6, ring.getDroppedCount());
+        assertEquals(4, ring.getDepth());
+
+        release.countDown();
+        ring.close(5000);
+        assertEquals(4, ring.getWrittenCount());
+        assertEquals(0, ring.getDepth());
+        assertEquals(4, appender.messages.size());
+    }
+
+    @Test
+    public void closeWaitsForPublishedEvents() throws InterruptedException {
+        blockFirst = true;
+        ring = new LogRingBuffer(16);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(target, Level.INFO, "event {}", i, null, null));
+        }
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        Thread closer = new Thread(() -> {
+            try {
+                ring.close(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        closer.start();
+        // writer is stopped while it still has events to write
+        while (closer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.yield();
+        }
+        release.countDown();
+        closer.join(5000);
+
+        assertFalse(closer.isAlive());
+        assertEquals(10, ring.getWrittenCount());
+        for (int i = 0; i < 10; i++) {
+            Matcher matcher = EVENT.matcher(appender.messages.get(i));
+            assertTrue(matcher.matches());
+            assertEquals(i, Integer.parseInt(matcher.group(2)));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.tempest.moonlight.server.groups.service;
+
+import com.tempest.moonlight.server.common.dao.journal.Journal;
+import com.tempest.moonlight.server.contacts.dao.ContactsDAOImpl;
+import com.tempest.moonlight.server.contacts.dao.GenericContactCodec;
+import com.tempest.moonlight.server.domain.Group;
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericContact;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.groups.dao.GroupCodec;
+import com.tempest.moonlight.server.groups.dao.GroupDAOMockImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GroupMembershipTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Journal<Group, String> groupsJournal;
+    private Journal<GenericContact, GenericContact> contactsJournal;
+    private GroupDAOMockImpl groupDAO;
+    private ContactsDAOImpl contactsDAO;
+    private GroupServiceImpl groupService;
+
+    @Before
+    public void setUp() throws IOException {
+        groupsJournal = new Journal<>("groups", folder.getRoot(), new GroupCodec());
+        contactsJournal = new Journal<>("contacts", folder.getRoot(), new GenericContactCodec());
+        groupDAO = new GroupDAOMockImpl();
+        groupDAO.attachJournal(groupsJournal);
+        contactsDAO = new ContactsDAOImpl();
+        contactsDAO.attachJournal(contactsJournal);
+
+        groupService = new GroupServiceImpl();
+        ReflectionTestUtils.setField(groupService, "groupDAO", groupDAO);
+        ReflectionTestUtils.setField(groupService, "contactsDAO", contactsDAO);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        groupsJournal.close();
+        contactsJournal.close();
+    }
+
+    @Test
+    public void concurrentChangesOfGroupKeepSnapshotEqualToStoredParticipants() throws Exception {
+        Group group = groupService.createGroup("group");
+        int threads = 8;
+        int usersPerThread = 50;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < usersPerThread; i++) {
+                        String login = "user" + id + "-" + i;
+                        if (i % 2 == 0) {
+                            assertTrue(groupService.addUserToGroup(group, login));
+                        } else {
+                            groupService.processAddRemoveParticipants("group", Collections.singleton(user(login)), Collections.emptyList());
+                        }
+                        groupService.getParticipants("group");
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<GenericParticipant> stored = storedParticipants();
+        assertEquals(threads * usersPerThread, stored.size());
+        assertEquals(stored, new HashSet<>(groupService.getParticipants("group")));
+        assertEquals(groupService.getMembership("group").version, groupDAO.get("group").getLastChangeTime());
+    }
+
+    @Test
+    public void versionGrowsWithEveryChange() {
+        Group group = groupService.createGroup("group");
+        long version = groupService.getMembership("group").version;
+
+        assertTrue(groupService.addUserToGroup(group, "alice"));
+        long afterAdd = groupService.getMembership("group").version;
+        assertTrue(afterAdd > version);
+
+        assertFalse(groupService.addUserToGroup(group, "alice"));
+        assertEquals(afterAdd, groupService.getMembership("group").version);
+
+        groupService.processAddRemoveParticipants("group", Collections.emptyList(), Collections.singleton(user("alice")));
+        assertTrue(groupService.getMembership("group").version > afterAdd);
+        assertTrue(groupService.getParticipants("group").isEmpty());
+        assertTrue(groupDAO.get("group").isEmpty());
+    }
+
+    private Set<GenericParticipant> storedParticipants() {
+        Set<GenericParticipant> participants = new HashSet<>();
+        for (GenericContact contact : contactsDAO.getGroupParticipants("group")) {
+            participants.add(contact.getContact());
+        }
+        return participants;
+    }
+
+    private static GenericParticipant user(String login) {
+        return new GenericParticipant(ParticipantType.USER, login);
+    }
+}
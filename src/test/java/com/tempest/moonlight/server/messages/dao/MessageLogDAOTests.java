@@ -0,0 +1,123 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MessageLogDAOTests {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<MessageLogDAOImpl> opened = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        opened.forEach(MessageLogDAOImpl::close);
+    }
+
+    /**
+     * Every writer saves its own version of the same message, the version left in memory has to be the one
+     * the log ends with, otherwise restart changes the message
+     */
+    @Test
+    public void concurrentWritesOfKeyLeaveStateOfTheLog() throws Exception {
+        File directory = folder.getRoot();
+        MessageLogDAOImpl messages = openLog(directory);
+        Map<MessageKey, String> texts = new HashMap<>();
+        Map<MessageKey, Boolean> exists = new HashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                String packetId = "m" + round;
+                boolean withDelete = round % 2 == 1;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> writes = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    ChatMessage version = message(packetId, "v" + i);
+                    boolean delete = withDelete && i == 0;
+                    writes.add(executor.submit(() -> {
+                        start.await();
+                        if (delete) {
+                            messages.deleteWithKey(version.getKey());
+                        } else {
+                            messages.save(version);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> write : writes) {
+                    write.get(10, TimeUnit.SECONDS);
+                }
+
+                MessageKey key = message(packetId, null).getKey();
+                ChatMessage saved = messages.get(key);
+                exists.put(key, saved != null);
+                texts.put(key, saved == null ? null : saved.getText());
+            }
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        messages.close();
+        opened.remove(messages);
+
+        MessageLogDAOImpl restored = openLog(directory);
+        for (Map.Entry<MessageKey, String> entry : texts.entrySet()) {
+            ChatMessage message = restored.get(entry.getKey());
+            assertEquals(entry.getKey().toString(), exists.get(entry.getKey()), message != null);
+            assertEquals(entry.getKey().toString(), entry.getValue(), message == null ? null : message.getText());
+        }
+        assertEquals(exists.values().stream().filter(Boolean::booleanValue).count(), restored.getMessagesOfUser("alice").size());
+    }
+
+    private MessageLogDAOImpl openLog(File directory) throws IOException {
+        MessageLogDAOImpl messages = new MessageLogDAOImpl();
+        ReflectionTestUtils.setField(messages, "directory", directory.getPath());
+        ReflectionTestUtils.setField(messages, "segmentSize", 64 * 1024);
+        ReflectionTestUtils.setField(messages, "maxBatch", 64);
+        ReflectionTestUtils.setField(messages, "fsync", false);
+        messages.open();
+        opened.add(messages);
+        return messages;
+    }
+
+    private static ChatMessage message(String packetId, String text) {
+        ChatMessage message = new ChatMessage()
+                .setFrom("alice")
+                .setType(ParticipantType.USER)
+                .setTo("bob")
+                .setTime(1000L)
+                .setUuid("udid")
+                .setPacketId(packetId)
+                .setText(text)
+                .setStatus(MessageStatus.ARRIVED);
+        message.getKey();
+        return message;
+    }
+}
@@ -0,0 +1,88 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.ParticipantType;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OfflineInboxTests {
+
+    private OfflineInboxDAOImpl inbox;
+
+    @Before
+    public void setUp() {
+        inbox = new OfflineInboxDAOImpl();
+        ReflectionTestUtils.setField(inbox, "capacity", 3);
+    }
+
+    @Test
+    public void peekDoesNotRemoveEntries() {
+        inbox.append("bob", key("1"));
+        inbox.append("bob", key("2"));
+
+        assertEquals(2, inbox.peek("bob", 0, 10).size());
+        assertEquals(2, inbox.peek("bob", 0, 10).size());
+        assertEquals(2, inbox.size("bob"));
+    }
+
+    @Test
+    public void peekReturnsEntriesAfterSequence() {
+        inbox.append("bob", key("1"));
+        inbox.append("bob", key("2"));
+        inbox.append("bob", key("3"));
+
+        List<OfflineInboxDAO.Entry> first = inbox.peek("bob", 0, 2);
+        assertEquals(2, first.size());
+        List<OfflineInboxDAO.Entry> rest = inbox.peek("bob", first.get(1).sequence, 2);
+        assertEquals(1, rest.size());
+        assertEquals("3", rest.get(0).key.packetId);
+    }
+
+    @Test
+    public void acknowledgeRemovesEntriesUpToSequence() {
+        inbox.append("bob", key("1"));
+        inbox.append("bob", key("2"));
+        List<OfflineInboxDAO.Entry> batch = inbox.peek("bob", 0, 1);
+
+        assertEquals(1, inbox.acknowledge("bob", batch.get(0).sequence));
+        List<OfflineInboxDAO.Entry> rest = inbox.peek("bob", 0, 10);
+        assertEquals(1, rest.size());
+        assertEquals("2", rest.get(0).key.packetId);
+
+        assertEquals(1, inbox.acknowledge("bob", rest.get(0).sequence));
+        assertEquals(0, inbox.size("bob"));
+        assertTrue(inbox.peek("bob", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void lateAcknowledgementKeepsNewerEntries() {
+        inbox.append("bob", key("1"));
+        long sequence = inbox.peek("bob", 0, 10).get(0).sequence;
+        inbox.append("bob", key("2"));
+
+        inbox.acknowledge("bob", sequence);
+        inbox.acknowledge("bob", sequence);
+        assertEquals(1, inbox.size("bob"));
+    }
+
+    @Test
+    public void fullInboxDropsOldest() {
+        assertTrue(inbox.append("bob", key("1")));
+        assertTrue(inbox.append("bob", key("2")));
+        assertTrue(inbox.append("bob", key("3")));
+        assertFalse(inbox.append("bob", key("4")));
+
+        List<OfflineInboxDAO.Entry> entries = inbox.peek("bob", 0, 10);
+        assertEquals(3, entries.size());
+        assertEquals("2", entries.get(0).key.packetId);
+    }
+
+    private static MessageKey key(String packetId) {
+        return new MessageKey("alice", "bob", ParticipantType.USER, "udid", packetId);
+    }
+}
@@ -0,0 +1,204 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.common.dao.journal.Journal;
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.domain.messages.StatusTransition;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StatusTransitionTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<MessageLogDAOImpl> opened = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        opened.forEach(MessageLogDAOImpl::close);
+    }
+
+    @Test
+    public void statusesOnlyMoveForward() {
+        assertTrue(MessageStatus.canAdvance(null, MessageStatus.ARRIVED));
+        assertTrue(MessageStatus.canAdvance(null, MessageStatus.READ));
+        assertTrue(MessageStatus.canAdvance(MessageStatus.ARRIVED, MessageStatus.DELIVERED));
+        assertTrue(MessageStatus.canAdvance(MessageStatus.ARRIVED, MessageStatus.READ));
+        assertTrue(MessageStatus.canAdvance(MessageStatus.DELIVERED, MessageStatus.READ));
+
+        assertFalse(MessageStatus.canAdvance(MessageStatus.DELIVERED, MessageStatus.DELIVERED));
+        assertFalse(MessageStatus.canAdvance(MessageStatus.READ, MessageStatus.DELIVERED));
+        assertFalse(MessageStatus.canAdvance(MessageStatus.READ, MessageStatus.ARRIVED));
+    }
+
+    @Test
+    public void memoryStoreAppliesOnlyForwardTransitions() {
+        checkTransitions(new MessageDAOMockImpl());
+    }
+
+    @Test
+    public void logStoreAppliesOnlyForwardTransitions() throws IOException {
+        checkTransitions(openLog(folder.getRoot()));
+    }
+
+    @Test
+    public void concurrentTransitionsOfMemoryStoreApplyOnce() throws Exception {
+        checkConcurrentTransitions(new MessageDAOMockImpl());
+    }
+
+    @Test
+    public void concurrentTransitionsOfLogStoreApplyOnce() throws Exception {
+        checkConcurrentTransitions(openLog(folder.getRoot()));
+    }
+
+    @Test
+    public void journaledStatusIsRestored() throws IOException {
+        File directory = folder.getRoot();
+        Journal<ChatMessage, MessageKey> journal = new Journal<>("messages", directory, new ChatMessageCodec());
+        MessageDAOMockImpl messages = new MessageDAOMockImpl();
+        messages.attachJournal(journal);
+        ChatMessage delivered = message("1");
+        ChatMessage read = message("2");
+        messages.save(delivered);
+        messages.save(read);
+        messages.advanceStatus(delivered.getKey(), MessageStatus.DELIVERED);
+        messages.advanceStatus(read.getKey(), MessageStatus.DELIVERED);
+        messages.advanceStatus(read.getKey(), MessageStatus.READ);
+        messages.advanceStatus(read.getKey(), MessageStatus.DELIVERED);
+        journal.close();
+
+        Journal<ChatMessage, MessageKey> restoredJournal = new Journal<>("messages", directory, new ChatMessageCodec());
+        MessageDAOMockImpl restored = new MessageDAOMockImpl();
+        restored.attachJournal(restoredJournal);
+        restoredJournal.close();
+
+        assertEquals(MessageStatus.DELIVERED, restored.get(delivered.getKey()).getStatus());
+        assertEquals(MessageStatus.READ, restored.get(read.getKey()).getStatus());
+        assertEquals(StatusTransition.STALE, restored.advanceStatus(read.getKey(), MessageStatus.DELIVERED));
+    }
+
+    @Test
+    public void loggedStatusIsRestored() throws IOException {
+        File directory = folder.getRoot();
+        MessageLogDAOImpl messages = openLog(directory);
+        ChatMessage delivered = message("1");
+        ChatMessage read = message("2");
+        messages.save(delivered);
+        messages.save(read);
+        messages.advanceStatus(delivered.getKey(), MessageStatus.DELIVERED);
+        messages.advanceStatus(read.getKey(), MessageStatus.READ);
+        messages.advanceStatus(read.getKey(), MessageStatus.DELIVERED);
+        messages.close();
+        opened.remove(messages);
+
+        MessageLogDAOImpl restored = openLog(directory);
+        assertEquals(MessageStatus.DELIVERED, restored.get(delivered.getKey()).getStatus());
+        assertEquals(MessageStatus.READ, restored.get(read.getKey()).getStatus());
+        assertEquals(StatusTransition.STALE, restored.advanceStatus(read.getKey(), MessageStatus.DELIVERED));
+        assertEquals(StatusTransition.APPLIED, restored.advanceStatus(delivered.getKey(), MessageStatus.READ));
+    }
+
+    private static void checkTransitions(MessageDAO messages) {
+        ChatMessage message = message("1");
+        messages.save(message);
+        MessageKey key = message.getKey();
+
+        assertEquals(StatusTransition.APPLIED, messages.advanceStatus(key, MessageStatus.DELIVERED));
+        assertEquals(StatusTransition.STALE, messages.advanceStatus(key, MessageStatus.DELIVERED));
+        assertEquals(StatusTransition.APPLIED, messages.advanceStatus(key, MessageStatus.READ));
+        assertEquals(StatusTransition.STALE, messages.advanceStatus(key, MessageStatus.DELIVERED));
+        assertEquals(StatusTransition.STALE, messages.advanceStatus(key, MessageStatus.ARRIVED));
+        assertEquals(MessageStatus.READ, messages.get(key).getStatus());
+
+        assertEquals(StatusTransition.MISSING, messages.advanceStatus(message("2").getKey(), MessageStatus.DELIVERED));
+    }
+
+    /**
+     * Receipts of the same message race: READ is applied exactly once, DELIVERED at most once and never after READ
+     */
+    private static void checkConcurrentTransitions(MessageDAO messages) throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                ChatMessage message = message("m" + round);
+                messages.save(message);
+                MessageKey key = message.getKey();
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<StatusTransition>> delivered = new ArrayList<>();
+                List<Future<StatusTransition>> read = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    MessageStatus status = i % 2 == 0 ? MessageStatus.DELIVERED : MessageStatus.READ;
+                    Callable<StatusTransition> advance = () -> {
+                        start.await();
+                        return messages.advanceStatus(key, status);
+                    };
+                    (status == MessageStatus.READ ? read : delivered).add(executor.submit(advance));
+                }
+                start.countDown();
+
+                assertEquals(1, countApplied(read));
+                assertTrue(countApplied(delivered) <= 1);
+                assertEquals(MessageStatus.READ, messages.get(key).getStatus());
+            }
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static int countApplied(List<Future<StatusTransition>> transitions) throws Exception {
+        int applied = 0;
+        for (Future<StatusTransition> transition : transitions) {
+            if (transition.get(10, TimeUnit.SECONDS) == StatusTransition.APPLIED) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private MessageLogDAOImpl openLog(File directory) throws IOException {
+        MessageLogDAOImpl messages = new MessageLogDAOImpl();
+        ReflectionTestUtils.setField(messages, "directory", directory.getPath());
+        ReflectionTestUtils.setField(messages, "segmentSize", 64 * 1024);
+        ReflectionTestUtils.setField(messages, "maxBatch", 64);
+        ReflectionTestUtils.setField(messages, "fsync", false);
+        messages.open();
+        opened.add(messages);
+        return messages;
+    }
+
+    private static ChatMessage message(String packetId) {
+        ChatMessage message = new ChatMessage()
+                .setFrom("alice")
+                .setType(ParticipantType.USER)
+                .setTo("bob")
+                .setTime(System.currentTimeMillis())
+                .setUuid("udid")
+                .setPacketId(packetId)
+                .setText("text")
+                .setStatus(MessageStatus.ARRIVED);
+        message.getKey();
+        return message;
+    }
+}
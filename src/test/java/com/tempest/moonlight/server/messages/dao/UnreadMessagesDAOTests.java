@@ -0,0 +1,177 @@
+package com.tempest.moonlight.server.messages.dao;
+
+import com.tempest.moonlight.server.domain.MessageKey;
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class UnreadMessagesDAOTests {
+
+    private final UnreadMessagesDAOImpl dao = new UnreadMessagesDAOImpl();
+
+    @Test
+    public void countersAreLoadedOnceAndGroupedBySender() {
+        AtomicInteger loads = new AtomicInteger();
+        Map<GenericParticipant, Integer> counters = dao.getCounters("alice", () -> {
+            loads.incrementAndGet();
+            return Arrays.asList(key("bob", 1), key("bob", 2), key("carol", 3));
+        });
+
+        assertEquals(counters(2, 1), counters);
+        assertEquals(counters(2, 1), dao.getCounters("alice", () -> {
+            loads.incrementAndGet();
+            return Collections.emptyList();
+        }));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void changesOfTrackedUserUpdateCounters() {
+        dao.getCounters("alice", () -> Collections.singletonList(key("bob", 1)));
+
+        dao.add(key("bob", 2));
+        dao.add(key("carol", 3));
+        dao.remove(key("bob", 1));
+        // group messages and messages to self are not counted
+        dao.add(new MessageKey("bob", "alice", ParticipantType.GROUP, "u4", "p4"));
+        dao.add(new MessageKey("alice", "alice", ParticipantType.USER, "u5", "p5"));
+        assertEquals(counters(1, 1), dao.getCounters("alice", Collections::emptyList));
+
+        dao.remove(key("carol", 3));
+        dao.remove(key("bob", 2));
+        assertTrue(dao.getCounters("alice", Collections::emptyList).isEmpty());
+    }
+
+    @Test
+    public void changesOfUntrackedUserAreIgnored() {
+        dao.add(key("bob", 1));
+        assertEquals(counters(1, 0), dao.getCounters("alice", () -> Collections.singletonList(key("bob", 2))));
+    }
+
+    @Test
+    public void changesWhileLoadingAreCountedOnce() {
+        Map<GenericParticipant, Integer> counters = dao.getCounters("alice", () -> {
+            // saved after loader read it, so it is both loaded and added
+            dao.add(key("bob", 1));
+            // saved after loader passed it, so it is only added
+            dao.add(key("bob", 2));
+            // read after loader saw it unread
+            dao.remove(key("carol", 3));
+            // saved and read after loader passed it
+            dao.add(key("carol", 4));
+            dao.remove(key("carol", 4));
+            return Arrays.asList(key("bob", 1), key("carol", 3), key("carol", 5));
+        });
+
+        assertEquals(counters(2, 1), counters);
+    }
+
+    @Test
+    public void loaderDoesNotBlockOtherUsers() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<GenericParticipant, Integer>> alice = executor.submit(() -> dao.getCounters("alice", () -> {
+                loading.countDown();
+                await(release);
+                return Collections.singletonList(key("bob", 1));
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // some of the users share a bin of the map with alice, they would wait for her loader under the bin lock
+            Future<?> others = executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    String user = "user" + i;
+                    assertEquals(counters(1, 0), dao.getCounters(user, () -> Collections.singletonList(new MessageKey("bob", user, ParticipantType.USER, "u", "p"))));
+                }
+                dao.add(key("bob", 2));
+            });
+            others.get(2, TimeUnit.SECONDS);
+
+            release.countDown();
+            assertEquals(counters(2, 0), alice.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentRequestWaitsForLoadingOne() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<GenericParticipant, Integer>> first = executor.submit(() -> dao.getCounters("alice", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return Collections.singletonList(key("bob", 1));
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<Map<GenericParticipant, Integer>> second = executor.submit(() -> dao.getCounters("alice", () -> {
+                loads.incrementAndGet();
+                return Collections.emptyList();
+            }));
+
+            release.countDown();
+            assertEquals(counters(1, 0), first.get(5, TimeUnit.SECONDS));
+            assertEquals(counters(1, 0), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedLoadingIsRetried() {
+        try {
+            dao.getCounters("alice", () -> {
+                throw new IllegalStateException("storage is not available");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        dao.add(key("bob", 1));
+
+        assertEquals(counters(1, 0), dao.getCounters("alice", () -> Collections.singletonList(key("bob", 2))));
+    }
+
+    private static MessageKey key(String from, int index) {
+        return new MessageKey(from, "alice", ParticipantType.USER, "u" + index, "p" + index);
+    }
+
+    private static Map<GenericParticipant, Integer> counters(int fromBob, int fromCarol) {
+        Map<GenericParticipant, Integer> counters = new HashMap<>();
+        if (fromBob > 0) {
+            counters.put(new GenericParticipant(ParticipantType.USER, "bob"), fromBob);
+        }
+        if (fromCarol > 0) {
+            counters.put(new GenericParticipant(ParticipantType.USER, "carol"), fromCarol);
+        }
+        return counters;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.tempest.moonlight.server.messages.dao.log;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class MessageLogTests {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<MessageLog> opened = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        opened.forEach(MessageLog::close);
+    }
+
+    @Test
+    public void recordsAreReplayedInOrderAfterRestart() throws IOException {
+        File directory = folder.getRoot();
+        MessageLog log = open(directory, new ArrayList<>(), new ArrayList<>());
+        List<Long> positions = new ArrayList<>();
+        // 100 records of 29 bytes do not fit into one segment
+        for (int i = 0; i < 100; i++) {
+            positions.add(log.append((byte) (i % 3), payload(i)));
+        }
+        log.close();
+        assertTrue(directory.listFiles().length > 1);
+
+        List<Long> replayedPositions = new ArrayList<>();
+        List<String> replayed = new ArrayList<>();
+        MessageLog reopened = open(directory, replayedPositions, replayed);
+
+        assertEquals(positions, replayedPositions);
+        for (int i = 0; i < 100; i++) {
+            assertEquals((i % 3) + ":" + text(i), replayed.get(i));
+            assertArrayEquals(payload(i), reopened.read(positions.get(i)));
+        }
+    }
+
+    @Test
+    public void appendAfterRestartContinuesAfterLastRecord() throws IOException {
+        File directory = folder.getRoot();
+        MessageLog log = open(directory, new ArrayList<>(), new ArrayList<>());
+        long first = log.append((byte) 1, payload(1));
+        log.close();
+
+        MessageLog reopened = open(directory, new ArrayList<>(), new ArrayList<>());
+        long second = reopened.append((byte) 1, payload(2));
+        assertEquals(MessageLog.segmentOffset(first) + MessageLog.HEADER_SIZE + payload(1).length, MessageLog.segmentOffset(second));
+        reopened.close();
+
+        List<String> replayed = new ArrayList<>();
+        open(directory, new ArrayList<>(), replayed);
+        assertEquals(2, replayed.size());
+    }
+
+    @Test
+    public void tornTailIsErasedAndOverwritten() throws IOException {
+        File directory = folder.getRoot();
+        MessageLog log = open(directory, new ArrayList<>(), new ArrayList<>());
+        log.append((byte) 1, payload(1));
+        long second = log.append((byte) 1, payload(2));
+        log.close();
+
+        // second record is torn: its header is there, but payload was not written completely
+        int tornOffset = MessageLog.segmentOffset(second);
+        try (RandomAccessFile segment = new RandomAccessFile(directory.listFiles()[0], "rw")) {
+            segment.seek(tornOffset + MessageLog.HEADER_SIZE + 3);
+            segment.write(new byte[payload(2).length - 3]);
+        }
+
+        List<Long> replayedPositions = new ArrayList<>();
+        List<String> replayed = new ArrayList<>();
+        MessageLog reopened = open(directory, replayedPositions, replayed);
+        assertEquals(1, replayed.size());
+
+        long third = reopened.append((byte) 2, payload(3));
+        assertEquals(second, third);
+        reopened.close();
+
+        replayed.clear();
+        open(directory, new ArrayList<>(), replayed);
+        assertEquals(2, replayed.size());
+        assertEquals("2:" + text(3), replayed.get(1));
+    }
+
+    @Test
+    public void appendsRacingCloseNeverHang() throws Exception {
+        ExecutorService appenders = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+                MessageLog log = open(folder.newFolder(), new ArrayList<>(), new ArrayList<>());
+                CountDownLatch started = new CountDownLatch(8);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int appender = 0; appender < 8; appender++) {
+                    futures.add(appenders.submit(() -> {
+                        started.countDown();
+                        for (int i = 0; ; i++) {
+                            log.append((byte) 1, payload(i));
+                        }
+                    }));
+                }
+                started.await();
+                log.close();
+                for (Future<?> future : futures) {
+                    try {
+                        future.get(15, TimeUnit.SECONDS);
+                        fail("Append to closed log succeeded");
+                    } catch (TimeoutException e) {
+                        fail("Append hangs after close");
+                    } catch (java.util.concurrent.ExecutionException e) {
+                        assertTrue(e.getCause() instanceof IllegalStateException);
+                    }
+                }
+            }
+        } finally {
+            appenders.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedBatchIsNotReplayed() throws Exception {
+        File directory = folder.getRoot();
+        MessageLog log = open(directory, new ArrayList<>(), new ArrayList<>());
+        // next segment can not be created, so batch crossing the segment end fails after its first records are written
+        assertTrue(new File(directory, String.format("%010d.log", 1)).mkdir());
+
+        List<String> appended = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService appenders = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int appender = 0; appender < 8; appender++) {
+                int first = appender * 1000;
+                futures.add(appenders.submit(() -> {
+                    for (int i = first; i < first + 20; i++) {
+                        try {
+                            log.append((byte) 1, payload(i));
+                            appended.add("1:" + text(i));
+                        } catch (UncheckedIOException e) {
+                            // the segment is full
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(15, TimeUnit.SECONDS);
+            }
+        } finally {
+            appenders.shutdownNow();
+        }
+        log.close();
+        assertTrue(new File(directory, String.format("%010d.log", 1)).delete());
+
+        List<String> replayed = new ArrayList<>();
+        open(directory, new ArrayList<>(), replayed);
+        assertEquals(new HashSet<>(appended), new HashSet<>(replayed));
+        assertEquals(appended.size(), replayed.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void appendToClosedLogFails() throws IOException {
+        MessageLog log = open(folder.getRoot(), new ArrayList<>(), new ArrayList<>());
+        log.close();
+        log.append((byte) 1, payload(1));
+    }
+
+    private MessageLog open(File directory, List<Long> positions, List<String> records) throws IOException {
+        MessageLog log = new MessageLog(directory, SEGMENT_SIZE, 64, false);
+        log.open((position, op, payload) -> {
+            positions.add(position);
+            records.add(op + ":" + new String(payload, StandardCharsets.UTF_8));
+        });
+        opened.add(log);
+        return log;
+    }
+
+    private static String text(int i) {
+        return String.format("message-%010d", i);
+    }
+
+    private static byte[] payload(int i) {
+        return text(i).getBytes(StandardCharsets.UTF_8);
+    }
+}
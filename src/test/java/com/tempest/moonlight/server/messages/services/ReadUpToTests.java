@@ -0,0 +1,81 @@
+package com.tempest.moonlight.server.messages.services;
+
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.messages.dao.ChangeFeedDAOImpl;
+import com.tempest.moonlight.server.messages.dao.MessageDAOMockImpl;
+import com.tempest.moonlight.server.messages.dao.UnreadMessagesDAOImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReadUpToTests {
+
+    private static final GenericParticipant BOB = new GenericParticipant(ParticipantType.USER, "bob");
+
+    private MessageDAOMockImpl messageDAO;
+    private MessageServiceImpl messageService;
+
+    @Before
+    public void setUp() {
+        messageDAO = new MessageDAOMockImpl();
+        ChangeFeedDAOImpl changeFeedDAO = new ChangeFeedDAOImpl();
+        ReflectionTestUtils.setField(changeFeedDAO, "capacity", 1000);
+
+        messageService = new MessageServiceImpl();
+        ReflectionTestUtils.setField(messageService, "messageDAO", messageDAO);
+        ReflectionTestUtils.setField(messageService, "changeFeedDAO", changeFeedDAO);
+        ReflectionTestUtils.setField(messageService, "unreadMessagesDAO", new UnreadMessagesDAOImpl());
+        ReflectionTestUtils.setField(messageService, "maxDeliveryBatchSize", 500);
+        ReflectionTestUtils.setField(messageService, "maxPageSize", 200);
+    }
+
+    @Test
+    public void unreadMessagesBeforeReadOneAreMarked() {
+        for (int i = 1; i <= 5; i++) {
+            messageService.saveMessage(message("bob", "alice", i));
+        }
+        messageService.saveMessage(message("alice", "bob", 6));
+        // receipt of another session of alice read message 4 only
+        messageDAO.advanceStatus(message("bob", "alice", 4).getKey(), MessageStatus.READ);
+
+        List<MessageDeliveryStatus> applied = messageService.markReadUpTo("alice", BOB, 6);
+
+        assertEquals(4, applied.size());
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(MessageStatus.READ, messageDAO.get(message("bob", "alice", i).getKey()).getStatus());
+        }
+        assertEquals(MessageStatus.ARRIVED, messageDAO.get(message("alice", "bob", 6).getKey()).getStatus());
+    }
+
+    @Test
+    public void messagesAfterTimeAreNotMarked() {
+        for (int i = 1; i <= 5; i++) {
+            messageService.saveMessage(message("bob", "alice", i));
+        }
+
+        List<MessageDeliveryStatus> applied = messageService.markReadUpTo("alice", BOB, 3);
+
+        assertEquals(3, applied.size());
+        assertEquals(MessageStatus.ARRIVED, messageDAO.get(message("bob", "alice", 4).getKey()).getStatus());
+    }
+
+    private static ChatMessage message(String from, String to, long time) {
+        ChatMessage message = new ChatMessage()
+                .setFrom(from)
+                .setType(ParticipantType.USER)
+                .setTo(to)
+                .setTime(time)
+                .setUuid("udid" + time)
+                .setPacketId("p" + time);
+        message.getKey();
+        return message;
+    }
+}
@@ -0,0 +1,74 @@
+package com.tempest.moonlight.server.messages.services;
+
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import com.tempest.moonlight.server.domain.messages.ChatMessage;
+import com.tempest.moonlight.server.domain.messages.MessageDeliveryStatus;
+import com.tempest.moonlight.server.domain.messages.MessageStatus;
+import com.tempest.moonlight.server.messages.dao.ChangeFeedDAOImpl;
+import com.tempest.moonlight.server.messages.dao.MessageDAOMockImpl;
+import com.tempest.moonlight.server.messages.dao.UnreadMessagesDAOImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class UnreadCountersTests {
+
+    private static final GenericParticipant BOB = new GenericParticipant(ParticipantType.USER, "bob");
+
+    private MessageServiceImpl messageService;
+
+    @Before
+    public void setUp() {
+        ChangeFeedDAOImpl changeFeedDAO = new ChangeFeedDAOImpl();
+        ReflectionTestUtils.setField(changeFeedDAO, "capacity", 1000);
+
+        messageService = new MessageServiceImpl();
+        ReflectionTestUtils.setField(messageService, "messageDAO", new MessageDAOMockImpl());
+        ReflectionTestUtils.setField(messageService, "changeFeedDAO", changeFeedDAO);
+        ReflectionTestUtils.setField(messageService, "unreadMessagesDAO", new UnreadMessagesDAOImpl());
+        ReflectionTestUtils.setField(messageService, "maxDeliveryBatchSize", 500);
+        ReflectionTestUtils.setField(messageService, "maxPageSize", 200);
+    }
+
+    @Test
+    public void countersFollowSavedAndReadMessages() throws Exception {
+        messageService.saveMessage(message("bob", "alice", 1));
+        assertEquals(Collections.singletonMap(BOB, 1), messageService.getUnreadCounters("alice"));
+
+        messageService.saveMessage(message("bob", "alice", 2));
+        messageService.saveMessage(message("alice", "bob", 3));
+        assertEquals(Collections.singletonMap(BOB, 2), messageService.getUnreadCounters("alice"));
+
+        messageService.updateMessageDeliveryStatus(new MessageDeliveryStatus(message("bob", "alice", 1), MessageStatus.READ));
+        // repeated receipt does not change status, so it is not counted again
+        messageService.updateMessageDeliveryStatus(new MessageDeliveryStatus(message("bob", "alice", 1), MessageStatus.READ));
+        assertEquals(Collections.singletonMap(BOB, 1), messageService.getUnreadCounters("alice"));
+    }
+
+    @Test
+    public void resentMessageIsCountedOnce() {
+        messageService.getUnreadCounters("alice");
+
+        messageService.saveMessage(message("bob", "alice", 1));
+        messageService.saveMessage(message("bob", "alice", 1));
+
+        assertEquals(Collections.singletonMap(BOB, 1), messageService.getUnreadCounters("alice"));
+    }
+
+    private static ChatMessage message(String from, String to, long time) {
+        ChatMessage message = new ChatMessage()
+                .setFrom(from)
+                .setType(ParticipantType.USER)
+                .setTo(to)
+                .setTime(time)
+                .setUuid("udid" + time)
+                .setPacketId("p" + time);
+        message.getKey();
+        return message;
+    }
+}
@@ -0,0 +1,90 @@
+package com.tempest.moonlight.server.users.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LoginSearchIndexTests {
+
+    private LoginSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new LoginSearchIndex();
+        for (String login : new String[]{"Bob", "bobby", "xbob", "alice", "Robert", "bo", "mybobcat"}) {
+            index.add(login);
+        }
+    }
+
+    @Test
+    public void exactMatchThenPrefixesThenOtherSubstrings() {
+        List<String> found = index.find("bob", 10);
+        assertEquals(Arrays.asList("Bob", "bobby"), found.subList(0, 2));
+        assertEquals(new HashSet<>(Arrays.asList("Bob", "bobby", "xbob", "mybobcat")), new HashSet<>(found));
+    }
+
+    @Test
+    public void searchIsCaseInsensitive() {
+        assertEquals(Collections.singletonList("mybobcat"), index.find("BOBC", 10));
+        assertEquals(Collections.singletonList("Robert"), index.find("rob", 10));
+    }
+
+    @Test
+    public void shortQueriesMatchPrefixesOnly() {
+        assertTrue(index.find("o", 10).isEmpty());
+        assertEquals(Arrays.asList("alice"), index.find("A", 10));
+        assertEquals(Arrays.asList("bo", "Bob", "bobby"), index.find("bo", 10));
+    }
+
+    @Test
+    public void onlyTrigramsAreIndexed() {
+        Map<?, ?> loginsByGram = (Map<?, ?>) ReflectionTestUtils.getField(index, "loginsByGram");
+        for (Object gram : loginsByGram.keySet()) {
+            assertEquals(LoginSearchIndex.GRAM, ((String) gram).length());
+        }
+    }
+
+    @Test
+    public void excludedLoginsDoNotCountTowardsLimit() {
+        assertEquals(Arrays.asList("bobby", "xbob"), sorted(index.find("bob", 2, new HashSet<>(Arrays.asList("Bob", "mybobcat")))));
+        assertEquals(Arrays.asList("bo", "bobby"), index.find("bo", 2, Collections.singleton("Bob")));
+    }
+
+    @Test
+    public void removedLoginsAreNotFound() {
+        index.remove("bobby");
+        assertFalse(index.find("bob", 10).contains("bobby"));
+        assertFalse(index.find("bo", 10).contains("bobby"));
+        assertTrue(index.find("zzz", 10).isEmpty());
+    }
+
+    @Test
+    public void shortQueriesFindPrefixesAfterManyLogins() {
+        LoginSearchIndex large = new LoginSearchIndex();
+        for (int i = 0; i < 20000; i++) {
+            large.add(String.format("a%05d", i));
+        }
+        large.add("zq");
+        large.add("Qz");
+        large.add("zzq");
+
+        assertEquals(Collections.singletonList("zq"), large.find("zq", 10));
+        assertEquals(Collections.singletonList("Qz"), large.find("q", 10));
+        assertEquals(Arrays.asList("zq", "zzq"), large.find("z", 10));
+        assertEquals(Collections.singletonList("zzq"), large.find("zzq", 10));
+        assertEquals(10, large.find("a1", 10).size());
+    }
+
+    private static List<String> sorted(List<String> logins) {
+        Collections.sort(logins);
+        return logins;
+    }
+}
@@ -0,0 +1,87 @@
+package com.tempest.moonlight.server.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StripedExecutorTests {
+
+    private static final int TASKS = 1000;
+
+    private StripedExecutor executor;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void overflowDoesNotBlockSubmitterAndKeepsOrder() throws InterruptedException {
+        executor = new StripedExecutor("overflow-test", 1, 4, true);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(TASKS);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+        executor.execute("user", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // lane is blocked, so all but 4 of these have to overflow instead of blocking this thread
+        for (int i = 0; i < TASKS; i++) {
+            int task = i;
+            executor.execute("user", () -> {
+                executed.add(task);
+                done.countDown();
+            });
+        }
+        assertEquals(TASKS - 4, executor.getOverflowDepth());
+        assertEquals(TASKS, executor.getQueueDepth());
+        assertTrue(executor.getSaturationCount() > 0);
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < TASKS; i++) {
+            assertEquals(i, executed.get(i).intValue());
+        }
+        assertEquals(0, executor.getOverflowDepth());
+    }
+
+    /**
+     * Lane is not blocked, so it may run out of tasks while submitter is between full queue and overflow.
+     * The window is short, so it is hit by chance, more often with more cores
+     */
+    @Test
+    public void overflowIsNotStrandedWhenLaneRunsOutOfTasks() throws InterruptedException {
+        int tasks = 2000;
+        for (int round = 0; round < 1000; round++) {
+            executor = new StripedExecutor("overflow-stress", 1, 1, true);
+            int[] executed = new int[tasks];
+            AtomicInteger next = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(tasks);
+            for (int i = 0; i < tasks; i++) {
+                int task = i;
+                executor.execute("user", () -> {
+                    executed[next.getAndIncrement()] = task;
+                    done.countDown();
+                });
+            }
+            assertTrue("round " + round + " stalled with overflow = " + executor.getOverflowDepth(), done.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < tasks; i++) {
+                assertEquals(i, executed[i]);
+            }
+            assertEquals(0, executor.getOverflowDepth());
+            executor.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.tempest.moonlight.server.websockets;
+
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CustomChannelInterceptorTests {
+
+    private final CustomChannelInterceptor interceptor = new CustomChannelInterceptor();
+
+    @Test
+    public void stampsHeadersInPlaceWithoutCopies() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/app/chat/message/user");
+        accessor.setSessionId("session");
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+        MessageHeaders headers = message.getHeaders();
+
+        Message<?> stamped = interceptor.preSend(message, null);
+
+        assertSame(message, stamped);
+        assertSame(headers, stamped.getHeaders());
+        assertSame(accessor, MessageHeaderAccessor.getAccessor(stamped, MessageHeaderAccessor.class));
+        assertFalse(accessor.isMutable());
+        assertNotNull(stamped.getHeaders().getId());
+        assertNotNull(stamped.getHeaders().getTimestamp());
+        assertEquals(stamped.getHeaders().getId(), CustomMessageHeadersAccessor.getId(stamped));
+        assertEquals(stamped.getHeaders().getTimestamp().longValue(), CustomMessageHeadersAccessor.getTimestamp(stamped));
+        assertEquals(Long.valueOf(1), CustomMessageHeadersAccessor.getSequence(stamped));
+    }
+
+    @Test
+    public void sequenceGrowsWithEveryMessage() {
+        for (long i = 1; i <= 3; i++) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+            accessor.setLeaveMutable(true);
+            Message<?> stamped = interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+            assertEquals(Long.valueOf(i), CustomMessageHeadersAccessor.getSequence(stamped));
+        }
+    }
+
+    @Test
+    public void leavesImmutableMessagesAsTheyAre() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        Message<?> result = interceptor.preSend(message, null);
+
+        assertSame(message, result);
+        assertNull(CustomMessageHeadersAccessor.getSequence(result));
+    }
+}
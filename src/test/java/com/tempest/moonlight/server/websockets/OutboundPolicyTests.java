@@ -0,0 +1,132 @@
+package com.tempest.moonlight.server.websockets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class OutboundPolicyTests {
+
+    private static final String SESSION_ID = "session";
+    private static final int FRAMES = 200;
+
+    private final List<String> written = new ArrayList<>();
+    private final List<Integer> writeDepths = new ArrayList<>();
+
+    private OutboundPolicy policy;
+    private ExecutorSubscribableChannel channel;
+    private DeferredExecutor executor;
+    private WebSocketSession decoratedSession;
+
+    @Before
+    public void setUp() throws Exception {
+        policy = new OutboundPolicy();
+        ReflectionTestUtils.setField(policy, "maxInFlight", 1);
+        ReflectionTestUtils.setField(policy, "queueCapacity", 1024);
+        ReflectionTestUtils.setField(policy, "queueSizeLimit", 1L << 20);
+        ReflectionTestUtils.setField(policy, "sendTimeLimitMs", 10000L);
+        ReflectionTestUtils.setField(policy, "dropOldestDestinations", new String[0]);
+        ReflectionTestUtils.setField(policy, "coalesceDestinations", new String[0]);
+
+        WebSocketSession socket = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return SESSION_ID;
+                        case "isOpen":
+                            return true;
+                        case "sendMessage":
+                            written.add(((TextMessage) args[0]).getPayload());
+                            writeDepths.add(Thread.currentThread().getStackTrace().length);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        policy.decorate(new AbstractWebSocketHandler() {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) {
+                decoratedSession = session;
+            }
+        }).afterConnectionEstablished(socket);
+
+        executor = new DeferredExecutor();
+        channel = new ExecutorSubscribableChannel(executor);
+        channel.addInterceptor(policy);
+        channel.subscribe(message -> {
+            try {
+                decoratedSession.sendMessage(new TextMessage("MESSAGE\n\n" + new String((byte[]) message.getPayload(), StandardCharsets.UTF_8)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void queuedFramesAreReleasedInOrderWithoutNestingSends() {
+        for (int i = 0; i < FRAMES; i++) {
+            channel.send(frame(i));
+        }
+        // the first frame is in flight, the others wait in send queue of the session
+        assertEquals(1, executor.deferred.size());
+        assertTrue(written.isEmpty());
+
+        // from now on executor runs tasks on the sending thread, as caller-runs does when its queue is full
+        executor.runDeferredThenInline();
+
+        assertEquals(FRAMES, written.size());
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals("MESSAGE\n\n" + i, written.get(i));
+        }
+        int minDepth = writeDepths.stream().mapToInt(Integer::intValue).min().getAsInt();
+        int maxDepth = writeDepths.stream().mapToInt(Integer::intValue).max().getAsInt();
+        assertTrue("sends nest deeper with every frame: " + minDepth + ".." + maxDepth, maxDepth - minDepth < 100);
+    }
+
+    private static Message<byte[]> frame(int index) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESSION_ID);
+        accessor.setDestination("/queue/messages");
+        return MessageBuilder.createMessage(String.valueOf(index).getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    private static class DeferredExecutor implements Executor {
+
+        private final Queue<Runnable> deferred = new ArrayDeque<>();
+        private boolean inline;
+
+        @Override
+        public void execute(Runnable task) {
+            if (inline) {
+                task.run();
+            } else {
+                deferred.add(task);
+            }
+        }
+
+        private void runDeferredThenInline() {
+            inline = true;
+            Runnable task;
+            while ((task = deferred.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.tempest.moonlight.server.websockets;
+
+import com.tempest.moonlight.server.domain.ParticipantType;
+import com.tempest.moonlight.server.domain.contacts.GenericParticipant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ToParticipantSenderTests {
+
+    private static final int PARTICIPANTS = 64;
+
+    private final ConcurrentMap<String, List<String>> destinationsByRound = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<String>> roundsByDestination = new ConcurrentHashMap<>();
+    private final List<MessageHeaders> sharedHeaders = Collections.synchronizedList(new ArrayList<>());
+    private volatile CountDownLatch sent;
+
+    private FanOutExecutor fanOutExecutor;
+    private ToParticipantSender sender;
+
+    @Before
+    public void setUp() {
+        SimpMessagingTemplate template = new SimpMessagingTemplate(new AbstractMessageChannel() {
+            @Override
+            protected boolean sendInternal(Message<?> message, long timeout) {
+                String round = new String((byte[]) message.getPayload());
+                String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                destinationsByRound.computeIfAbsent(round, r -> Collections.synchronizedList(new ArrayList<>())).add(destination);
+                roundsByDestination.computeIfAbsent(destination, d -> Collections.synchronizedList(new ArrayList<>())).add(round);
+                sent.countDown();
+                return true;
+            }
+        });
+        // converter leaving headers of the message mutable
+        template.setMessageConverter(new MessageConverter() {
+            @Override
+            public Object fromMessage(Message<?> message, Class<?> targetClass) {
+                return null;
+            }
+
+            @Override
+            public Message<?> toMessage(Object payload, MessageHeaders headers) {
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+                accessor.setLeaveMutable(true);
+                sharedHeaders.add(accessor.getMessageHeaders());
+                return MessageBuilder.createMessage(String.valueOf(payload).getBytes(), accessor.getMessageHeaders());
+            }
+        });
+
+        fanOutExecutor = new FanOutExecutor();
+        ReflectionTestUtils.setField(fanOutExecutor, "threads", 8);
+        ReflectionTestUtils.setField(fanOutExecutor, "queueCapacity", 1024);
+        fanOutExecutor.start();
+
+        sender = new ToParticipantSender();
+        ReflectionTestUtils.setField(sender, "simpMessagingTemplate", template);
+        ReflectionTestUtils.setField(sender, "fanOutExecutor", fanOutExecutor);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        fanOutExecutor.stop();
+    }
+
+    @Test
+    public void everyParticipantGetsMessageToOwnQueue() throws InterruptedException {
+        List<GenericParticipant> participants = new ArrayList<>();
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            participants.add(new GenericParticipant(ParticipantType.USER, "user" + i));
+        }
+
+        int rounds = 200;
+        sent = new CountDownLatch(rounds * (PARTICIPANTS - 1));
+        for (int round = 0; round < rounds; round++) {
+            sender.sendToUsersQueue(participants, "user0", "messages", round);
+        }
+        assertTrue(sent.await(30, TimeUnit.SECONDS));
+
+        // every send copies headers of the shared message, the shared message itself never gets a destination
+        assertEquals(rounds, sharedHeaders.size());
+        for (MessageHeaders headers : sharedHeaders) {
+            assertNull(SimpMessageHeaderAccessor.getDestination(headers));
+        }
+
+        assertEquals(rounds, destinationsByRound.size());
+        destinationsByRound.forEach((round, destinations) -> {
+            Map<String, Integer> counts = new HashMap<>();
+            destinations.forEach(destination -> counts.merge(destination, 1, Integer::sum));
+            assertEquals("round " + round, PARTICIPANTS - 1, counts.size());
+            for (int i = 1; i < PARTICIPANTS; i++) {
+                assertEquals("round " + round, Integer.valueOf(1), counts.get("/user/user" + i + "/queue/messages"));
+            }
+        });
+    }
+
+    @Test
+    public void messageToSingleUserDoesNotOvertakeFanOut() throws InterruptedException {
+        List<GenericParticipant> participants = new ArrayList<>();
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            participants.add(new GenericParticipant(ParticipantType.USER, "user" + i));
+        }
+
+        int rounds = 200;
+        sent = new CountDownLatch(rounds * (PARTICIPANTS + 1));
+        List<String> expected = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            sender.sendToUsersQueue(participants, "messages", "group" + round);
+            sender.sendToUserQueue("user1", "messages", "direct" + round);
+            expected.add("group" + round);
+            expected.add("direct" + round);
+        }
+        assertTrue(sent.await(30, TimeUnit.SECONDS));
+
+        assertEquals(expected, roundsByDestination.get("/user/user1/queue/messages"));
+    }
+}